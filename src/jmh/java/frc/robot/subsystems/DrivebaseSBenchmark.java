@@ -0,0 +1,65 @@
+package frc.robot.subsystems;
+
+import static frc.robot.Constants.DriveConstants.m_kinematics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pathplanner.lib.PathPlannerTrajectory;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * The static parts of DrivebaseS that run on the robot loop: on-the-fly trajectory generation
+ * for pose chasing, and the chassis-speeds-to-module-states path of drive().
+ * These need no hardware, so no DrivebaseS is constructed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DrivebaseSBenchmark {
+    private Pose2d robotPose;
+    private Pose2d target;
+    private Translation2d currentSpeed;
+    private ChassisSpeeds speeds;
+
+    @Setup
+    public void setup() {
+        robotPose = new Pose2d(1.0, 1.0, Rotation2d.fromDegrees(0));
+        target = new Pose2d(4.0, 2.5, Rotation2d.fromDegrees(90));
+        currentSpeed = new Translation2d(1.0, 0.5);
+        speeds = new ChassisSpeeds(3.0, 1.0, 2.0);
+    }
+
+    @Benchmark
+    public PathPlannerTrajectory generateTrajectoryToPose() {
+        return DrivebaseS.generateTrajectoryToPose(robotPose, target, currentSpeed);
+    }
+
+    @Benchmark
+    public SwerveModuleState[] toSwerveModuleStates() {
+        return m_kinematics.toSwerveModuleStates(speeds);
+    }
+
+    @Benchmark
+    public SwerveModuleState[] calculateModuleStates() {
+        return DrivebaseS.calculateModuleStates(speeds);
+    }
+}
@@ -0,0 +1,62 @@
+package frc.robot.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * The per-module math DrivebaseS.drive and SwerveModule run every loop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NomadMathUtilBenchmark {
+    private ChassisSpeeds speeds;
+    private SwerveModuleState[] states;
+    private SwerveModuleState desiredState;
+    private Rotation2d currentAngle;
+
+    @Setup
+    public void setup() {
+        // Fast enough that normalizeDrive has to scale the states down
+        speeds = new ChassisSpeeds(5.5, 1.5, 6.0);
+        states = DriveConstants.m_kinematics.toSwerveModuleStates(speeds);
+        desiredState = new SwerveModuleState(3.0, Rotation2d.fromDegrees(170));
+        currentAngle = Rotation2d.fromDegrees(-20);
+    }
+
+    @Benchmark
+    public SwerveModuleState[] normalizeDrive() {
+        // normalizeDrive scales in place, so restore the speeds each time to keep the work constant.
+        for (int i = 0; i < states.length; i++) {
+            states[i].speedMetersPerSecond = 5.0;
+        }
+        NomadMathUtil.normalizeDrive(states, speeds,
+            DriveConstants.MAX_FWD_REV_SPEED_MPS,
+            DriveConstants.MAX_ROTATE_SPEED_RAD_PER_SEC,
+            DriveConstants.MAX_MODULE_SPEED_FPS);
+        return states;
+    }
+
+    @Benchmark
+    public SwerveModuleState optimize() {
+        return NomadMathUtil.optimize(desiredState, currentAngle, 90.0);
+    }
+}
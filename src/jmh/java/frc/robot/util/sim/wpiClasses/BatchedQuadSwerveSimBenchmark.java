@@ -0,0 +1,85 @@
+package frc.robot.util.sim.wpiClasses;
+
+import static frc.robot.Constants.DriveConstants.ROBOT_MASS_kg;
+import static frc.robot.Constants.DriveConstants.ROBOT_MOI_KGM2;
+import static frc.robot.Constants.DriveConstants.WHEEL_BASE_WIDTH_M;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.subsystems.DrivebaseS;
+
+/**
+ * One 1 ms physics step for a fleet of robots: the batched engine against one QuadSwerveSim per robot.
+ * Divide by numRobots for the per-robot cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchedQuadSwerveSimBenchmark {
+    @Param({"64", "1024"})
+    public int numRobots;
+
+    private BatchedQuadSwerveSim batchedSim;
+    private QuadSwerveSim[] quadSwerveSims;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        batchedSim = DrivebaseS.batchedSwerveSimFactory(numRobots);
+        quadSwerveSims = new QuadSwerveSim[numRobots];
+        for (int robot = 0; robot < numRobots; robot++) {
+            List<SwerveModuleSim> moduleSims = new ArrayList<>(QuadSwerveSim.NUM_MODULES);
+            for (int idx = 0; idx < QuadSwerveSim.NUM_MODULES; idx++) {
+                moduleSims.add(DrivebaseS.swerveSimModuleFactory(1.5, 2, 0.01, ROBOT_MASS_kg));
+            }
+            quadSwerveSims[robot] = new QuadSwerveSim(WHEEL_BASE_WIDTH_M, WHEEL_BASE_WIDTH_M, ROBOT_MASS_kg, ROBOT_MOI_KGM2, moduleSims);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetModel() {
+        Pose2d pose = new Pose2d(1, 1, Rotation2d.fromDegrees(30));
+        for (int robot = 0; robot < numRobots; robot++) {
+            batchedSim.modelReset(robot, pose);
+            quadSwerveSims[robot].modelReset(pose);
+            // Same inputs as QuadSwerveSimBenchmark
+            for (int idx = 0; idx < QuadSwerveSim.NUM_MODULES; idx++) {
+                batchedSim.setInputVoltages(robot, idx, 6.0 + idx, 0.5 - 0.25 * idx);
+                quadSwerveSims[robot].modules.get(idx).setInputVoltages(6.0 + idx, 0.5 - 0.25 * idx);
+            }
+        }
+    }
+
+    @Benchmark
+    public BatchedQuadSwerveSim batched() {
+        batchedSim.update(0.001);
+        return batchedSim;
+    }
+
+    @Benchmark
+    public QuadSwerveSim[] objectPerRobot() {
+        for (QuadSwerveSim quadSwerveSim : quadSwerveSims) {
+            quadSwerveSim.update(0.001);
+        }
+        return quadSwerveSims;
+    }
+}
@@ -0,0 +1,71 @@
+package frc.robot.util.sim.wpiClasses;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * Force2d arithmetic and ForceAtPose2d frame math, the building blocks of the compatibility force API.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ForceBenchmark {
+    private Force2d a;
+    private Force2d b;
+    private Rotation2d angle;
+    private ForceAtPose2d forceAtPose;
+    private Pose2d centerOfRotation;
+
+    @Setup
+    public void setup() {
+        a = new Force2d(12.5, -3.0);
+        b = new Force2d(-1.0, 7.25);
+        angle = Rotation2d.fromDegrees(37);
+        forceAtPose = new ForceAtPose2d(new Force2d(20, 5), new Pose2d(1.3, 0.4, Rotation2d.fromDegrees(15)));
+        centerOfRotation = new Pose2d(1.0, 0.1, Rotation2d.fromDegrees(15));
+    }
+
+    @Benchmark
+    public Force2d plus() {
+        return a.plus(b);
+    }
+
+    @Benchmark
+    public Force2d timesAndRotate() {
+        return a.times(0.25).rotateBy(angle);
+    }
+
+    @Benchmark
+    public Force2d accum() {
+        Force2d sum = new Force2d();
+        sum.accum(a);
+        sum.accum(b);
+        return sum;
+    }
+
+    @Benchmark
+    public double torque() {
+        return forceAtPose.getTorque(centerOfRotation);
+    }
+
+    @Benchmark
+    public Force2d forceInRefFrame() {
+        return forceAtPose.getForceInRefFrame(centerOfRotation);
+    }
+}
@@ -0,0 +1,63 @@
+package frc.robot.util.sim.wpiClasses;
+
+import static frc.robot.Constants.DriveConstants.ROBOT_MASS_kg;
+import static frc.robot.Constants.DriveConstants.ROBOT_MOI_KGM2;
+import static frc.robot.Constants.DriveConstants.WHEEL_BASE_WIDTH_M;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.subsystems.DrivebaseS;
+
+/**
+ * One 1 ms physics step, as DrivebaseS.simulationPeriodic runs 20 times per loop.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QuadSwerveSimBenchmark {
+    private List<SwerveModuleSim> moduleSims;
+    private QuadSwerveSim quadSwerveSim;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        moduleSims = List.of(
+            DrivebaseS.swerveSimModuleFactory(1.5, 2, 0.01, ROBOT_MASS_kg),
+            DrivebaseS.swerveSimModuleFactory(1.5, 2, 0.01, ROBOT_MASS_kg),
+            DrivebaseS.swerveSimModuleFactory(1.5, 2, 0.01, ROBOT_MASS_kg),
+            DrivebaseS.swerveSimModuleFactory(1.5, 2, 0.01, ROBOT_MASS_kg));
+        quadSwerveSim = new QuadSwerveSim(WHEEL_BASE_WIDTH_M, WHEEL_BASE_WIDTH_M, ROBOT_MASS_kg, ROBOT_MOI_KGM2, moduleSims);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetModel() {
+        quadSwerveSim.modelReset(new Pose2d(1, 1, Rotation2d.fromDegrees(30)));
+        // Driving and steering at once so both friction regimes and the azimuth model get exercised.
+        for (int idx = 0; idx < QuadSwerveSim.NUM_MODULES; idx++) {
+            moduleSims.get(idx).setInputVoltages(6.0 + idx, 0.5 - 0.25 * idx);
+        }
+    }
+
+    @Benchmark
+    public QuadSwerveSim update() {
+        quadSwerveSim.update(0.001);
+        return quadSwerveSim;
+    }
+}
@@ -0,0 +1,71 @@
+package frc.robot.util.trajectory;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * One trajectory-following controller update. Covers both the PathPlannerLib controller DrivebaseS
+ * uses and our own copy in this package.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PPHolonomicDriveControllerBenchmark {
+    private com.pathplanner.lib.controllers.PPHolonomicDriveController pathPlannerController;
+    private PPHolonomicDriveController controller;
+    private Pose2d currentPose;
+    private PathPlannerState referenceState;
+
+    @Setup
+    public void setup() {
+        pathPlannerController = new com.pathplanner.lib.controllers.PPHolonomicDriveController(
+            new PIDController(DriveConstants.TRAJ_TRANSLATION_KP, 0, 0),
+            new PIDController(DriveConstants.TRAJ_TRANSLATION_KP, 0, 0),
+            new PIDController(DriveConstants.TRAJ_ROTATION_KP, 0, DriveConstants.TRAJ_ROTATION_KD));
+        controller = new PPHolonomicDriveController(
+            new PIDController(DriveConstants.TRAJ_TRANSLATION_KP, 0, 0),
+            new PIDController(DriveConstants.TRAJ_TRANSLATION_KP, 0, 0),
+            new ProfiledPIDController(DriveConstants.TRAJ_ROTATION_KP, 0, DriveConstants.TRAJ_ROTATION_KD,
+                DriveConstants.THETA_DEFAULT_CONSTRAINTS));
+
+        currentPose = new Pose2d(2.0, 1.0, Rotation2d.fromDegrees(10));
+        referenceState = new PathPlannerState();
+        referenceState.poseMeters = new Pose2d(2.2, 1.1, Rotation2d.fromDegrees(25));
+        referenceState.velocityMetersPerSecond = 2.5;
+        referenceState.holonomicRotation = Rotation2d.fromDegrees(30);
+        referenceState.holonomicAngularVelocityRadPerSec = 1.0;
+    }
+
+    @Benchmark
+    public ChassisSpeeds pathPlannerCalculate() {
+        return pathPlannerController.calculate(currentPose, referenceState);
+    }
+
+    @Benchmark
+    public ChassisSpeeds calculate() {
+        return controller.calculate(currentPose, referenceState);
+    }
+}
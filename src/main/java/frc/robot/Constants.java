@@ -1,10 +1,15 @@
 package frc.robot;
 
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
+import frc.robot.util.controllers.SwerveModuleControlMode;
+import frc.robot.util.velocity.VelocityEstimatorType;
 
 public class Constants {
 
@@ -20,12 +25,38 @@ public class Constants {
         static public final double WHEEL_RADIUS_M = 0.0508; //Units.inchesToMeters(4.0/2.0); //four inch (diameter) wheels
         static public final double ROBOT_MASS_kg = Units.lbsToKilograms(20.0);
         static public final double ROBOT_MOI_KGM2 = 1.0/12.0 * ROBOT_MASS_kg * Math.pow((WHEEL_BASE_WIDTH_M*1.1),2) * 2; //Model moment of intertia as a square slab slightly bigger than wheelbase with axis through center
+        static public final double BUMPER_WIDTH_M = Units.inchesToMeters(35); //Square robot, outside edge to outside edge of the bumpers
         // Drivetrain Performance Mechanical limits
         static public final double MAX_FWD_REV_SPEED_MPS = Units.feetToMeters(19.0);
         static public final double MAX_STRAFE_SPEED_MPS = Units.feetToMeters(19.0);
         static public final double MAX_ROTATE_SPEED_RAD_PER_SEC = Units.degreesToRadians(720.0);
         static public final double MAX_TRANSLATE_ACCEL_MPS2 = MAX_FWD_REV_SPEED_MPS/0.125; //0-full time of 0.25 second
         static public final double MAX_ROTATE_ACCEL_RAD_PER_SEC_2 = MAX_ROTATE_SPEED_RAD_PER_SEC/0.25; //0-full time of 0.25 second
+
+        // Odometry sensors are sampled on their own thread at this period, faster than the 20ms main loop
+        static public final double ODOMETRY_PERIOD_S = 1.0 / 250.0;
+        static public final int ODOMETRY_QUEUE_CAPACITY = 64;
+        // Steering angles barely move in one odometry period, so the azimuth encoders send position
+        // at the main loop rate
+        static public final double AZIMUTH_POSITION_PERIOD_S = 0.02;
+        // Samples are taken at the newest time every drive encoder has a measurement for, but no older than this
+        static public final double ODOMETRY_MAX_SAMPLE_AGE_S = 0.05;
+        // 2 seconds of estimated poses at odometry rate, for latency-compensated lookups
+        static public final int POSE_HISTORY_CAPACITY = 500;
+        // A module is slipping if its motion disagrees with the other three by more than this much speed,
+        // plus a fraction of the robot's speed
+        static public final double SLIP_RESIDUAL_THRESHOLD_MPS = 0.3;
+        static public final double SLIP_RESIDUAL_FRACTION = 0.15;
+        // Drive velocity estimators, picked per module in ModuleConstants.
+        // See VelocityEstimatorComparison for their lag and noise at these settings.
+        static public final int VELOCITY_MOVING_AVERAGE_TAPS = 5;
+        static public final int VELOCITY_LEAST_SQUARES_WINDOW = 6; // same lag as the moving average
+        static public final int VELOCITY_SAVITZKY_GOLAY_WINDOW = 16;
+        static public final double VELOCITY_ALPHA = 0.4;
+        static public final double VELOCITY_BETA = VELOCITY_ALPHA * VELOCITY_ALPHA / (2 - VELOCITY_ALPHA);
+        // Where the modules close their loops at startup. DrivebaseS.setModuleControlMode switches
+        // all four at once, for comparing the two on the robot.
+        static public final SwerveModuleControlMode MODULE_CONTROL_MODE = SwerveModuleControlMode.RIO;
         
     // HELPER ORGANIZATION CONSTANTS
         static public final int FL = 0; // Front Left Module Index
@@ -52,10 +83,10 @@ public class Constants {
 //            BL("BL", 5, 6, 13, 0.971008, HW, HW),
 //            BR("BR", 7, 8, 11, 1.366774 , HW, -HW);
 
-            FL("FL", 9, 2, 12, 2.351588, HW, HW),
-            FR("FR", 3, 4, 10, 2.109219, HW, -HW),
-            BL("BL", 5, 6, 13, 0.971008, -HW, HW),
-            BR("BR", 7, 8, 11, 1.366774 , -HW, -HW);
+            FL("FL", 9, 2, 12, 2.351588, HW, HW, VelocityEstimatorType.SAVITZKY_GOLAY),
+            FR("FR", 3, 4, 10, 2.109219, HW, -HW, VelocityEstimatorType.SAVITZKY_GOLAY),
+            BL("BL", 5, 6, 13, 0.971008, -HW, HW, VelocityEstimatorType.SAVITZKY_GOLAY),
+            BR("BR", 7, 8, 11, 1.366774 , -HW, -HW, VelocityEstimatorType.SAVITZKY_GOLAY);
     
             public final String name;
             public final int driveMotorID;
@@ -67,13 +98,17 @@ public class Constants {
              */
             public final double magEncoderOffset;
             public final Translation2d centerOffset;
-            private ModuleConstants(String name, int driveMotorID, int rotationMotorID, int magEncoderID, double magEncoderOffset, double xOffset, double yOffset) {
+            // How the drive encoder's position frames become a wheel speed
+            public final VelocityEstimatorType driveVelocityEstimator;
+            private ModuleConstants(String name, int driveMotorID, int rotationMotorID, int magEncoderID, double magEncoderOffset, double xOffset, double yOffset,
+                                    VelocityEstimatorType driveVelocityEstimator) {
                 this.name = name;
                 this.driveMotorID = driveMotorID;
                 this.rotationMotorID = rotationMotorID;
                 this.magEncoderID = magEncoderID;
                 this.magEncoderOffset = magEncoderOffset;
                 centerOffset = new Translation2d(xOffset, yOffset);
+                this.driveVelocityEstimator = driveVelocityEstimator;
     
             }
         }
@@ -100,6 +135,11 @@ public class Constants {
         public static final SimpleMotorFeedforward driveFeedForward = new SimpleMotorFeedforward(DRIVE_FF[0], DRIVE_FF[1], DRIVE_FF[2]);
         
 
+        // Trajectory-following feedback gains (field-relative x/y in m/s per m, theta in rad/s per rad)
+        public static final double TRAJ_TRANSLATION_KP = 3.0;
+        public static final double TRAJ_ROTATION_KP = 3.0;
+        public static final double TRAJ_ROTATION_KD = 0.1;
+
         public static final double MAX_MODULE_SPEED_FPS = 19;
         public static final double teleopTurnRateDegPerSec = 1920; //Rate the robot will spin with full rotation command
 
@@ -118,6 +158,62 @@ public class Constants {
 
     }
 
+    public static final class CANConstants {
+
+        // One thread reads every registered device's status frames each period. Devices send no
+        // faster than this, so each sweep sees at most one new frame per device.
+        public static final double SAMPLE_PERIOD_S = DriveConstants.ODOMETRY_PERIOD_S;
+        // Real-time priority of the sampling thread, above the main robot thread
+        public static final int SAMPLER_PRIORITY = 15;
+        // A device whose newest status frame is older than this has stopped reporting
+        public static final double MAX_FRAME_AGE_S = 0.05;
+
+        public static final double BUS_BITRATE_BPS = 1e6;
+        // An extended frame with 8 data bytes, including worst-case bit stuffing
+        public static final double FRAME_BITS = 160;
+        // Setpoints sent to each motor controller, one per main loop
+        public static final double CONTROL_FRAMES_PER_S = 50;
+    }
+
+    public static final class VisionConstants {
+
+        public static final String CAMERA_NAME = "photonvision";
+        // Camera mounting relative to robot center, on the floor. Measure these on the robot.
+        public static final Transform3d ROBOT_TO_CAMERA = new Transform3d(
+            new Translation3d(Units.inchesToMeters(10), 0, Units.inchesToMeters(20)),
+            new Rotation3d(0, Units.degreesToRadians(-15), 0)); // pitched 15 degrees up
+
+        public static final String TAG_LAYOUT_FILE = "apriltag/2022-rapidreact.json";
+        public static final double POLL_PERIOD_S = 0.01;
+
+        // Single-tag solves with more ambiguity than this can be a mirror image, so they're thrown out
+        public static final double MAX_AMBIGUITY = 0.2;
+        // Standard deviations of a solve from one tag 1 meter away. They grow with distance squared
+        // and shrink with the number of tags.
+        public static final double XY_STD_DEV_AT_1M = 0.05;
+        public static final double THETA_STD_DEV_AT_1M = 0.1;
+        // A single tag pins heading down poorly, so leave heading to the gyro
+        public static final double SINGLE_TAG_THETA_STD_DEV = 1e3;
+
+        // Simulated camera
+        public static final double SIM_HORIZONTAL_FOV_RAD = Units.degreesToRadians(70);
+        public static final double SIM_MAX_RANGE_M = 6;
+        public static final double SIM_LATENCY_S = 0.035;
+        public static final double SIM_FRAME_PERIOD_S = 1.0 / 30.0;
+        public static final double SIM_NOISE_PER_M = 0.01; // translation noise standard deviation per meter of range
+    }
+
+    public static final class LogConstants {
+
+        // Record every loop's hardware inputs, for replaying with DriveReplay.
+        // Off on the robot until recording has been tried out there.
+        public static final boolean RECORD_ON_ROBOT = false;
+        public static final boolean RECORD_IN_SIM = false;
+        // Recordings are named by the time the robot code started
+        public static final String LOG_DIRECTORY_REAL = "/U/logs"; // the USB stick in the roboRIO
+        public static final String LOG_DIRECTORY_SIM = "logs";
+    }
+
     public static final class AutoConstants {
 
         public static final double maxVelMetersPerSec = 2;
@@ -1,11 +1,16 @@
 package frc.robot;
 
+import java.io.File;
+
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj.livewindow.LiveWindow;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants.LogConstants;
+import frc.robot.util.replay.InputLog;
 import io.github.oblarg.oblog.Logger;
 
 public class Robot extends TimedRobot {
@@ -18,7 +23,17 @@ public class Robot extends TimedRobot {
     public void robotInit() {
 
         LiveWindow.disableAllTelemetry();
+        if (RobotBase.isReal() ? LogConstants.RECORD_ON_ROBOT : LogConstants.RECORD_IN_SIM) {
+            File directory = new File(RobotBase.isReal() ? LogConstants.LOG_DIRECTORY_REAL : LogConstants.LOG_DIRECTORY_SIM);
+            directory.mkdirs();
+            InputLog.getInstance().startRecording(new File(directory, "inputs-" + System.currentTimeMillis() + ".bin"));
+            // Write out whatever is still queued when the robot code exits
+            Runtime.getRuntime().addShutdownHook(new Thread(InputLog.getInstance()::close));
+        }
+        // Subsystems read their hardware once when they're created, so that goes in the first frame
+        InputLog.getInstance().beginCycle();
         robotContainer = new RobotContainer();
+        InputLog.getInstance().endCycle();
         Logger.configureLoggingAndConfig(robotContainer, false);
         SmartDashboard.putNumber("vel", new SwerveModuleState().speedMetersPerSecond);
     }
@@ -26,12 +41,20 @@ public class Robot extends TimedRobot {
     @Override
     public void robotPeriodic() {
 
+        InputLog.getInstance().beginCycle();
         CommandScheduler.getInstance().run();
         robotContainer.periodic();
         Logger.updateEntries();
+        InputLog.getInstance().endCycle();
         
     }
 
+    @Override
+    public void disabledInit() {
+        // Get the match onto the disk while nothing is moving
+        InputLog.getInstance().flush();
+    }
+
     @Override
     public void autonomousInit() {
         robotContainer.onEnabled();
@@ -10,6 +10,7 @@ import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj.smartdashboard.Field3d;
@@ -22,6 +23,8 @@ import edu.wpi.first.wpilibj2.command.button.Trigger;
 import frc.robot.Constants.InputDevices;
 import frc.robot.commands.drivetrain.OperatorControlC;
 import frc.robot.subsystems.DrivebaseS;
+import frc.robot.subsystems.VisionS;
+import frc.robot.util.can.CANFrameBudget;
 import io.github.oblarg.oblog.annotations.Log;
 
 public class RobotContainer {
@@ -38,6 +41,10 @@ public class RobotContainer {
     private final Field2d field = new Field2d();
     @Log
     private final Field3d field3d = new Field3d();
+    @Log
+    private final VisionS visionS = new VisionS(drivebaseS, field3d);
+    // Filled in as the subsystems configure their devices
+    private final CANFrameBudget canFrameBudget = CANFrameBudget.getInstance();
     private final FieldObject2d target = field.getObject("target");
     
     @Log
@@ -47,6 +54,10 @@ public class RobotContainer {
 
     public RobotContainer() {
         target.setPose(new Pose2d(0, 0, new Rotation2d()));
+        // Start vision at the same sim time every run
+        if (RobotBase.isSimulation()) {
+            visionS.awaitLayout();
+        }
         
         
         drivebaseS.setDefaultCommand(
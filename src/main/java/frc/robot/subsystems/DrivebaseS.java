@@ -15,10 +15,11 @@ import static frc.robot.Constants.DriveConstants.WHEEL_RADIUS_M;
 import static frc.robot.Constants.DriveConstants.WHEEL_REVS_PER_ENC_REV;
 import static frc.robot.Constants.DriveConstants.m_kinematics;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
-import com.kauailabs.navx.frc.AHRS;
 import com.pathplanner.lib.PathConstraints;
 import com.pathplanner.lib.PathPlanner;
 import com.pathplanner.lib.PathPlannerTrajectory;
@@ -26,6 +27,7 @@ import com.pathplanner.lib.PathPoint;
 import com.pathplanner.lib.controllers.PPHolonomicDriveController;
 
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
@@ -33,22 +35,47 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.RobotBase;
-import edu.wpi.first.wpilibj.SPI.Port;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
 import edu.wpi.first.wpilibj.smartdashboard.Field2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Robot;
 import frc.robot.Constants.DriveConstants;
 import frc.robot.Constants.DriveConstants.ModuleConstants;
+import frc.robot.subsystems.io.GyroIO;
+import frc.robot.subsystems.io.GyroIO.GyroIOInputs;
+import frc.robot.subsystems.io.GyroIONavX;
+import frc.robot.subsystems.io.GyroIOSim;
+import frc.robot.subsystems.io.GyroOdometryIO;
+import frc.robot.subsystems.io.ModuleIO;
+import frc.robot.subsystems.io.ModuleIOSim;
+import frc.robot.subsystems.io.ModuleIOSparkMax;
+import frc.robot.subsystems.io.ModuleOdometryIO;
 import frc.robot.util.NomadMathUtil;
-import frc.robot.util.sim.SimGyroSensorModel;
+import frc.robot.util.controllers.SwerveModuleControlMode;
+import frc.robot.util.odometry.OdometryInputs;
+import frc.robot.util.odometry.OdometryResetInputs;
+import frc.robot.util.odometry.OdometrySample;
+import frc.robot.util.odometry.OdometrySampleQueue;
+import frc.robot.util.odometry.OdometryThread;
+import frc.robot.util.odometry.PoseHistory;
+import frc.robot.util.odometry.SlipDetector;
+import frc.robot.util.odometry.TimestampedDoubleBuffer;
+import frc.robot.util.replay.InputLog;
+import frc.robot.util.sim.wpiClasses.BatchedQuadSwerveSim;
 import frc.robot.util.sim.wpiClasses.QuadSwerveSim;
+import frc.robot.util.sim.wpiClasses.QuadSwerveSim.Integrator;
+import frc.robot.util.sim.wpiClasses.SimpleBatteryModel;
 import frc.robot.util.sim.wpiClasses.SwerveModuleSim;
 import frc.robot.util.trajectory.PPChasePoseCommand;
 import frc.robot.util.trajectory.PPSwerveControllerCommand;
@@ -63,13 +90,19 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
      */
 
 
-    private final AHRS navx = new AHRS(Port.kMXP);
-    private SimGyroSensorModel simNavx = new SimGyroSensorModel();
+    private final GyroIO gyroIO;
+    private final GyroIOInputs gyroInputs = new GyroIOInputs();
+    // The sim hardware simulationPeriodic() drives, or null when not simulating it
+    private final GyroIOSim simGyro;
+    private final ModuleIOSim[] simModuleIOs;
+    // The live sensors the odometry thread reads, or null when the samples come from a recording
+    private final GyroOdometryIO gyroOdometryIO;
+    private final ModuleOdometryIO[] moduleOdometryIOs;
 
-    public final PIDController xController = new PIDController(3.0, 0, 0);
-    public final PIDController yController = new PIDController(3.0, 0, 0);
+    public final PIDController xController = new PIDController(DriveConstants.TRAJ_TRANSLATION_KP, 0, 0);
+    public final PIDController yController = new PIDController(DriveConstants.TRAJ_TRANSLATION_KP, 0, 0);
     @Log
-    public final PIDController thetaController = new PIDController(3, 0, 0.1);
+    public final PIDController thetaController = new PIDController(DriveConstants.TRAJ_ROTATION_KP, 0, DriveConstants.TRAJ_ROTATION_KD);
     public final PPHolonomicDriveController holonomicDriveController = new PPHolonomicDriveController(xController, yController, thetaController);
 
     /**
@@ -78,6 +111,39 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
      */
     private final SwerveDrivePoseEstimator odometry;
 
+    /**
+     * Sensor samples from the odometry thread, waiting for periodic() to feed them to the estimator.
+     * The estimator itself is only touched by the main loop.
+     */
+    private final OdometrySampleQueue odometryQueue =
+        new OdometrySampleQueue(NUM_MODULES, DriveConstants.ODOMETRY_QUEUE_CAPACITY);
+    private final OdometryThread odometryThread =
+        new OdometryThread(this::sampleOdometry, odometryQueue, DriveConstants.ODOMETRY_PERIOD_S);
+    // The samples periodic() integrated this loop, as recorded or replayed
+    private final OdometryInputs odometryInputs = new OdometryInputs(NUM_MODULES, odometryQueue.capacity());
+    // The latest reset since periodic() last ran, recorded so replay resets where the robot did
+    private final OdometryResetInputs odometryReset = new OdometryResetInputs(NUM_MODULES);
+    // In sim the sensors only change once per loop, so periodic() samples them itself
+    private final boolean sampleOdometryEachLoop;
+    // Samples from before the last odometry reset measured the old wheel positions, and are discarded
+    private double odometryResetTime_s = Double.NEGATIVE_INFINITY;
+    // Odometry thread only: gyro readings to interpolate to the encoders' measurement time
+    private final TimestampedDoubleBuffer gyroHistory = new TimestampedDoubleBuffer(32);
+    private double lastSampleTime_s = Double.NEGATIVE_INFINITY;
+
+    // Main thread only: replaces a slipping wheel's distance before odometry sees it
+    private final SlipDetector slipDetector = new SlipDetector(
+        new Translation2d[] {
+            ModuleConstants.FL.centerOffset,
+            ModuleConstants.FR.centerOffset,
+            ModuleConstants.BL.centerOffset,
+            ModuleConstants.BR.centerOffset},
+        DriveConstants.SLIP_RESIDUAL_THRESHOLD_MPS,
+        DriveConstants.SLIP_RESIDUAL_FRACTION);
+
+    // The estimated pose after each odometry sample, for getPoseAt()
+    private final PoseHistory poseHistory = new PoseHistory(DriveConstants.POSE_HISTORY_CAPACITY);
+
     private final List<SwerveModuleSim> moduleSims = List.of(
         DrivebaseS.swerveSimModuleFactory(),
         DrivebaseS.swerveSimModuleFactory(),
@@ -95,20 +161,62 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
     );
 
     @Log
-    private SwerveModule fl = new SwerveModule(ModuleConstants.FL);
+    private final SwerveModule fl;
     @Log
-    private SwerveModule fr = new SwerveModule(ModuleConstants.FR);
+    private final SwerveModule fr;
     @Log
-    private SwerveModule bl = new SwerveModule(ModuleConstants.BL);
+    private final SwerveModule bl;
     @Log
-    private SwerveModule br = new SwerveModule(ModuleConstants.BR);
+    private final SwerveModule br;
     @Log.Exclude
-    private final List<SwerveModule> modules = List.of(
-        fl, fr, bl, br
-    );
+    private final List<SwerveModule> modules;
 
+    /**
+     * Creates the drivebase on the robot's hardware, or on simulated hardware in simulation.
+     */
     public DrivebaseS() {
-        navx.reset();
+        this(
+            RobotBase.isReal() ? new GyroIONavX() : new GyroIOSim(),
+            RobotBase.isReal() ? ModuleIOSparkMax::new : ModuleIOSim::new);
+    }
+
+    /**
+     * Creates the drivebase on the given hardware, such as the replay IOs.
+     * Construct it inside an InputLog cycle when recording or replaying, since it reads its hardware.
+     * @param moduleIOFactory creates each module's IO from its constants
+     */
+    public DrivebaseS(GyroIO gyroIO, Function<ModuleConstants, ModuleIO> moduleIOFactory) {
+        this.gyroIO = gyroIO;
+        fl = new SwerveModule(ModuleConstants.FL, moduleIOFactory.apply(ModuleConstants.FL));
+        fr = new SwerveModule(ModuleConstants.FR, moduleIOFactory.apply(ModuleConstants.FR));
+        bl = new SwerveModule(ModuleConstants.BL, moduleIOFactory.apply(ModuleConstants.BL));
+        br = new SwerveModule(ModuleConstants.BR, moduleIOFactory.apply(ModuleConstants.BR));
+        modules = List.of(fl, fr, bl, br);
+
+        // Only simulated hardware is moved by the drivetrain sim
+        simGyro = gyroIO instanceof GyroIOSim ? (GyroIOSim) gyroIO : null;
+        simModuleIOs = new ModuleIOSim[NUM_MODULES];
+        ModuleOdometryIO[] odometryIOs = new ModuleOdometryIO[NUM_MODULES];
+        boolean liveSensors = gyroIO instanceof GyroOdometryIO;
+        for (int i = 0; i < NUM_MODULES; i++) {
+            ModuleIO io = modules.get(i).getIO();
+            simModuleIOs[i] = io instanceof ModuleIOSim ? (ModuleIOSim) io : null;
+            if (io instanceof ModuleOdometryIO) {
+                odometryIOs[i] = (ModuleOdometryIO) io;
+            } else {
+                liveSensors = false;
+            }
+        }
+        gyroOdometryIO = liveSensors ? (GyroOdometryIO) gyroIO : null;
+        moduleOdometryIOs = liveSensors ? odometryIOs : null;
+        sampleOdometryEachLoop = liveSensors && RobotBase.isSimulation();
+
+        gyroIO.reset();
+        updateInputs();
+        // Inputs only change once per loop, so let the sim take steps as long as accuracy allows
+        quadSwerveSim.setIntegrator(Integrator.ADAPTIVE_RK45);
+        // Sag the supply under load, so hard acceleration in sim is as limited as it is on the robot
+        quadSwerveSim.setBatteryModel(new SimpleBatteryModel());
         
         odometry =
         new SwerveDrivePoseEstimator(
@@ -118,15 +226,171 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
             new Pose2d()
         );
         resetPose(new Pose2d());
+        if (gyroOdometryIO != null && RobotBase.isReal()) {
+            odometryThread.start();
+        }
+    }
+
+    /**
+     * Reads the gyro and modules into their inputs, and records them or replaces them from the recording.
+     */
+    private void updateInputs() {
+        gyroIO.updateInputs(gyroInputs);
+        InputLog.getInstance().process(gyroInputs);
+        for (SwerveModule module : modules) {
+            module.updateInputs();
+        }
     }
 
     @Override
     public void periodic() {
-        // update the odometry every 20ms
-        odometry.update(getHeading(), getModulePositions());
+        // Everything else this loop, commands and logging included, reads these inputs
+        updateInputs();
+        // Resets applied as they happened; replay has no commands to make them, so applies them here
+        InputLog.getInstance().process(odometryReset);
+        if (odometryReset.pending && InputLog.getInstance().isReplaying()) {
+            applyOdometryReset();
+        }
+        odometryReset.pending = false;
+        if (sampleOdometryEachLoop) {
+            odometryThread.sampleNow();
+        }
+        // Take every sample taken since the last loop, in order
+        odometryInputs.clear();
+        OdometrySample queued;
+        while ((queued = odometryQueue.peek()) != null) {
+            odometryInputs.add(queued);
+            odometryQueue.release();
+        }
+        InputLog.getInstance().process(odometryInputs);
+
+        for (int s = 0; s < odometryInputs.size(); s++) {
+            OdometrySample sample = odometryInputs.get(s);
+            if (sample.timestamp_s >= odometryResetTime_s) {
+                int slipping = slipDetector.update(
+                    sample.timestamp_s, sample.gyroAngle_rad, sample.driveDistance_m, sample.moduleAngle_rad);
+                double[] distances = slipDetector.getCorrectedDistances();
+                SwerveModulePosition[] positions = new SwerveModulePosition[NUM_MODULES];
+                for (int i = 0; i < NUM_MODULES; i++) {
+                    positions[i] = new SwerveModulePosition(
+                        distances[i], new Rotation2d(sample.moduleAngle_rad[i]));
+                    modules.get(i).setSlipping(i == slipping);
+                }
+                Pose2d estimate = odometry.updateWithTime(sample.timestamp_s, new Rotation2d(sample.gyroAngle_rad), positions);
+                poseHistory.add(sample.timestamp_s, estimate.getX(), estimate.getY(), estimate.getRotation().getRadians());
+            }
+        }
+    }
+
+    /**
+     * Reads the gyro and module encoders for the odometry thread, through their odometry IOs rather
+     * than this loop's inputs. Those are safe to call from any thread. Never runs when replaying.
+     *
+     * Each Spark MAX sends its position on its own schedule, so rather than mixing readings of
+     * different ages, everything is interpolated to one time: the newest that every module's drive
+     * encoder has a measurement at or after, by the timestamps on their CAN frames. Steering angles
+     * come less often and barely change in between, so they're read at that time without holding it back.
+     */
+    private boolean sampleOdometry(OdometrySample sample) {
+        double now = Timer.getFPGATimestamp();
+        gyroHistory.add(now, gyroOdometryIO.getHeading_rad());
+        double sampleTime = now;
+        for (int i = 0; i < NUM_MODULES; i++) {
+            // A module that has stopped reporting would hold everything back. Its wheel reads as
+            // frozen instead, which the slip detector replaces while the robot moves.
+            if (moduleOdometryIOs[i].areEncodersHealthy()) {
+                sampleTime = Math.min(sampleTime, moduleOdometryIOs[i].getEncoderTimestamp());
+            }
+        }
+        // Never sample further back than this
+        sampleTime = Math.max(sampleTime, now - DriveConstants.ODOMETRY_MAX_SAMPLE_AGE_S);
+        if (sampleTime <= lastSampleTime_s) {
+            return false;
+        }
+        lastSampleTime_s = sampleTime;
+
+        sample.timestamp_s = sampleTime;
+        sample.gyroAngle_rad = gyroHistory.getAt(sampleTime);
+        // Each position comes from one consistent read of its encoder's history. Frames that arrived
+        // since the timestamps were read only add to the history, so sampleTime is still covered.
+        for (int i = 0; i < NUM_MODULES; i++) {
+            sample.driveDistance_m[i] = moduleOdometryIOs[i].getDriveDistanceAt(sampleTime);
+            sample.moduleAngle_rad[i] = moduleOdometryIOs[i].getRotationAngleAt(sampleTime);
+        }
+        return true;
+    }
+
+    /**
+     * @return false if any module's encoders have stopped sending position frames
+     */
+    @Log
+    public boolean areModuleEncodersHealthy() {
+        for (int i = 0; i < NUM_MODULES; i++) {
+            if (!modules.get(i).areEncodersHealthy()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves every module's azimuth and drive loops to the roboRIO or onto the Spark MAXes, from the
+     * next setpoint on, for comparing the two.
+     */
+    public void setModuleControlMode(SwerveModuleControlMode mode) {
+        for (SwerveModule module : modules) {
+            module.setControlMode(mode);
+        }
+    }
+
+    /**
+     * @return true if in the latest odometry sample the wheels disagreed with each other but no
+     * single wheel could be blamed, as when the whole robot is pushed sideways
+     */
+    @Log
+    public boolean isOdometryInconsistent() {
+        return slipDetector.isInconsistent();
+    }
+
+    /**
+     * Corrects the pose estimate with a pose measured by vision. Main thread only, like the estimator.
+     * @param visionPose the robot pose the camera saw
+     * @param timestamp_s FPGA time the frame was captured. The estimator replays odometry since then.
+     * @param stdDevs x (m), y (m) and heading (rad) standard deviations of the measurement
+     */
+    public void addVisionMeasurement(Pose2d visionPose, double timestamp_s, Matrix<N3, N1> stdDevs) {
+        odometry.addVisionMeasurement(visionPose, timestamp_s, stdDevs);
+    }
+
+    /**
+     * Number of odometry samples lost because the main loop fell too far behind the odometry thread.
+     */
+    public long getDroppedOdometrySamples() {
+        return odometryQueue.getDroppedCount();
     }
     
     public void drive(ChassisSpeeds speeds) {
+        setModuleStates(calculateModuleStates(speeds));
+    }
+
+    /**
+     * Converts robot-relative chassis speeds into the module states drive() will command.
+     * @param speeds the robot-relative chassis speeds
+     * @return the four module states, in FL, FR, BL, BR order
+     */
+    public static SwerveModuleState[] calculateModuleStates(ChassisSpeeds speeds) {
+        return calculateModuleStates(m_kinematics, speeds);
+    }
+
+    /**
+     * Like calculateModuleStates(ChassisSpeeds), with the given kinematics in place of the shared
+     * constant. Kinematics objects cache the module headings on every call, so the HAL-free
+     * simulations pass their own to drive exactly as the robot does from several threads at once.
+     * @param kinematics kinematics for our module layout, used by no other thread
+     * @param speeds the robot-relative chassis speeds
+     * @return the four module states, in FL, FR, BL, BR order
+     */
+    public static SwerveModuleState[] calculateModuleStates(SwerveDriveKinematics kinematics, ChassisSpeeds speeds) {
         // use kinematics (wheel placements) to convert overall robot state to array of individual module states
         SwerveModuleState[] states;
 
@@ -140,7 +404,7 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
                 states = getStoppedStates();
         } else {
             // make sure the wheels don't try to spin faster than the maximum speed possible
-            states = m_kinematics.toSwerveModuleStates(speeds);
+            states = kinematics.toSwerveModuleStates(speeds);
             NomadMathUtil.normalizeDrive(states, speeds,
                 DriveConstants.MAX_FWD_REV_SPEED_MPS,
                 DriveConstants.MAX_ROTATE_SPEED_RAD_PER_SEC,
@@ -154,7 +418,7 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
                 0,
                 new Rotation2d(0));
         }*/ 
-        setModuleStates(states);
+        return states;
     }
 
     public void driveFieldRelative(ChassisSpeeds fieldRelativeSpeeds) {
@@ -209,7 +473,7 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
      * 
      * @return
      */
-    private SwerveModuleState[] getStoppedStates() {
+    private static SwerveModuleState[] getStoppedStates() {
 //        SwerveModuleState[] states = new SwerveModuleState[4];
 //        for (int i = 0; i < NUM_MODULES; i++) {
 //            states[i] = new SwerveModuleState(
@@ -273,6 +537,18 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
         return odometry.getEstimatedPosition();
     }
 
+    /**
+     * Returns where the robot was estimated to be at a past time, interpolated between odometry
+     * samples. For latency compensation: pass the time a camera frame was captured, a shot was
+     * fired, and so on. Times older than the history get the oldest pose kept.
+     * The poses are as estimated at the time; later vision corrections don't revise them.
+     * @param timestamp_s FPGA time
+     */
+    public Pose2d getPoseAt(double timestamp_s) {
+        Pose2d pose = poseHistory.getPoseAt(timestamp_s);
+        return pose == null ? getPose() : pose;
+    }
+
     /**
      * Return the simulated estimate of the robot's pose.
      * NOTE: on a real robot this will return a new Pose2d, (0, 0, 0)
@@ -293,7 +569,40 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
      */
     public void resetPose(Pose2d pose) {
         quadSwerveSim.modelReset(pose);
-        odometry.resetPosition(getHeading(), getModulePositions(), pose);
+        resetOdometry(pose);
+    }
+
+    private void resetOdometry(Pose2d pose) {
+        odometryReset.pending = true;
+        odometryReset.timestamp_s = Timer.getFPGATimestamp();
+        odometryReset.poseX_m = pose.getX();
+        odometryReset.poseY_m = pose.getY();
+        odometryReset.poseHeading_rad = pose.getRotation().getRadians();
+        odometryReset.gyroAngle_rad = gyroInputs.heading_rad;
+        for (int i = 0; i < NUM_MODULES; i++) {
+            odometryReset.driveDistance_m[i] = modules.get(i).getDriveDistanceMeters();
+            odometryReset.moduleAngle_rad[i] = modules.get(i).getCanEncoderAngle().getRadians();
+        }
+        applyOdometryReset();
+    }
+
+    /**
+     * Resets the estimator as odometryReset describes, whether it was just made or read from a recording.
+     */
+    private void applyOdometryReset() {
+        odometryResetTime_s = odometryReset.timestamp_s;
+        odometryQueue.clear();
+        poseHistory.clear();
+        slipDetector.reset();
+        SwerveModulePosition[] positions = new SwerveModulePosition[NUM_MODULES];
+        for (int i = 0; i < NUM_MODULES; i++) {
+            positions[i] = new SwerveModulePosition(
+                odometryReset.driveDistance_m[i], new Rotation2d(odometryReset.moduleAngle_rad[i]));
+        }
+        odometry.resetPosition(
+            new Rotation2d(odometryReset.gyroAngle_rad),
+            positions,
+            new Pose2d(odometryReset.poseX_m, odometryReset.poseY_m, new Rotation2d(odometryReset.poseHeading_rad)));
     }
 
     // reset the measured distance driven for each module
@@ -307,10 +616,7 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
      */
     @Log(methodName = "getRadians")
     public Rotation2d getHeading() {
-        if(RobotBase.isSimulation()) {
-            return simNavx.getRotation2d();
-        }
-        return navx.getRotation2d();
+        return new Rotation2d(gyroInputs.heading_rad);
     }
 
     @Log(methodName = "getRadians")
@@ -326,8 +632,9 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
      * Resets the navX to 0 position;
      */
     public void resetImu() {
-        navx.reset();
-        simNavx.resetToPose(new Pose2d());
+        gyroIO.reset();
+        // The rest of this loop sees the reset without reading the gyro again
+        gyroInputs.heading_rad = 0;
     }
  
     public void setRotationState(double radians) {
@@ -358,7 +665,11 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
 
     @Override
     public void simulationPeriodic() {
-        
+        // Nothing to simulate when the drivebase is on real or replayed hardware
+        if (simGyro == null) {
+            return;
+        }
+
         // set inputs. Set 0 if the robot is disabled.
         if(!DriverStation.isEnabled()){
             for(int idx = 0; idx < QuadSwerveSim.NUM_MODULES; idx++){
@@ -366,19 +677,17 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
             }
         } else {
             for(int idx = 0; idx < QuadSwerveSim.NUM_MODULES; idx++){
-                double azmthVolts = modules.get(idx).getAppliedRotationVoltage();
-                double wheelVolts = modules.get(idx).getAppliedDriveVoltage() * 1.44;
+                double azmthVolts = simModuleIOs[idx].getRotationVolts();
+                double wheelVolts = simModuleIOs[idx].getDriveVolts();
                 moduleSims.get(idx).setInputVoltages(wheelVolts, azmthVolts);
             }
         }
 
         Pose2d prevRobotPose = quadSwerveSim.getCurPose();
 
-        // Update model (several small steps)
-        for (int i = 0; i< 20; i++) {
-            quadSwerveSim.update(0.001);
-        }
-        
+        // Update model over one loop period
+        quadSwerveSim.advance(0.02);
+
 
         //Set the state of the sim'd hardware
         for(int idx = 0; idx < QuadSwerveSim.NUM_MODULES; idx++){
@@ -389,11 +698,71 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
 
             double wheelVel = moduleSims.get(idx).getWheelEncoderVelocityRevPerSec();
             wheelVel = wheelVel / WHEEL_ENC_COUNTS_PER_WHEEL_REV * 2 * Math.PI * WHEEL_RADIUS_M;
-            modules.get(idx).setSimState(azmthPos, wheelPos, wheelVel);
+            simModuleIOs[idx].setModelState(azmthPos, wheelPos, wheelVel);
            
         }
         // Set the gyro based on the difference between the previous pose and this pose.
-        simNavx.update(quadSwerveSim.getCurPose(), prevRobotPose);
+        simGyro.update(quadSwerveSim.getCurPose(), prevRobotPose);
+
+        // Publish the sagged battery voltage, which motor controllers' setVoltage() compensates against
+        RoboRioSim.setVInVoltage(quadSwerveSim.getSupplyVoltage());
+        RoboRioSim.setVInCurrent(quadSwerveSim.getBatteryModel().getTotalCurrent_A());
+    }
+
+    /**
+     * Captures the whole drivebase simulation: the physics, the simulated gyro and encoders, and
+     * the odometry estimate. Restoring it later with restoreSimState() rewinds the sim to this
+     * moment, so a run can be replayed from partway through with, say, different gains.
+     * Commands and controller state aren't included; those are the caller's to set up again.
+     * @return a snapshot, positioned at its start
+     */
+    public ByteBuffer saveSimState() {
+        requireSimHardware();
+        ByteBuffer snapshot = ByteBuffer.allocate(
+            quadSwerveSim.getStateBytes()
+            + GyroIOSim.STATE_BYTES
+            + NUM_MODULES * ModuleIOSim.STATE_BYTES
+            + 3 * Double.BYTES);
+        quadSwerveSim.saveState(snapshot);
+        simGyro.saveState(snapshot);
+        for (ModuleIOSim moduleIO : simModuleIOs) {
+            moduleIO.saveState(snapshot);
+        }
+        Pose2d estimate = getPose();
+        snapshot.putDouble(estimate.getX());
+        snapshot.putDouble(estimate.getY());
+        snapshot.putDouble(estimate.getRotation().getRadians());
+        return snapshot.flip();
+    }
+
+    /**
+     * Rewinds the simulation to a snapshot from saveSimState(). The odometry estimate restarts from
+     * the saved estimate; it loses its history of past measurements, which only matters to vision
+     * measurements older than the snapshot.
+     * @param snapshot a snapshot from saveSimState(). It is read from its start and left unchanged.
+     */
+    public void restoreSimState(ByteBuffer snapshot) {
+        requireSimHardware();
+        ByteBuffer buf = snapshot.duplicate();
+        buf.rewind();
+        quadSwerveSim.restoreState(buf);
+        simGyro.restoreState(buf);
+        for (ModuleIOSim moduleIO : simModuleIOs) {
+            moduleIO.restoreState(buf);
+        }
+        // The rest of this loop reads the restored hardware. Not recorded: a rewound run isn't replayable.
+        gyroIO.updateInputs(gyroInputs);
+        for (SwerveModule module : modules) {
+            module.refreshInputs();
+        }
+        Pose2d estimate = new Pose2d(buf.getDouble(), buf.getDouble(), new Rotation2d(buf.getDouble()));
+        resetOdometry(estimate);
+    }
+
+    private void requireSimHardware() {
+        if (simGyro == null) {
+            throw new IllegalStateException("The drivebase isn't running on simulated hardware");
+        }
     }
 
     /**
@@ -413,6 +782,18 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
     }
 
     static SwerveModuleSim swerveSimModuleFactory(){
+        return swerveSimModuleFactory(1.5, 2, 0.01, ROBOT_MASS_kg);
+    }
+
+    /**
+     * Builds a module sim with the given physical parameters. The no-argument factory uses our nominal values.
+     * @param treadStaticCoefFric static coefficient of friction between tread and carpet
+     * @param treadKineticCoefFric kinetic coefficient of friction between tread and carpet
+     * @param azimuthEffectiveMOI effective moment of inertia of the module about its steering axis
+     * @param robotMass_kg robot mass, which sets the normal force on each module
+     */
+    public static SwerveModuleSim swerveSimModuleFactory(
+            double treadStaticCoefFric, double treadKineticCoefFric, double azimuthEffectiveMOI, double robotMass_kg){
         return new SwerveModuleSim(DCMotor.getNEO(1), 
                                    DCMotor.getNEO(1), 
                                    WHEEL_RADIUS_M,
@@ -420,12 +801,35 @@ public class DrivebaseS extends SubsystemBase implements Loggable {
                                    1.0/WHEEL_REVS_PER_ENC_REV,
                                    1.0/AZMTH_REVS_PER_ENC_REV, // same as motor rotations because NEO encoder is on motor shaft
                                    1.0/WHEEL_REVS_PER_ENC_REV,
-                                   1.5,
-                                   2,
-                                   ROBOT_MASS_kg * 9.81 / QuadSwerveSim.NUM_MODULES, 
-                                   0.01 
+                                   treadStaticCoefFric,
+                                   treadKineticCoefFric,
+                                   robotMass_kg * 9.81 / QuadSwerveSim.NUM_MODULES, 
+                                   azimuthEffectiveMOI 
                                    );
     }
+
+    /**
+     * Builds a batch of numRobots simulated drivebases with the same physical parameters as
+     * swerveSimModuleFactory() and the QuadSwerveSim above. Use setRobotParameters to vary them per robot.
+     */
+    public static BatchedQuadSwerveSim batchedSwerveSimFactory(int numRobots){
+        return new BatchedQuadSwerveSim(numRobots,
+                                        WHEEL_BASE_WIDTH_M,
+                                        WHEEL_BASE_WIDTH_M,
+                                        DCMotor.getNEO(1),
+                                        DCMotor.getNEO(1),
+                                        WHEEL_RADIUS_M,
+                                        1.0/AZMTH_REVS_PER_ENC_REV,
+                                        1.0/WHEEL_REVS_PER_ENC_REV,
+                                        1.0/AZMTH_REVS_PER_ENC_REV,
+                                        1.0/WHEEL_REVS_PER_ENC_REV,
+                                        1.5,
+                                        2,
+                                        0.01,
+                                        ROBOT_MASS_kg,
+                                        ROBOT_MOI_KGM2
+                                        );
+    }
     
 
     public void resetRelativeRotationEncoders() {
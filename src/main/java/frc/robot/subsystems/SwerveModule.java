@@ -1,23 +1,17 @@
 package frc.robot.subsystems;
 
-import com.ctre.phoenix.sensors.*;
-import com.revrobotics.CANSparkMax;
-import com.revrobotics.CANSparkMax.IdleMode;
-import com.revrobotics.CANSparkMaxLowLevel.MotorType;
-
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
-import edu.wpi.first.math.trajectory.TrapezoidProfile;
-import edu.wpi.first.wpilibj.DutyCycleEncoder;
-import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.DriveConstants;
 import frc.robot.Constants.DriveConstants.ModuleConstants;
-import frc.robot.util.NomadMathUtil;
-import frc.robot.util.sim.DutyCycleEncoderSim;
-import frc.robot.util.sim.SparkMaxEncoderWrapper;
+import frc.robot.subsystems.io.ModuleIO;
+import frc.robot.subsystems.io.ModuleIO.ModuleIOInputs;
+import frc.robot.util.controllers.SwerveModuleControlLaw;
+import frc.robot.util.controllers.SwerveModuleControlMode;
+import frc.robot.util.replay.InputLog;
 import io.github.oblarg.oblog.Loggable;
 import io.github.oblarg.oblog.annotations.Log;
 
@@ -26,119 +20,41 @@ public class SwerveModule extends SubsystemBase implements Loggable {
     /**
      * Class to represent and handle a swerve module
      * A module's state is measured by a CANCoder for the absolute position, integrated CANEncoder for relative position
-     * for both rotation and linear movement
+     * for both rotation and linear movement, read through a ModuleIO
      */
 
     private SwerveModuleState desiredState = new SwerveModuleState();
 
-    private static final double rotationkP = 3;
-    //private static final double rotationkD = 0.05 / 2.5;
-    private static final double rotationkD = 0;
-
-    private static final double drivekP = 4.6; // 0.06 w/measurement delay?
-
-    private final CANSparkMax driveMotor;
-    private final CANSparkMax rotationMotor;
-
-    // These wrappers handle sim value holding, as well as circumventing the Spark MAX velocity signal delay
-    // by integrating position. Credit for the latter to 6328. 
-    private final SparkMaxEncoderWrapper driveEncoderWrapper;
-    private final SparkMaxEncoderWrapper rotationEncoderWrapper;
+    // The module's hardware, and what was read from it this loop. Everything in the loop,
+    // logging included, reads the inputs rather than the hardware.
+    private final ModuleIO io;
+    private final ModuleIOInputs inputs = new ModuleIOInputs();
 
-    private final CANCoder canCoder;
-    private final CANCoderSimCollection canCoderSim;
-
-    private final ProfiledPIDController rotationPIDController;
+    // The azimuth and drive loops, shared with the HAL-free simulations.
+    private final SwerveModuleControlLaw controlLaw = new SwerveModuleControlLaw();
+    private final ProfiledPIDController rotationPIDController = controlLaw.getRotationPIDController();
     private final double magEncoderOffset;
     // logging position error because it's actually the "process variable", vs its derivative
     @Log(methodName="getPositionError", name="speedError")
-    private final PIDController drivePIDController;
+    private final PIDController drivePIDController = controlLaw.getDrivePIDController();
     private final String loggingName;
+    private SwerveModuleControlMode controlMode = SwerveModuleControlMode.RIO;
+    // Whether the IO took the loops onto its motor controllers
+    private boolean onboardControl = false;
+
+    // Odometry's verdict on this wheel, for telemetry
+    private boolean slipping = false;
+    private int slipEvents = 0;
 
 
-    public SwerveModule( ModuleConstants moduleConstants) {
-        driveMotor = new CANSparkMax(moduleConstants.driveMotorID, MotorType.kBrushless);
-        rotationMotor = new CANSparkMax(moduleConstants.rotationMotorID, MotorType.kBrushless);
-        driveMotor.restoreFactoryDefaults(false);
-        rotationMotor.restoreFactoryDefaults(false);
+    public SwerveModule(ModuleConstants moduleConstants, ModuleIO io) {
+        this.io = io;
         magEncoderOffset = moduleConstants.magEncoderOffset;
 
-        //set the output of the drive encoder to be in meters (instead of motor rots) for linear measurement
-        // wheel diam * pi = wheel circumference (meters/wheel rot) *
-        // 1/6.86 wheel rots per motor rot *
-        // number of motor rots
-        // = number of meters traveled
-        driveMotor.getEncoder().setPositionConversionFactor(
-            Math.PI * (DriveConstants.WHEEL_RADIUS_M * 2) // meters/ wheel rev
-            / DriveConstants.WHEEL_ENC_COUNTS_PER_WHEEL_REV // 1/ (enc revs / wheel rev) = wheel rev/enc rev
-        );
-
-        //set the output of the drive encoder to be in meters per second (instead of motor rpm) for velocity measurement
-        // wheel diam * pi = wheel circumference (meters/wheel rot) *
-        // 1/60 minutes per sec *
-        // 1/5.14 wheel rots per motor rot *
-        // motor rpm = wheel speed, m/s
-        driveMotor.getEncoder().setVelocityConversionFactor(
-            (DriveConstants.WHEEL_RADIUS_M * 2) * Math.PI / 60 / DriveConstants.WHEEL_ENC_COUNTS_PER_WHEEL_REV
-        );
-
-        //set the output of the rotation encoder to be in radians
-        // (2pi rad/(module rotation)) / 12.8 (motor rots/module rots)
-        rotationMotor.getEncoder().setPositionConversionFactor(2.0 * Math.PI * DriveConstants.AZMTH_REVS_PER_ENC_REV);
-
-        // Create the encoder wrappers after setting conversion factors so that the wrapper reads the conversions.
-        driveEncoderWrapper = new SparkMaxEncoderWrapper(driveMotor);
-        rotationEncoderWrapper = new SparkMaxEncoderWrapper(rotationMotor);
-        //Config the mag encoder, which is directly on the module rotation shaft.
-//        magEncoder = new DutyCycleEncoder(moduleConstants.magEncoderID);
-        canCoder = new CANCoder(moduleConstants.magEncoderID);
-
-        CANCoderConfiguration config = new CANCoderConfiguration();
-        config.absoluteSensorRange = AbsoluteSensorRange.Unsigned_0_to_360;
-        config.unitString = "rad";
-        config.sensorCoefficient = 2 * Math.PI / 4096.0; // 2PI radians over 4096 ticks
-        config.sensorTimeBase = SensorTimeBase.PerSecond;
-        //config.magnetOffsetDegrees = moduleConstants.magEncoderOffset * 180.0 / Math.PI;
-        config.initializationStrategy = SensorInitializationStrategy.BootToAbsolutePosition;
-
-        canCoder.configAllSettings(config);
-
-        //magEncoder.setPositionOffset(measuredOffsetRadians/(2*Math.PI));
-        // The magnet in the module is not aligned straight down the direction the wheel points, but it is fixed in place.
-        // This means we can subtract a fixed position offset from the encoder reading,
-        // I.E. if the module is at 0 but the magnet points at 30 degrees, we can subtract 30 degrees from all readings
-        //magEncoder.setPositionOffset(measuredOffsetRadians/(2*Math.PI));
-        
-        //Allows us to set what the mag encoder reads in sim.
-        // Start with what it would read if the module is forward.
-//        magEncoderSim = new DutyCycleEncoderSim(magEncoder);
-        canCoderSim = canCoder.getSimCollection();
-
-        //Drive motors should brake, rotation motors should coast (to allow module realignment)
-        driveMotor.setIdleMode(IdleMode.kBrake);
-        rotationMotor.setIdleMode(IdleMode.kBrake);
-
-        driveMotor.setInverted(true);
-        rotationMotor.setInverted(true);
-
-        // Config the pid controllers
-
-        // For a position controller we use a P loop on the position error
-        // and a D loop, which is P on the derivative/rate of change of the position error
-        // Theoretically, if the error is increasing (aka, the setpoint is getting away),
-        // we should match the velocity of the setpoint with our D term to stabilize the error,
-        // then add the additional output proportional to the size of the error.
-        // Trapezoid Profile Constraints: 7.8 rot/s (limit of the NEO), 40 rot/s^2
-        rotationPIDController = new ProfiledPIDController(rotationkP, 0.0, rotationkD, new TrapezoidProfile.Constraints(7.8*2 *Math.PI, 400*2*Math.PI));
-        // Tell the PID controller that it can move across the -pi to pi rollover point.
-        rotationPIDController.enableContinuousInput(-Math.PI, Math.PI);
-
-        // For a velocity controller we just use P
-        // (and feedforward, which is handled in #setDesiredStateClosedLoop)
-        drivePIDController = new PIDController(drivekP, 0, 0);
         // Give this module a unique name on the dashboard so we have four separate sub-tabs.
-        loggingName = "SwerveModule-" + moduleConstants.name + "-[" + driveMotor.getDeviceId() + ',' + rotationMotor.getDeviceId() + ']';
+        loggingName = "SwerveModule-" + moduleConstants.name + "-[" + moduleConstants.driveMotorID + ',' + moduleConstants.rotationMotorID + ']';
         resetDistance();
+        setControlMode(DriveConstants.MODULE_CONTROL_MODE);
     }
 
     /**
@@ -152,7 +68,31 @@ public class SwerveModule extends SubsystemBase implements Loggable {
      * Reset the driven distance to 0.
      */
     public void resetDistance() {
-        driveEncoderWrapper.setPosition(0);
+        io.setDrivePosition(0);
+        // The rest of this loop sees the reset without reading the hardware again, the same
+        // whether it's running on the hardware or replaying
+        inputs.driveDistance_m = 0;
+    }
+
+    /**
+     * Reads the module's hardware into its inputs, and records them or replaces them from the
+     * recording. DrivebaseS calls this once at the start of each loop.
+     */
+    public void updateInputs() {
+        io.updateInputs(inputs);
+        InputLog.getInstance().process(inputs);
+    }
+
+    ModuleIO getIO() {
+        return io;
+    }
+
+    /**
+     * Reads the hardware into the inputs without recording them, for when the hardware was changed
+     * outside the loop, such as by restoring a simulation snapshot.
+     */
+    void refreshInputs() {
+        io.updateInputs(inputs);
     }
 
     /**
@@ -160,7 +100,7 @@ public class SwerveModule extends SubsystemBase implements Loggable {
      * @return the distance in meters.
      */
     public double getDriveDistanceMeters() {
-        return driveEncoderWrapper.getPosition();
+        return inputs.driveDistance_m;
     }
     
     /**
@@ -169,8 +109,7 @@ public class SwerveModule extends SubsystemBase implements Loggable {
      */
     @Log(methodName = "getRadians")
     public Rotation2d getMagEncoderAngle() {
-        double unsignedAngle = canCoder.getAbsolutePosition() - magEncoderOffset;
-        //double unsignedAngle = canCoder.getAbsolutePosition() ;
+        double unsignedAngle = inputs.canCoderAngle_rad - magEncoderOffset;
         return new Rotation2d(unsignedAngle);
     }
 
@@ -181,8 +120,7 @@ public class SwerveModule extends SubsystemBase implements Loggable {
      */
     @Log(methodName = "getRadians")
     public Rotation2d getRawCANCoderAngle() {
-        double unsignedAngle = canCoder.getAbsolutePosition();
-        return new Rotation2d(unsignedAngle);
+        return new Rotation2d(inputs.canCoderAngle_rad);
     }
 
     /**
@@ -193,7 +131,38 @@ public class SwerveModule extends SubsystemBase implements Loggable {
      */
     @Log(methodName = "getRadians")
     public Rotation2d getCanEncoderAngle() {
-        return new Rotation2d(rotationEncoderWrapper.getPosition());
+        return new Rotation2d(inputs.rotationAngle_rad);
+    }
+
+    /**
+     * @return false if either encoder's position frames had stopped arriving as of this loop, so its readings are frozen
+     */
+    @Log
+    public boolean areEncodersHealthy() {
+        return inputs.encodersHealthy;
+    }
+
+    /**
+     * Records whether odometry found this wheel slipping in its latest sample.
+     */
+    public void setSlipping(boolean slipping) {
+        if (slipping && !this.slipping) {
+            slipEvents++;
+        }
+        this.slipping = slipping;
+    }
+
+    @Log
+    public boolean isSlipping() {
+        return slipping;
+    }
+
+    /**
+     * @return how many times this wheel has started slipping
+     */
+    @Log
+    public int getSlipEvents() {
+        return slipEvents;
     }
 
     /**
@@ -204,7 +173,7 @@ public class SwerveModule extends SubsystemBase implements Loggable {
      */
     @Log
     public double getCurrentVelocityMetersPerSecond() {
-        return driveEncoderWrapper.getVelocity();
+        return inputs.driveVelocity_mps;
         // if(RobotBase.isSimulation()) {
         //     return driveEncoderSim.getVelocity();
         // }
@@ -213,13 +182,21 @@ public class SwerveModule extends SubsystemBase implements Loggable {
         // }
     }
 
+    /**
+     * @return the drive motor voltage: as measured by the Spark MAX on the robot, or as commanded in
+     * simulation, where the drivetrain sim limits it to the simulated battery voltage
+     */
     @Log
     public double getAppliedDriveVoltage() {
-        return driveMotor.getAppliedOutput();
+        return inputs.appliedDriveVolts;
     }
+
+    /**
+     * @return the rotation motor voltage, measured or commanded as for {@link #getAppliedDriveVoltage()}
+     */
     @Log
     public double getAppliedRotationVoltage() {
-        return rotationMotor.getAppliedOutput();
+        return inputs.appliedRotationVolts;
     }
 
 
@@ -230,8 +207,10 @@ public class SwerveModule extends SubsystemBase implements Loggable {
      * the module offset from forward.
     */
     public void initRotationOffset() {
-        rotationEncoderWrapper.setPosition(getMagEncoderAngle().getRadians());
-        System.out.println("initRotationOffset "  + getMagEncoderAngle().getRadians());
+        double angle_rad = getMagEncoderAngle().getRadians();
+        io.setRotationPosition(angle_rad);
+        inputs.rotationAngle_rad = angle_rad;
+        System.out.println("initRotationOffset "  + angle_rad);
     }
 
     /**
@@ -241,30 +220,43 @@ public class SwerveModule extends SubsystemBase implements Loggable {
      * Uses PID and a feedforward to control the output
      */
     public void setDesiredStateClosedLoop(SwerveModuleState desiredState) {
+        if (onboardControl) {
+            this.desiredState = controlLaw.optimize(desiredState, getCanEncoderAngle());
+            io.setOnboardReference(controlLaw, this.desiredState, inputs.rotationAngle_rad);
+            return;
+        }
 
         // Save the desired state for reference (Simulation assumes the modules always are at the desired state)
-        
-        desiredState = SwerveModuleState.optimize(desiredState, getCanEncoderAngle());
-        desiredState = NomadMathUtil.optimize(desiredState, getCanEncoderAngle(), 90.0);
-        SwerveModuleState previousState = this.desiredState;
-        this.desiredState = desiredState;
-
-        
-        double goal = this.desiredState.angle.getRadians();
-        double measurement = getCanEncoderAngle().getRadians();
-        double rotationVolts = rotationPIDController.calculate(measurement, goal);
-//        /*
-        if (rotationVolts > 0.0) {
-            rotationVolts += 0.04;
-        } else if (rotationVolts < 0.0) {
-            rotationVolts -= 0.04;
+        controlLaw.calculate(desiredState, getCanEncoderAngle(), getCurrentVelocityMetersPerSecond());
+        this.desiredState = controlLaw.getDesiredState();
+
+        io.setVoltages(controlLaw.getDriveVolts(), controlLaw.getRotationVolts());
+    }
+
+    /**
+     * Chooses where the azimuth and drive loops run from the next setpoint on. Only the Spark MAXes
+     * have onboard loops, so in simulation and replay they stay on the RIO whatever the mode.
+     */
+    public void setControlMode(SwerveModuleControlMode controlMode) {
+        this.controlMode = controlMode;
+        boolean wasOnboard = onboardControl;
+        onboardControl = io.setOnboardControl(controlMode == SwerveModuleControlMode.ONBOARD);
+        if (wasOnboard && !onboardControl) {
+            // The profile last ran before the switch; start it again from where the module is now
+            rotationPIDController.reset(inputs.rotationAngle_rad);
         }
-//        */
-        double driveVolts = drivePIDController.calculate(getCurrentVelocityMetersPerSecond(), this.desiredState.speedMetersPerSecond)
-            + DriveConstants.driveFeedForward.calculate(this.desiredState.speedMetersPerSecond);
-            // (this.desiredState.speedMetersPerSecond - previousState.speedMetersPerSecond) / 0.02);
-        rotationMotor.setVoltage(rotationVolts);
-        driveMotor.setVoltage(driveVolts);
+    }
+
+    public SwerveModuleControlMode getControlMode() {
+        return controlMode;
+    }
+
+    /**
+     * @return true if the Spark MAXes are closing the loops
+     */
+    @Log
+    public boolean isOnboardControl() {
+        return onboardControl;
     }
 
     public void periodic() {
@@ -282,30 +274,22 @@ public class SwerveModule extends SubsystemBase implements Loggable {
      */
     public void resetEncoders() {
         initRotationOffset();
-        driveEncoderWrapper.setPosition(0);
+        resetDistance();
     }
     
-    /**
-     * Set the state of the module as specified by the simulator
-     * @param angle_rad
-     * @param wheelPos_m
-     * @param wheelVel_mps
-     */
-    public void setSimState(double angle_rad, double wheelPos_m, double wheelVel_mps) {
-        rotationEncoderWrapper.setSimPosition(angle_rad);
-        driveEncoderWrapper.setSimPosition(wheelPos_m);
-        driveEncoderWrapper.setSimVelocity(wheelVel_mps);
-
-        canCoderSim.setRawPosition((int) (angle_rad * 4096 / 2 * Math.PI));
-    }
-
     @Log
     public double getRotationSetpoint() {
+        if (onboardControl) {
+            return desiredState.angle.getRadians();
+        }
         return rotationPIDController.getSetpoint().position;
     }
 
     @Log
     public double getVelocitySetpoint() {
+        if (onboardControl) {
+            return desiredState.speedMetersPerSecond;
+        }
         return drivePIDController.getSetpoint();
     }
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+package frc.robot.subsystems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.Field3d;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.util.sim.SimVisionCamera;
+import frc.robot.util.vision.AprilTagLayoutLoader;
+import frc.robot.util.vision.IndexedTagLayout;
+import frc.robot.util.vision.MultiTagPoseSolver;
+import frc.robot.util.vision.PhotonVisionCamera;
+import frc.robot.util.vision.TagSighting;
+import frc.robot.util.vision.VisionCamera;
+import frc.robot.util.vision.VisionMeasurement;
+import io.github.oblarg.oblog.Loggable;
+import io.github.oblarg.oblog.annotations.Log;
+
+public class VisionS extends SubsystemBase implements Loggable {
+
+    /**
+     * Subsystem that corrects the drivebase pose estimate with AprilTag sightings.
+     * Cameras are read and poses solved on a Notifier thread; the solved poses are handed to
+     * the drivebase's estimator in periodic(), on the main thread, with the time their frame was captured.
+     * In simulation a SimVisionCamera sees the tags from the simulated robot pose instead.
+     * The tag layout loads in the background; vision starts once it's ready.
+     */
+
+    private final DrivebaseS drivebase;
+    private final Field3d field3d;
+    private final CompletableFuture<IndexedTagLayout> layoutLoad;
+    private boolean started = false;
+    private final List<VisionCamera> cameras = new ArrayList<>();
+    private MultiTagPoseSolver solver;
+    private final ConcurrentLinkedQueue<VisionMeasurement> measurements = new ConcurrentLinkedQueue<>();
+    private final Notifier notifier;
+
+    // Poll thread only
+    private final List<TagSighting> sightings = new ArrayList<>();
+
+    @Log
+    private int lastTagCount = 0;
+    @Log
+    private double lastAverageDistance_m = 0;
+    @Log
+    private int acceptedMeasurements = 0;
+
+    /**
+     * @param field3d where to draw the tags once they load, or null
+     */
+    public VisionS(DrivebaseS drivebase, Field3d field3d) {
+        this.drivebase = drivebase;
+        this.field3d = field3d;
+        layoutLoad = AprilTagLayoutLoader.loadAsync(
+            Filesystem.getDeployDirectory().toPath().resolve(VisionConstants.TAG_LAYOUT_FILE));
+        notifier = new Notifier(this::pollCameras);
+        notifier.setName("Vision");
+    }
+
+    /**
+     * Waits for the tag layout to finish loading, successfully or not, so vision starts on the
+     * first loop. Otherwise it starts on whichever loop first sees the load done, which depends on
+     * wall-clock time; simulations call this so runs faster than real time are reproducible.
+     */
+    public void awaitLayout() {
+        layoutLoad.handle((layout, e) -> null).join();
+    }
+
+    /**
+     * Sets up the cameras and solver once the layout has loaded. Main thread.
+     */
+    private void start(IndexedTagLayout layout) {
+        solver = new MultiTagPoseSolver(layout);
+        if (RobotBase.isReal()) {
+            cameras.add(new PhotonVisionCamera(VisionConstants.CAMERA_NAME, VisionConstants.ROBOT_TO_CAMERA));
+        } else {
+            cameras.add(new SimVisionCamera(
+                drivebase::getSimPose,
+                Timer::getFPGATimestamp,
+                layout,
+                VisionConstants.ROBOT_TO_CAMERA,
+                VisionConstants.SIM_HORIZONTAL_FOV_RAD,
+                VisionConstants.SIM_MAX_RANGE_M,
+                VisionConstants.SIM_LATENCY_S,
+                VisionConstants.SIM_FRAME_PERIOD_S,
+                VisionConstants.SIM_NOISE_PER_M,
+                0));
+        }
+        if (field3d != null) {
+            field3d.getObject("apriltags").setPoses(layout.getTagPoses());
+        }
+        // In sim the camera only sees a new pose once per loop, so periodic() polls it itself
+        if (RobotBase.isReal()) {
+            notifier.startPeriodic(VisionConstants.POLL_PERIOD_S);
+        }
+    }
+
+    /**
+     * Reads every camera and queues a pose for each new frame that saw usable tags.
+     */
+    private void pollCameras() {
+        for (VisionCamera camera : cameras) {
+            sightings.clear();
+            double timestamp_s = camera.readFrame(sightings);
+            if (Double.isNaN(timestamp_s)) {
+                continue;
+            }
+            VisionMeasurement measurement = solver.solve(sightings, camera.getRobotToCamera(), timestamp_s);
+            if (measurement != null) {
+                measurements.add(measurement);
+            }
+        }
+    }
+
+    @Override
+    public void periodic() {
+        if (!started) {
+            if (!layoutLoad.isDone()) {
+                return;
+            }
+            started = true;
+            if (layoutLoad.isCompletedExceptionally()) {
+                DriverStation.reportError("Couldn't load AprilTag layout, vision disabled: "
+                    + layoutLoad.handle((layout, e) -> e).join(), false);
+                return;
+            }
+            start(layoutLoad.join());
+        }
+        if (RobotBase.isSimulation()) {
+            pollCameras();
+        }
+        VisionMeasurement measurement;
+        while ((measurement = measurements.poll()) != null) {
+            drivebase.addVisionMeasurement(measurement.pose, measurement.timestamp_s, measurement.stdDevs);
+            lastTagCount = measurement.tagCount;
+            lastAverageDistance_m = measurement.averageDistance_m;
+            acceptedMeasurements++;
+        }
+    }
+}
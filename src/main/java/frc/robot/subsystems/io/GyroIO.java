@@ -0,0 +1,54 @@
+package frc.robot.subsystems.io;
+
+import java.nio.ByteBuffer;
+
+import frc.robot.util.replay.LoggableInputs;
+
+/**
+ * The drivebase gyro. DrivebaseS reads it once per loop into a GyroIOInputs, and everything else
+ * reads those inputs.
+ */
+public interface GyroIO {
+
+    /**
+     * Everything read from the gyro in one loop.
+     */
+    public static class GyroIOInputs implements LoggableInputs {
+        public boolean connected = false;
+        /** Counterclockwise positive, not wrapped */
+        public double heading_rad = 0;
+        /** Counterclockwise positive */
+        public double yawRate_radps = 0;
+
+        public static final int BYTES = 1 + 2 * Double.BYTES;
+
+        @Override
+        public int getLogBytes() {
+            return BYTES;
+        }
+
+        @Override
+        public void toLog(ByteBuffer buf) {
+            buf.put((byte) (connected ? 1 : 0));
+            buf.putDouble(heading_rad);
+            buf.putDouble(yawRate_radps);
+        }
+
+        @Override
+        public void fromLog(ByteBuffer buf) {
+            connected = buf.get() != 0;
+            heading_rad = buf.getDouble();
+            yawRate_radps = buf.getDouble();
+        }
+    }
+
+    /**
+     * Reads the gyro into inputs.
+     */
+    void updateInputs(GyroIOInputs inputs);
+
+    /**
+     * Makes the current heading read zero.
+     */
+    void reset();
+}
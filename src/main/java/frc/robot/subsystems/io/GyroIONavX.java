@@ -0,0 +1,31 @@
+package frc.robot.subsystems.io;
+
+import com.kauailabs.navx.frc.AHRS;
+
+import edu.wpi.first.wpilibj.SPI.Port;
+
+/**
+ * The navX on the roboRIO's MXP port.
+ */
+public class GyroIONavX implements GyroIO, GyroOdometryIO {
+    // Ask the navX for its fastest update rate, so the odometry thread sees a fresh heading each sample
+    private final AHRS navx = new AHRS(Port.kMXP, (byte) 200);
+
+    @Override
+    public void updateInputs(GyroIOInputs inputs) {
+        inputs.connected = navx.isConnected();
+        inputs.heading_rad = navx.getRotation2d().getRadians();
+        // The navX measures clockwise positive
+        inputs.yawRate_radps = -Math.toRadians(navx.getRate());
+    }
+
+    @Override
+    public void reset() {
+        navx.reset();
+    }
+
+    @Override
+    public double getHeading_rad() {
+        return navx.getRotation2d().getRadians();
+    }
+}
@@ -0,0 +1,14 @@
+package frc.robot.subsystems.io;
+
+/**
+ * Stands in for the gyro when replaying a recording. InputLog fills the inputs, so there is
+ * nothing to read, and nothing for the odometry thread either.
+ */
+public class GyroIOReplay implements GyroIO {
+
+    @Override
+    public void updateInputs(GyroIOInputs inputs) {}
+
+    @Override
+    public void reset() {}
+}
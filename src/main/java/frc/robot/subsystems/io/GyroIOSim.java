@@ -0,0 +1,61 @@
+package frc.robot.subsystems.io;
+
+import java.nio.ByteBuffer;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/**
+ * A perfect gyro following the drivetrain sim's robot pose. DrivebaseS.simulationPeriodic moves
+ * it once per loop.
+ */
+public class GyroIOSim implements GyroIO, GyroOdometryIO {
+    private static final double LOOP_PERIOD_S = 0.02;
+
+    private double heading_rad = 0;
+    private double yawRate_radps = 0;
+
+    @Override
+    public void updateInputs(GyroIOInputs inputs) {
+        inputs.connected = true;
+        inputs.heading_rad = heading_rad;
+        inputs.yawRate_radps = yawRate_radps;
+    }
+
+    @Override
+    public void reset() {
+        heading_rad = 0;
+    }
+
+    @Override
+    public double getHeading_rad() {
+        return heading_rad;
+    }
+
+    /**
+     * Turns the gyro by however much the robot turned over the last loop.
+     */
+    public void update(Pose2d curRobotPose, Pose2d prevRobotPose) {
+        double delta = curRobotPose.getRotation().minus(prevRobotPose.getRotation()).getRadians();
+        yawRate_radps = delta / LOOP_PERIOD_S;
+        heading_rad += delta;
+    }
+
+    // Heading and rate
+    public static final int STATE_BYTES = 2 * Double.BYTES;
+
+    /**
+     * Writes the simulated heading and rate into buf.
+     */
+    public void saveState(ByteBuffer buf) {
+        buf.putDouble(heading_rad);
+        buf.putDouble(yawRate_radps);
+    }
+
+    /**
+     * Reads back values written by saveState().
+     */
+    public void restoreState(ByteBuffer buf) {
+        heading_rad = buf.getDouble();
+        yawRate_radps = buf.getDouble();
+    }
+}
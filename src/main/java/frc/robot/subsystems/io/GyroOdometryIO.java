@@ -0,0 +1,13 @@
+package frc.robot.subsystems.io;
+
+/**
+ * The gyro as the odometry thread reads it between loops. Only IOs with a live gyro implement it;
+ * replay takes its odometry samples from the recording instead.
+ */
+public interface GyroOdometryIO {
+
+    /**
+     * @return the current heading, counterclockwise positive. Must be safe to call from any thread.
+     */
+    double getHeading_rad();
+}
@@ -0,0 +1,95 @@
+package frc.robot.subsystems.io;
+
+import java.nio.ByteBuffer;
+
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.util.controllers.SwerveModuleControlLaw;
+import frc.robot.util.replay.LoggableInputs;
+import io.github.oblarg.oblog.Loggable;
+
+/**
+ * The hardware under one swerve module: its drive and azimuth motors and encoders and its
+ * absolute encoder. SwerveModule reads it once per loop into a ModuleIOInputs, and everything else
+ * reads those inputs, so the module works the same on the Spark MAXes, in simulation, and
+ * replaying a recording.
+ */
+public interface ModuleIO extends Loggable {
+
+    /**
+     * Everything the module reads from its hardware in one loop.
+     */
+    public static class ModuleIOInputs implements LoggableInputs {
+        public double driveDistance_m = 0;
+        public double driveVelocity_mps = 0;
+        /** Not wrapped */
+        public double rotationAngle_rad = 0;
+        /** The absolute encoder, before its magnet offset is taken off */
+        public double canCoderAngle_rad = 0;
+        public double appliedDriveVolts = 0;
+        public double appliedRotationVolts = 0;
+        public boolean encodersHealthy = true;
+
+        public static final int BYTES = 6 * Double.BYTES + 1;
+
+        @Override
+        public int getLogBytes() {
+            return BYTES;
+        }
+
+        @Override
+        public void toLog(ByteBuffer buf) {
+            buf.putDouble(driveDistance_m);
+            buf.putDouble(driveVelocity_mps);
+            buf.putDouble(rotationAngle_rad);
+            buf.putDouble(canCoderAngle_rad);
+            buf.putDouble(appliedDriveVolts);
+            buf.putDouble(appliedRotationVolts);
+            buf.put((byte) (encodersHealthy ? 1 : 0));
+        }
+
+        @Override
+        public void fromLog(ByteBuffer buf) {
+            driveDistance_m = buf.getDouble();
+            driveVelocity_mps = buf.getDouble();
+            rotationAngle_rad = buf.getDouble();
+            canCoderAngle_rad = buf.getDouble();
+            appliedDriveVolts = buf.getDouble();
+            appliedRotationVolts = buf.getDouble();
+            encodersHealthy = buf.get() != 0;
+        }
+    }
+
+    /**
+     * Reads the hardware into inputs.
+     */
+    void updateInputs(ModuleIOInputs inputs);
+
+    void setVoltages(double driveVolts, double rotationVolts);
+
+    /**
+     * Makes the drive encoder read the given distance from now on.
+     */
+    void setDrivePosition(double distance_m);
+
+    /**
+     * Makes the azimuth encoder read the given angle from now on.
+     */
+    void setRotationPosition(double angle_rad);
+
+    /**
+     * Hands the azimuth and drive loops to the motor controllers, or takes them back.
+     * @return whether the loops now run on the motor controllers. False if this IO has none to run them.
+     */
+    default boolean setOnboardControl(boolean enabled) {
+        return false;
+    }
+
+    /**
+     * Sends one loop's setpoints to the onboard loops. Only called while setOnboardControl(true) holds,
+     * so IOs without onboard loops ignore it.
+     * @param gains the law whose gains the onboard loops run
+     * @param optimizedState the module state to hold, already optimized against the current angle
+     * @param currentAngle_rad the measured module angle, not wrapped
+     */
+    default void setOnboardReference(SwerveModuleControlLaw gains, SwerveModuleState optimizedState, double currentAngle_rad) {}
+}
@@ -0,0 +1,21 @@
+package frc.robot.subsystems.io;
+
+/**
+ * Stands in for a module's hardware when replaying a recording. InputLog fills the inputs, and
+ * the recording already holds what the motors did, so setpoints go nowhere. It has no live encoders
+ * for the odometry thread, so it isn't a ModuleOdometryIO; odometry samples come from the recording.
+ */
+public class ModuleIOReplay implements ModuleIO {
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {}
+
+    @Override
+    public void setVoltages(double driveVolts, double rotationVolts) {}
+
+    @Override
+    public void setDrivePosition(double distance_m) {}
+
+    @Override
+    public void setRotationPosition(double angle_rad) {}
+}
@@ -0,0 +1,128 @@
+package frc.robot.subsystems.io;
+
+import java.nio.ByteBuffer;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.DriveConstants.ModuleConstants;
+
+/**
+ * A module's hardware as the drivetrain sim drives it. DrivebaseS.simulationPeriodic runs the
+ * physics from the voltages set here and hands back where the module ended up, once per loop.
+ * The encoders are perfect, and the absolute encoder reads what it would through its magnet offset.
+ */
+public class ModuleIOSim implements ModuleIO, ModuleOdometryIO {
+    private final double magEncoderOffset;
+
+    // Where the drivetrain sim has the module
+    private double modelAngle_rad = 0;
+    private double modelDistance_m = 0;
+    private double modelVelocity_mps = 0;
+    // Added to the model's angle and distance, so resetting an encoder doesn't move the model
+    private double angleOffset_rad = 0;
+    private double distanceOffset_m = 0;
+
+    private double driveVolts = 0;
+    private double rotationVolts = 0;
+
+    public ModuleIOSim(ModuleConstants moduleConstants) {
+        magEncoderOffset = moduleConstants.magEncoderOffset;
+    }
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {
+        inputs.driveDistance_m = modelDistance_m + distanceOffset_m;
+        inputs.driveVelocity_mps = modelVelocity_mps;
+        inputs.rotationAngle_rad = modelAngle_rad + angleOffset_rad;
+        inputs.canCoderAngle_rad = MathUtil.inputModulus(modelAngle_rad + magEncoderOffset, 0, 2 * Math.PI);
+        // The drivetrain sim limits these to the simulated battery voltage itself
+        inputs.appliedDriveVolts = driveVolts;
+        inputs.appliedRotationVolts = rotationVolts;
+        inputs.encodersHealthy = true;
+    }
+
+    @Override
+    public void setVoltages(double driveVolts, double rotationVolts) {
+        this.driveVolts = driveVolts;
+        this.rotationVolts = rotationVolts;
+    }
+
+    @Override
+    public void setDrivePosition(double distance_m) {
+        distanceOffset_m = distance_m - modelDistance_m;
+    }
+
+    @Override
+    public void setRotationPosition(double angle_rad) {
+        angleOffset_rad = angle_rad - modelAngle_rad;
+    }
+
+    // In simulation the odometry thread doesn't run; DrivebaseS samples on the main thread,
+    // where the model only moves once per loop, so every reading is current.
+
+    @Override
+    public double getEncoderTimestamp() {
+        return Timer.getFPGATimestamp();
+    }
+
+    @Override
+    public boolean areEncodersHealthy() {
+        return true;
+    }
+
+    @Override
+    public double getDriveDistanceAt(double timestamp_s) {
+        return modelDistance_m + distanceOffset_m;
+    }
+
+    @Override
+    public double getRotationAngleAt(double timestamp_s) {
+        return modelAngle_rad + angleOffset_rad;
+    }
+
+    public double getDriveVolts() {
+        return driveVolts;
+    }
+
+    public double getRotationVolts() {
+        return rotationVolts;
+    }
+
+    /**
+     * Moves the module to where the drivetrain sim has it.
+     */
+    public void setModelState(double angle_rad, double wheelPos_m, double wheelVel_mps) {
+        modelAngle_rad = angle_rad;
+        modelDistance_m = wheelPos_m;
+        modelVelocity_mps = wheelVel_mps;
+    }
+
+    // Model state, encoder offsets and voltages
+    public static final int STATE_BYTES = 7 * Double.BYTES;
+
+    /**
+     * Writes the model state, encoder offsets and voltages into buf.
+     */
+    public void saveState(ByteBuffer buf) {
+        buf.putDouble(modelAngle_rad);
+        buf.putDouble(modelDistance_m);
+        buf.putDouble(modelVelocity_mps);
+        buf.putDouble(angleOffset_rad);
+        buf.putDouble(distanceOffset_m);
+        buf.putDouble(driveVolts);
+        buf.putDouble(rotationVolts);
+    }
+
+    /**
+     * Reads back values written by saveState().
+     */
+    public void restoreState(ByteBuffer buf) {
+        modelAngle_rad = buf.getDouble();
+        modelDistance_m = buf.getDouble();
+        modelVelocity_mps = buf.getDouble();
+        angleOffset_rad = buf.getDouble();
+        distanceOffset_m = buf.getDouble();
+        driveVolts = buf.getDouble();
+        rotationVolts = buf.getDouble();
+    }
+}
@@ -0,0 +1,183 @@
+package frc.robot.subsystems.io;
+
+import com.ctre.phoenix.sensors.AbsoluteSensorRange;
+import com.ctre.phoenix.sensors.CANCoder;
+import com.ctre.phoenix.sensors.CANCoderConfiguration;
+import com.ctre.phoenix.sensors.SensorInitializationStrategy;
+import com.ctre.phoenix.sensors.SensorTimeBase;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMax.IdleMode;
+import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.DriveConstants.ModuleConstants;
+import frc.robot.util.can.CANFrameBudget;
+import frc.robot.util.can.CANFrameBudget.Role;
+import frc.robot.util.can.FrameStatistics;
+import frc.robot.util.controllers.SwerveModuleControlLaw;
+import frc.robot.util.controllers.SwerveModuleOnboardController;
+import frc.robot.util.sim.SparkMaxEncoderWrapper;
+import frc.robot.util.sim.SparkMaxEncoderWrapper.Snapshot;
+
+/**
+ * A module on the robot: NEOs on Spark MAXes for drive and azimuth, read through their encoder
+ * wrappers, and a CANCoder on the steering shaft.
+ */
+public class ModuleIOSparkMax implements ModuleIO, ModuleOdometryIO {
+    private final CANSparkMax driveMotor;
+    private final CANSparkMax rotationMotor;
+
+    // These wrappers circumvent the Spark MAX velocity signal delay by integrating position.
+    // Credit for the latter to 6328.
+    private final SparkMaxEncoderWrapper driveEncoderWrapper;
+    private final SparkMaxEncoderWrapper rotationEncoderWrapper;
+    // How the encoders' position frames are arriving, logged as sub-tabs of the module
+    private final FrameStatistics driveFrameStatistics;
+    private final FrameStatistics rotationFrameStatistics;
+    // Main thread only
+    private final Snapshot driveSnapshot = new Snapshot();
+    private final Snapshot rotationSnapshot = new Snapshot();
+    // Odometry thread only
+    private final Snapshot driveOdometrySnapshot = new Snapshot();
+    private final Snapshot rotationOdometrySnapshot = new Snapshot();
+
+    private final CANCoder canCoder;
+
+    // The module's loops on the Spark MAXes, when the control mode is ONBOARD
+    private final SwerveModuleOnboardController onboardController;
+
+    public ModuleIOSparkMax(ModuleConstants moduleConstants) {
+        driveMotor = new CANSparkMax(moduleConstants.driveMotorID, MotorType.kBrushless);
+        rotationMotor = new CANSparkMax(moduleConstants.rotationMotorID, MotorType.kBrushless);
+        driveMotor.restoreFactoryDefaults(false);
+        rotationMotor.restoreFactoryDefaults(false);
+
+        //set the output of the drive encoder to be in meters (instead of motor rots) for linear measurement
+        // wheel diam * pi = wheel circumference (meters/wheel rot) *
+        // 1/6.86 wheel rots per motor rot *
+        // number of motor rots
+        // = number of meters traveled
+        driveMotor.getEncoder().setPositionConversionFactor(
+            Math.PI * (DriveConstants.WHEEL_RADIUS_M * 2) // meters/ wheel rev
+            / DriveConstants.WHEEL_ENC_COUNTS_PER_WHEEL_REV // 1/ (enc revs / wheel rev) = wheel rev/enc rev
+        );
+
+        //set the output of the drive encoder to be in meters per second (instead of motor rpm) for velocity measurement
+        // wheel diam * pi = wheel circumference (meters/wheel rot) *
+        // 1/60 minutes per sec *
+        // 1/5.14 wheel rots per motor rot *
+        // motor rpm = wheel speed, m/s
+        driveMotor.getEncoder().setVelocityConversionFactor(
+            (DriveConstants.WHEEL_RADIUS_M * 2) * Math.PI / 60 / DriveConstants.WHEEL_ENC_COUNTS_PER_WHEEL_REV
+        );
+
+        //set the output of the rotation encoder to be in radians
+        // (2pi rad/(module rotation)) / 12.8 (motor rots/module rots)
+        double rotationRadPerMotorRev = 2.0 * Math.PI * DriveConstants.AZMTH_REVS_PER_ENC_REV;
+        rotationMotor.getEncoder().setPositionConversionFactor(rotationRadPerMotorRev);
+
+        // Create the encoder wrappers after setting conversion factors so that the wrapper reads the conversions.
+        // The drive Spark MAXes send position as often as the odometry thread samples. The steering angle
+        // changes much less in that time, so it can come slower.
+        driveEncoderWrapper = new SparkMaxEncoderWrapper(
+            driveMotor, DriveConstants.ODOMETRY_PERIOD_S, moduleConstants.driveVelocityEstimator.create());
+        rotationEncoderWrapper = new SparkMaxEncoderWrapper(rotationMotor, DriveConstants.AZIMUTH_POSITION_PERIOD_S, 5);
+        driveFrameStatistics = driveEncoderWrapper.getFrameStatistics();
+        rotationFrameStatistics = rotationEncoderWrapper.getFrameStatistics();
+        // The wrapper leaves the Spark MAX position in motor rotations, so the onboard azimuth loop works in those
+        onboardController = new SwerveModuleOnboardController(driveMotor, rotationMotor, rotationRadPerMotorRev);
+
+        //Config the mag encoder, which is directly on the module rotation shaft.
+        canCoder = new CANCoder(moduleConstants.magEncoderID);
+
+        CANCoderConfiguration config = new CANCoderConfiguration();
+        config.absoluteSensorRange = AbsoluteSensorRange.Unsigned_0_to_360;
+        config.unitString = "rad";
+        config.sensorCoefficient = 2 * Math.PI / 4096.0; // 2PI radians over 4096 ticks
+        config.sensorTimeBase = SensorTimeBase.PerSecond;
+        config.initializationStrategy = SensorInitializationStrategy.BootToAbsolutePosition;
+
+        canCoder.configAllSettings(config);
+
+        // Send only what this module reads, overriding the position period the wrappers set
+        CANFrameBudget canFrameBudget = CANFrameBudget.getInstance();
+        canFrameBudget.configureSparkMax(driveMotor, Role.DRIVE);
+        canFrameBudget.configureSparkMax(rotationMotor, Role.AZIMUTH);
+        canFrameBudget.configureCANCoder(canCoder, Role.CANCODER);
+
+        //Drive motors should brake, rotation motors should coast (to allow module realignment)
+        driveMotor.setIdleMode(IdleMode.kBrake);
+        rotationMotor.setIdleMode(IdleMode.kBrake);
+
+        driveMotor.setInverted(true);
+        rotationMotor.setInverted(true);
+    }
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {
+        driveEncoderWrapper.read(driveSnapshot);
+        rotationEncoderWrapper.read(rotationSnapshot);
+        inputs.driveDistance_m = driveSnapshot.position;
+        inputs.driveVelocity_mps = driveSnapshot.velocity;
+        inputs.rotationAngle_rad = rotationSnapshot.position;
+        inputs.canCoderAngle_rad = canCoder.getAbsolutePosition();
+        inputs.appliedDriveVolts = driveMotor.getAppliedOutput() * driveMotor.getBusVoltage();
+        inputs.appliedRotationVolts = rotationMotor.getAppliedOutput() * rotationMotor.getBusVoltage();
+        inputs.encodersHealthy = areEncodersHealthy();
+    }
+
+    @Override
+    public void setVoltages(double driveVolts, double rotationVolts) {
+        rotationMotor.setVoltage(rotationVolts);
+        driveMotor.setVoltage(driveVolts);
+    }
+
+    @Override
+    public void setDrivePosition(double distance_m) {
+        driveEncoderWrapper.setPosition(distance_m);
+    }
+
+    @Override
+    public void setRotationPosition(double angle_rad) {
+        rotationEncoderWrapper.setPosition(angle_rad);
+    }
+
+    @Override
+    public boolean setOnboardControl(boolean enabled) {
+        if (enabled) {
+            onboardController.activate();
+        } else {
+            onboardController.deactivate();
+        }
+        return enabled;
+    }
+
+    @Override
+    public void setOnboardReference(SwerveModuleControlLaw gains, SwerveModuleState optimizedState, double currentAngle_rad) {
+        onboardController.setReference(gains, optimizedState, currentAngle_rad);
+    }
+
+    @Override
+    public double getEncoderTimestamp() {
+        driveEncoderWrapper.read(driveOdometrySnapshot);
+        return driveOdometrySnapshot.timestamp_s;
+    }
+
+    @Override
+    public boolean areEncodersHealthy() {
+        return driveEncoderWrapper.isHealthy() && rotationEncoderWrapper.isHealthy();
+    }
+
+    @Override
+    public double getDriveDistanceAt(double timestamp_s) {
+        driveEncoderWrapper.read(driveOdometrySnapshot, timestamp_s);
+        return driveOdometrySnapshot.position;
+    }
+
+    @Override
+    public double getRotationAngleAt(double timestamp_s) {
+        rotationEncoderWrapper.read(rotationOdometrySnapshot, timestamp_s);
+        return rotationOdometrySnapshot.position;
+    }
+}
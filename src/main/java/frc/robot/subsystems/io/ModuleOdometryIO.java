@@ -0,0 +1,33 @@
+package frc.robot.subsystems.io;
+
+/**
+ * A module's encoders as the odometry thread reads them between loops, at the time each was
+ * measured. Only IOs with live encoders implement it; replay takes its odometry samples from the
+ * recording instead.
+ *
+ * Called from the odometry thread, so implementations must be safe to call from any thread.
+ */
+public interface ModuleOdometryIO {
+
+    /**
+     * @return the FPGA time of the newest drive measurement. The azimuth sends position less often,
+     * and is read at this time too, holding its newest angle past its newest measurement.
+     */
+    double getEncoderTimestamp();
+
+    /**
+     * @return false if either encoder has stopped reporting, so its readings are frozen
+     */
+    boolean areEncodersHealthy();
+
+    /**
+     * @return the drive distance at the given FPGA time, interpolated between measurements
+     */
+    double getDriveDistanceAt(double timestamp_s);
+
+    /**
+     * @return the module angle at the given FPGA time, interpolated between measurements, or the newest
+     * angle for times after the newest measurement. Not wrapped.
+     */
+    double getRotationAngleAt(double timestamp_s);
+}
@@ -0,0 +1,46 @@
+package frc.robot.util.can;
+
+/**
+ * Converts the timestamps on received CAN frames to FPGA time. Every frame is stamped by the same
+ * clock, so one offset serves every device, and devices can't disagree about when their frames
+ * were measured by however late each one's fastest frame happened to be read.
+ *
+ * Only the CANStatusSampler thread uses it, so it isn't thread-safe.
+ */
+public class CANClock {
+    // Let the offset creep up this much per second, so it follows the clocks if they drift apart
+    private static final double OFFSET_CREEP_S_PER_S = 1e-3;
+
+    private static CANClock instance;
+
+    /**
+     * @return the clock shared by every device read on the sampler thread
+     */
+    public static synchronized CANClock getInstance() {
+        if (instance == null) {
+            instance = new CANClock();
+        }
+        return instance;
+    }
+
+    // FPGA time minus CAN packet time. A packet is always read after it's stamped, so the smallest
+    // difference seen is the closest to the true offset.
+    private double canToFpgaOffset_s = Double.POSITIVE_INFINITY;
+    private double lastUpdate_s = 0.0;
+
+    private CANClock() {}
+
+    /**
+     * Updates the offset from a frame just read, and converts its timestamp.
+     * @param canTimestamp_s the frame's CAN timestamp
+     * @param now_s the FPGA time the frame was read at
+     * @return the FPGA time the frame was stamped at
+     */
+    public double toFpgaTime(double canTimestamp_s, double now_s) {
+        canToFpgaOffset_s = Math.min(
+            canToFpgaOffset_s + (now_s - lastUpdate_s) * OFFSET_CREEP_S_PER_S,
+            now_s - canTimestamp_s);
+        lastUpdate_s = now_s;
+        return canTimestamp_s + canToFpgaOffset_s;
+    }
+}
@@ -0,0 +1,159 @@
+package frc.robot.util.can;
+
+import static frc.robot.Constants.CANConstants.BUS_BITRATE_BPS;
+import static frc.robot.Constants.CANConstants.CONTROL_FRAMES_PER_S;
+import static frc.robot.Constants.CANConstants.FRAME_BITS;
+import static frc.robot.Constants.DriveConstants.AZIMUTH_POSITION_PERIOD_S;
+import static frc.robot.Constants.DriveConstants.ODOMETRY_PERIOD_S;
+
+import com.ctre.phoenix.sensors.CANCoder;
+import com.ctre.phoenix.sensors.CANCoderStatusFrame;
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+
+import edu.wpi.first.wpilibj.RobotController;
+import io.github.oblarg.oblog.Loggable;
+import io.github.oblarg.oblog.annotations.Log;
+
+/**
+ * Sets every status frame period on the bus from what the device is used for, and keeps a tally of
+ * the frames it asked for to estimate the bus load.
+ *
+ * Left at their defaults, a Spark MAX sends about 280 frames a second and a CANCoder about 110,
+ * most of them never read. Each role below sends the frames the code reads as often as it reads
+ * them, and slows everything else to a trickle. The estimate only counts the devices configured
+ * here and the setpoints sent to them, so the measured utilization should come out a little
+ * higher, from the PDH and anything else on the bus.
+ */
+public class CANFrameBudget implements Loggable {
+
+    // Periods for frames nobody reads. A CANCoder can't send any slower than 255 ms.
+    private static final int SPARK_MAX_SLOW_MS = 500;
+    private static final int CANCODER_SLOW_MS = 255;
+    private static final int ODOMETRY_PERIOD_MS = (int) Math.round(ODOMETRY_PERIOD_S * 1000);
+    private static final int AZIMUTH_POSITION_PERIOD_MS = (int) Math.round(AZIMUTH_POSITION_PERIOD_S * 1000);
+
+    private static final PeriodicFrame[] SPARK_MAX_FRAMES = {
+        PeriodicFrame.kStatus0, PeriodicFrame.kStatus1, PeriodicFrame.kStatus2, PeriodicFrame.kStatus3,
+        PeriodicFrame.kStatus4, PeriodicFrame.kStatus5, PeriodicFrame.kStatus6
+    };
+    private static final CANCoderStatusFrame[] CANCODER_FRAMES = {
+        CANCoderStatusFrame.SensorData, CANCoderStatusFrame.VbatAndFaults
+    };
+
+    public enum Role {
+        /**
+         * Spark MAX driving a wheel. Position feeds odometry; applied output and bus voltage
+         * (status 0 and 1) are logged each loop.
+         */
+        DRIVE(new int[] {20, 20, ODOMETRY_PERIOD_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS},
+            null, true),
+        /**
+         * Spark MAX steering a module. Read like DRIVE, except that odometry reads the angle at the
+         * drive encoder's measurement time, so position only comes once per loop.
+         */
+        AZIMUTH(new int[] {20, 20, AZIMUTH_POSITION_PERIOD_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS},
+            null, true),
+        /**
+         * CANCoder on a module. The absolute angle seeds the azimuth encoder and is logged each loop;
+         * battery voltage and faults aren't read.
+         */
+        CANCODER(null, new int[] {20, CANCODER_SLOW_MS}, false),
+        /** On the bus but not read by anything */
+        UNUSED(new int[] {100, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS, SPARK_MAX_SLOW_MS},
+            new int[] {CANCODER_SLOW_MS, CANCODER_SLOW_MS}, false);
+
+        // Periods in SPARK_MAX_FRAMES or CANCODER_FRAMES order; null if the role doesn't apply to that device
+        private final int[] sparkMaxPeriods_ms;
+        private final int[] canCoderPeriods_ms;
+        // Whether the robot sends it a setpoint every loop
+        private final boolean commanded;
+
+        private Role(int[] sparkMaxPeriods_ms, int[] canCoderPeriods_ms, boolean commanded) {
+            this.sparkMaxPeriods_ms = sparkMaxPeriods_ms;
+            this.canCoderPeriods_ms = canCoderPeriods_ms;
+            this.commanded = commanded;
+        }
+    }
+
+    private static CANFrameBudget instance;
+
+    /**
+     * @return the budget shared by every device on the robot
+     */
+    public static synchronized CANFrameBudget getInstance() {
+        if (instance == null) {
+            instance = new CANFrameBudget();
+        }
+        return instance;
+    }
+
+    private double estimatedFramesPerSecond = 0;
+    private int deviceCount = 0;
+
+    private CANFrameBudget() {}
+
+    @Override
+    public String configureLogName() {
+        return "CANFrameBudget";
+    }
+
+    public synchronized void configureSparkMax(CANSparkMax sparkMax, Role role) {
+        if (role.sparkMaxPeriods_ms == null) {
+            throw new IllegalArgumentException(role + " is not a Spark MAX role");
+        }
+        for (int i = 0; i < SPARK_MAX_FRAMES.length; i++) {
+            sparkMax.setPeriodicFramePeriod(SPARK_MAX_FRAMES[i], role.sparkMaxPeriods_ms[i]);
+        }
+        count(role.sparkMaxPeriods_ms, role.commanded);
+    }
+
+    public synchronized void configureCANCoder(CANCoder canCoder, Role role) {
+        if (role.canCoderPeriods_ms == null) {
+            throw new IllegalArgumentException(role + " is not a CANCoder role");
+        }
+        for (int i = 0; i < CANCODER_FRAMES.length; i++) {
+            canCoder.setStatusFramePeriod(CANCODER_FRAMES[i], role.canCoderPeriods_ms[i]);
+        }
+        count(role.canCoderPeriods_ms, role.commanded);
+    }
+
+    private void count(int[] periods_ms, boolean commanded) {
+        for (int period_ms : periods_ms) {
+            estimatedFramesPerSecond += 1000.0 / period_ms;
+        }
+        if (commanded) {
+            estimatedFramesPerSecond += CONTROL_FRAMES_PER_S;
+        }
+        deviceCount++;
+    }
+
+    /**
+     * @return frames per second to and from the configured devices
+     */
+    @Log
+    public synchronized double getEstimatedFramesPerSecond() {
+        return estimatedFramesPerSecond;
+    }
+
+    /**
+     * @return the fraction of the bus the configured devices should use
+     */
+    @Log
+    public synchronized double getEstimatedUtilization() {
+        return estimatedFramesPerSecond * FRAME_BITS / BUS_BITRATE_BPS;
+    }
+
+    /**
+     * @return the fraction of the bus in use, as measured by the roboRIO
+     */
+    @Log
+    public double getMeasuredUtilization() {
+        return RobotController.getCANStatus().percentBusUtilization;
+    }
+
+    @Log
+    public synchronized int getDeviceCount() {
+        return deviceCount;
+    }
+}
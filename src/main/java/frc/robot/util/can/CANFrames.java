@@ -0,0 +1,27 @@
+package frc.robot.util.can;
+
+/**
+ * Decodes values from raw CAN frame payloads in place, without wrapping them in a ByteBuffer,
+ * so the sampling thread can read frames without allocating.
+ */
+public class CANFrames {
+
+    private CANFrames() {}
+
+    /**
+     * @return the little-endian 32-bit float starting at data[offset]
+     */
+    public static float getFloatLE(byte[] data, int offset) {
+        return Float.intBitsToFloat(getIntLE(data, offset));
+    }
+
+    /**
+     * @return the little-endian 32-bit integer starting at data[offset]
+     */
+    public static int getIntLE(byte[] data, int offset) {
+        return (data[offset] & 0xff)
+            | (data[offset + 1] & 0xff) << 8
+            | (data[offset + 2] & 0xff) << 16
+            | (data[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,103 @@
+package frc.robot.util.can;
+
+import static frc.robot.Constants.CANConstants.SAMPLER_PRIORITY;
+import static frc.robot.Constants.CANConstants.SAMPLE_PERIOD_S;
+
+import java.util.Arrays;
+
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Threads;
+
+/**
+ * Reads the status frames of every registered CAN device on one shared thread, in one sweep per
+ * period, instead of each device waking its own Notifier. The roboRIO only has two cores, so a
+ * thread per device spends much of its time switching between threads that each do a few
+ * microseconds of work.
+ *
+ * The thread runs at real-time priority, so frames are read soon after they arrive no matter what
+ * the main loop is doing. It only starts on the real robot, once the first device registers;
+ * in simulation there are no frames to read.
+ */
+public class CANStatusSampler {
+
+    /**
+     * A device read every sweep. Called from the sampling thread, so it must guard the state it
+     * shares with other threads, and must be quick: every other device waits on it.
+     */
+    @FunctionalInterface
+    public interface Device {
+        void poll();
+    }
+
+    private static CANStatusSampler instance;
+
+    /**
+     * @return the sampler shared by every device on the robot
+     */
+    public static synchronized CANStatusSampler getInstance() {
+        if (instance == null) {
+            instance = new CANStatusSampler(SAMPLE_PERIOD_S, SAMPLER_PRIORITY);
+        }
+        return instance;
+    }
+
+    private final Notifier notifier;
+    private final double periodSeconds;
+    private final int priority;
+    // Replaced, never modified, so the sweep can iterate it without a lock
+    private volatile Device[] devices = new Device[0];
+    private boolean started = false;
+    private boolean prioritySet = false;
+
+    private CANStatusSampler(double periodSeconds, int priority) {
+        this.periodSeconds = periodSeconds;
+        this.priority = priority;
+        notifier = new Notifier(this::sweep);
+        notifier.setName("CAN Sampler");
+    }
+
+    /**
+     * Adds a device to every sweep from now on, starting the thread if this is the first.
+     */
+    public synchronized void register(Device device) {
+        Device[] newDevices = Arrays.copyOf(devices, devices.length + 1);
+        newDevices[devices.length] = device;
+        devices = newDevices;
+        if (!started && RobotBase.isReal()) {
+            started = true;
+            notifier.startPeriodic(periodSeconds);
+        }
+    }
+
+    public synchronized void unregister(Device device) {
+        Device[] current = devices;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == device) {
+                Device[] newDevices = new Device[current.length - 1];
+                System.arraycopy(current, 0, newDevices, 0, i);
+                System.arraycopy(current, i + 1, newDevices, i, current.length - i - 1);
+                devices = newDevices;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of registered devices
+     */
+    public int getDeviceCount() {
+        return devices.length;
+    }
+
+    private void sweep() {
+        // Notifier callbacks all run on this Notifier's own thread, so this only needs doing once
+        if (!prioritySet) {
+            Threads.setCurrentThreadPriority(true, priority);
+            prioritySet = true;
+        }
+        for (Device device : devices) {
+            device.poll();
+        }
+    }
+}
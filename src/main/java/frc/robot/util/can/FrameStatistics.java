@@ -0,0 +1,154 @@
+package frc.robot.util.can;
+
+import edu.wpi.first.wpilibj.Timer;
+import io.github.oblarg.oblog.Loggable;
+import io.github.oblarg.oblog.annotations.Log;
+
+/**
+ * Counts how one device's status frames are arriving: how many polls found a new frame, how
+ * evenly spaced the frames are, the longest gap between them, and how old the newest one is.
+ * A device whose newest frame is too old is unhealthy, and its readings are frozen.
+ *
+ * The sampler thread records; anything reads. There is only one writer, so the counters are
+ * volatile rather than locked, and reading them costs about as much as reading a field.
+ */
+public class FrameStatistics implements Loggable {
+    // Upper edges of the inter-arrival histogram bins, in expected periods. The last bin is open.
+    private static final double[] BIN_EDGES = {0.5, 1.5, 2.5, 10};
+    // Weight of each new frame in the running jitter
+    private static final double JITTER_SMOOTHING = 0.02;
+
+    private final String name;
+    private final double expectedPeriod_s;
+    private final double maxAge_s;
+
+    // Only the sampler thread writes these. Readers may see the bins lag the counters.
+    private final int[] histogram = new int[BIN_EDGES.length + 1];
+    private double lastCanTimestamp_s = Double.NaN;
+
+    private volatile int freshCount = 0;
+    private volatile int staleCount = 0;
+    private volatile double maxGap_s = 0;
+    private volatile double jitterSquared_s2 = 0;
+    private volatile double newestFrameTime_s = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param name name for the dashboard
+     * @param expectedPeriod_s the period the device was asked to send at
+     * @param maxAge_s how old the newest frame can get before the device is unhealthy
+     */
+    public FrameStatistics(String name, double expectedPeriod_s, double maxAge_s) {
+        this.name = name;
+        this.expectedPeriod_s = expectedPeriod_s;
+        this.maxAge_s = maxAge_s;
+    }
+
+    @Override
+    public String configureLogName() {
+        return name;
+    }
+
+    /**
+     * Records a poll that found no new frame. Sampler thread only.
+     */
+    public void recordStale() {
+        staleCount = staleCount + 1;
+    }
+
+    /**
+     * Records a new frame. Sampler thread only.
+     * @param canTimestamp_s the frame's CAN timestamp, for spacing between frames
+     * @param frameTime_s FPGA time the frame was measured, for its age
+     */
+    public void recordFresh(double canTimestamp_s, double frameTime_s) {
+        if (!Double.isNaN(lastCanTimestamp_s)) {
+            double gap = canTimestamp_s - lastCanTimestamp_s;
+            double periods = gap / expectedPeriod_s;
+            int bin = 0;
+            while (bin < BIN_EDGES.length && periods >= BIN_EDGES[bin]) {
+                bin++;
+            }
+            histogram[bin]++;
+            if (gap > maxGap_s) {
+                maxGap_s = gap;
+            }
+            double deviation = gap - expectedPeriod_s;
+            jitterSquared_s2 += JITTER_SMOOTHING * (deviation * deviation - jitterSquared_s2);
+        }
+        lastCanTimestamp_s = canTimestamp_s;
+        newestFrameTime_s = frameTime_s;
+        freshCount = freshCount + 1;
+    }
+
+    @Log
+    public int getFreshCount() {
+        return freshCount;
+    }
+
+    @Log
+    public int getStaleCount() {
+        return staleCount;
+    }
+
+    /**
+     * @return longest time between frames so far
+     */
+    @Log
+    public double getMaxGap_s() {
+        return maxGap_s;
+    }
+
+    /**
+     * @return recent RMS difference between the time between frames and the expected period
+     */
+    @Log
+    public double getJitter_s() {
+        return Math.sqrt(jitterSquared_s2);
+    }
+
+    /**
+     * @return time since the newest frame was measured. Infinite if there hasn't been one.
+     */
+    @Log
+    public double getAge_s() {
+        return Timer.getFPGATimestamp() - newestFrameTime_s;
+    }
+
+    @Log
+    public boolean isHealthy() {
+        return getAge_s() <= maxAge_s;
+    }
+
+    /**
+     * @return number of gaps between frames in the given histogram bin. The bins hold gaps
+     * shorter than 0.5, 1.5, 2.5 and 10 expected periods, and longer.
+     */
+    public int getHistogramCount(int bin) {
+        return histogram[bin];
+    }
+
+    @Log
+    public int getEarlyFrames() {
+        return getHistogramCount(0);
+    }
+
+    @Log
+    public int getOnTimeFrames() {
+        return getHistogramCount(1);
+    }
+
+    @Log
+    public int getOneMissedFrames() {
+        return getHistogramCount(2);
+    }
+
+    @Log
+    public int getLateFrames() {
+        return getHistogramCount(3);
+    }
+
+    @Log
+    public int getDropouts() {
+        return getHistogramCount(4);
+    }
+}
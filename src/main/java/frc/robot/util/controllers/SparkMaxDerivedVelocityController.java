@@ -4,26 +4,31 @@
 
 package frc.robot.util.controllers;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.concurrent.locks.StampedLock;
 
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
 
 import edu.wpi.first.hal.CANData;
 import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.filter.LinearFilter;
 import edu.wpi.first.wpilibj.CAN;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import frc.robot.util.can.CANFrames;
+import frc.robot.util.can.CANStatusSampler;
+import frc.robot.util.velocity.MovingAverageVelocityEstimator;
+import frc.robot.util.velocity.VelocityEstimator;
 
 /**
  * Alternative system for reading and using the velocity measurements from the internal encoder on a
  * Spark Max. By default, the filtering of the velocity data produces a 112ms latency, making it
  * significantly more difficult to use feedback control for velocity. This class instead uses
- * position measurements (which have no filtering) to derive the velocity on the RIO and run the
- * control loop using a notifier thread. The period of the control loop and the number of averaging
- * taps are configurable. Note the following warnings:
+ * position measurements (which have no filtering) to derive the velocity on the RIO. The shared
+ * CANStatusSampler thread derives the velocity as each position frame arrives; the control loop
+ * runs on this controller's own Notifier at normal priority, since sending a voltage is a blocking
+ * CAN write the real-time sampler mustn't wait on. The period of the control loop (the status
+ * frame period) and the number of averaging taps are configurable. Note the following warnings:
  * 
  * <p>
  * Reading the internal encoder position from REVLib will be nonfunctional. All other functions are
@@ -47,16 +52,25 @@ public class SparkMaxDerivedVelocityController {
 
   private final CANSparkMax sparkMax;
   private final CAN canInterface;
-  private final LinearFilter velocityFilter;
+  private final VelocityEstimator velocityEstimator;
   private final PIDController velocityController;
-  private final Notifier notifier;
+  private final Notifier controlNotifier;
+  // Reused for every frame; only the sampler thread touches it
+  private final CANData canData = new CANData();
 
-  private boolean firstCycle = true;
-  private boolean enabled = false;
-  private double ffVolts = 0.0;
-  private double timestamp = 0.0;
+  // Guards the published measurements below. Readers never take it: they read optimistically
+  // and retry if a frame was published meanwhile, so the sampler thread never waits on them.
+  private final StampedLock lock = new StampedLock();
   private double position = 0.0;
   private double velocity = 0.0;
+  // Counts published frames, so the control loop only runs on new measurements
+  private volatile long frameCount = 0;
+
+  // Control state, guarded by this. Never held across a CAN write.
+  private boolean enabled = false;
+  private double ffVolts = 0.0;
+  // Control thread only
+  private long lastControlledFrame = 0;
 
   /**
    * Creates a new SparkMaxDerivedVelocityController using a default set of parameters.
@@ -68,48 +82,82 @@ public class SparkMaxDerivedVelocityController {
   /** Creates a new SparkMaxDerivedVelocityController. */
   public SparkMaxDerivedVelocityController(CANSparkMax sparkMax,
       double periodSeconds, int averagingTaps) {
+    this(sparkMax, periodSeconds, new MovingAverageVelocityEstimator(averagingTaps));
+  }
+
+  /**
+   * Creates a new SparkMaxDerivedVelocityController that estimates velocity with the given
+   * estimator, which it runs on the CANStatusSampler thread.
+   */
+  public SparkMaxDerivedVelocityController(CANSparkMax sparkMax,
+      double periodSeconds, VelocityEstimator velocityEstimator) {
     this.sparkMax = sparkMax;
+    this.velocityEstimator = velocityEstimator;
     sparkMax.getEncoder().setPositionConversionFactor(1.0);
     int periodMs = (int) (periodSeconds * 1000);
     sparkMax.setPeriodicFramePeriod(PeriodicFrame.kStatus2, periodMs);
 
     canInterface =
         new CAN(sparkMax.getDeviceId(), deviceManufacturer, deviceType);
-    velocityFilter = LinearFilter.movingAverage(averagingTaps);
     velocityController = new PIDController(0.0, 0.0, 0.0, periodSeconds);
-    notifier = new Notifier(this::update);
-    notifier.startPeriodic(periodSeconds);
+    controlNotifier = new Notifier(this::control);
+    controlNotifier.setName("SparkMax-" + sparkMax.getDeviceId() + "-Velocity");
+    CANStatusSampler.getInstance().register(this::update);
+    // Like the sampler, only on the robot: in simulation there are no frames to control from
+    if (RobotBase.isReal()) {
+      controlNotifier.startPeriodic(periodSeconds);
+    }
   }
 
   /**
-   * Reads new data, updates the velocity measurement, and runs the controller.
+   * Reads new data and publishes the velocity measurement. Called by the CANStatusSampler thread.
    */
   private void update() {
-    CANData canData = new CANData();
-    boolean isFresh = canInterface.readPacketNew(apiId, canData);
-    double newTimestamp = canData.timestamp / 1000.0;
-    double newPosition = ByteBuffer.wrap(canData.data)
-        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(0);
-
-    if (isFresh) {
-      synchronized (this) {
-        if (!firstCycle) {
-          velocity = velocityFilter.calculate(
-              (newPosition - position) / (newTimestamp - timestamp) * 60);
-        }
-        firstCycle = false;
-        timestamp = newTimestamp;
+    if (canInterface.readPacketNew(apiId, canData)) {
+      double newTimestamp = canData.timestamp / 1000.0;
+      double newPosition = CANFrames.getFloatLE(canData.data, 0);
+      double newVelocity = velocityEstimator.update(newTimestamp, newPosition) * 60;
+      long stamp = lock.writeLock();
+      try {
         position = newPosition;
+        velocity = newVelocity;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      frameCount++;
+    }
+  }
 
-        if (DriverStation.isDisabled()) {
-          enabled = false;
-          sparkMax.stopMotor();
-        }
-        if (enabled) {
-          sparkMax.setVoltage(ffVolts + velocityController.calculate(velocity));
-        }
+  /**
+   * Runs the controller on the newest velocity, if a frame has arrived since it last ran, and sends
+   * the result. Called by the control Notifier.
+   */
+  private void control() {
+    long frame = frameCount;
+    if (frame == lastControlledFrame) {
+      return;
+    }
+    lastControlledFrame = frame;
+    double measuredVelocity = getVelocity();
+
+    boolean stop = false;
+    boolean run;
+    double volts = 0.0;
+    synchronized (this) {
+      if (DriverStation.isDisabled() && enabled) {
+        enabled = false;
+        stop = true;
+      }
+      run = enabled;
+      if (run) {
+        volts = ffVolts + velocityController.calculate(measuredVelocity);
       }
     }
+    if (stop) {
+      sparkMax.stopMotor();
+    } else if (run) {
+      sparkMax.setVoltage(volts);
+    }
   }
 
   /**
@@ -131,11 +179,15 @@ public class SparkMaxDerivedVelocityController {
    * Disables the controller. No further commands will be sent to the Spark Max, but the
    * measurements will continue to update.
    */
-  public synchronized void disable() {
-    if (enabled) {
+  public void disable() {
+    boolean wasEnabled;
+    synchronized (this) {
+      wasEnabled = enabled;
+      enabled = false;
+    }
+    if (wasEnabled) {
       sparkMax.stopMotor();
     }
-    enabled = false;
   }
 
   /** Sets the PID gains. */
@@ -146,14 +198,28 @@ public class SparkMaxDerivedVelocityController {
   /**
    * Returns the current position in rotations.
    */
-  public synchronized double getPosition() {
-    return position;
+  public double getPosition() {
+    while (true) {
+      long stamp = lock.tryOptimisticRead();
+      double rawPosition = position;
+      if (lock.validate(stamp)) {
+        return rawPosition;
+      }
+      Thread.onSpinWait();
+    }
   }
 
   /**
    * Returns the current velocity in rotations/minute.
    */
-  public synchronized double getVelocity() {
-    return velocity;
+  public double getVelocity() {
+    while (true) {
+      long stamp = lock.tryOptimisticRead();
+      double rawVelocity = velocity;
+      if (lock.validate(stamp)) {
+        return rawVelocity;
+      }
+      Thread.onSpinWait();
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package frc.robot.util.controllers;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.util.NomadMathUtil;
+
+/**
+ * The closed-loop control law for one swerve module: a profiled position loop on azimuth
+ * and a velocity loop plus feedforward on the drive wheel, both producing volts.
+ *
+ * This holds no hardware, so the same law runs in SwerveModule on the robot and in
+ * HAL-free simulations that need many modules at once.
+ */
+public class SwerveModuleControlLaw {
+
+    public static final double rotationkP = 3;
+    //public static final double rotationkD = 0.05 / 2.5;
+    public static final double rotationkD = 0;
+    // Static friction compensation added to the azimuth output
+    public static final double rotationkS = 0.04;
+
+    public static final double drivekP = 4.6; // 0.06 w/measurement delay?
+
+    private final ProfiledPIDController rotationPIDController;
+    private final PIDController drivePIDController;
+
+    private SwerveModuleState desiredState = new SwerveModuleState();
+    private double rotationVolts = 0;
+    private double driveVolts = 0;
+
+    public SwerveModuleControlLaw() {
+        // For a position controller we use a P loop on the position error
+        // and a D loop, which is P on the derivative/rate of change of the position error
+        // Theoretically, if the error is increasing (aka, the setpoint is getting away),
+        // we should match the velocity of the setpoint with our D term to stabilize the error,
+        // then add the additional output proportional to the size of the error.
+        // Trapezoid Profile Constraints: 7.8 rot/s (limit of the NEO), 40 rot/s^2
+        rotationPIDController = new ProfiledPIDController(rotationkP, 0.0, rotationkD, new TrapezoidProfile.Constraints(7.8*2 *Math.PI, 400*2*Math.PI));
+        // Tell the PID controller that it can move across the -pi to pi rollover point.
+        rotationPIDController.enableContinuousInput(-Math.PI, Math.PI);
+
+        // For a velocity controller we just use P
+        // (and feedforward, which is handled in #calculate)
+        drivePIDController = new PIDController(drivekP, 0, 0);
+    }
+
+    /**
+     * Runs one cycle of the control law. Results are read back with {@link #getRotationVolts()}
+     * and {@link #getDriveVolts()}.
+     * @param desiredState the requested module state, before optimization
+     * @param currentAngle the measured module angle
+     * @param currentVelocityMetersPerSecond the measured wheel speed
+     */
+    public void calculate(SwerveModuleState desiredState, Rotation2d currentAngle, double currentVelocityMetersPerSecond) {
+        optimize(desiredState, currentAngle);
+
+        double goal = this.desiredState.angle.getRadians();
+        double measurement = currentAngle.getRadians();
+        rotationVolts = rotationPIDController.calculate(measurement, goal);
+        if (rotationVolts > 0.0) {
+            rotationVolts += rotationkS;
+        } else if (rotationVolts < 0.0) {
+            rotationVolts -= rotationkS;
+        }
+
+        driveVolts = drivePIDController.calculate(currentVelocityMetersPerSecond, this.desiredState.speedMetersPerSecond)
+            + DriveConstants.driveFeedForward.calculate(this.desiredState.speedMetersPerSecond);
+    }
+
+    /**
+     * Optimizes the requested state against the measured angle the way {@link #calculate} does,
+     * without running the loops, for when something else closes them.
+     * @return the optimized state, which {@link #getDesiredState()} also returns from now on
+     */
+    public SwerveModuleState optimize(SwerveModuleState desiredState, Rotation2d currentAngle) {
+        desiredState = SwerveModuleState.optimize(desiredState, currentAngle);
+        this.desiredState = NomadMathUtil.optimize(desiredState, currentAngle, 90.0);
+        return this.desiredState;
+    }
+
+    public double getRotationVolts() {
+        return rotationVolts;
+    }
+
+    public double getDriveVolts() {
+        return driveVolts;
+    }
+
+    /**
+     * @return the desired state after optimization in the most recent {@link #calculate} call
+     */
+    public SwerveModuleState getDesiredState() {
+        return desiredState;
+    }
+
+    public ProfiledPIDController getRotationPIDController() {
+        return rotationPIDController;
+    }
+
+    public PIDController getDrivePIDController() {
+        return drivePIDController;
+    }
+}
@@ -0,0 +1,18 @@
+package frc.robot.util.controllers;
+
+/**
+ * Where a swerve module closes its azimuth and drive loops.
+ */
+public enum SwerveModuleControlMode {
+    /**
+     * SwerveModuleControlLaw on the roboRIO, once per main loop, sending volts. A change in the
+     * measurement isn't acted on until the next loop, up to 20 ms later.
+     */
+    RIO,
+    /**
+     * The Spark MAXes' own PID, every millisecond, sent setpoints and feedforward once per main loop
+     * by SwerveModuleOnboardController. Only on the real robot: simulation has no onboard PID, so it
+     * always runs the RIO law.
+     */
+    ONBOARD
+}
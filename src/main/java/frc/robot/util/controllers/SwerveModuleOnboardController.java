@@ -0,0 +1,182 @@
+package frc.robot.util.controllers;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMax.ControlType;
+import com.revrobotics.SparkMaxPIDController;
+import com.revrobotics.SparkMaxPIDController.ArbFFUnits;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Closes a swerve module's loops on its Spark MAXes instead of the roboRIO. Each main loop sends
+ * the azimuth a position setpoint and the drive a velocity setpoint, each with feedforward in
+ * volts, and the Spark MAXes run PID on their own encoders every millisecond from then on. The
+ * module responds as soon as the setpoint frame arrives, not a RIO loop later.
+ *
+ * <p>
+ * The gains are SwerveModuleControlLaw's, converted to Spark MAX units, and are pushed again
+ * whenever the law's PID controllers change, so both modes run the same tuning. The Spark MAX
+ * gains are in duty cycle, so voltage compensation is on while this is active, making full duty
+ * cycle always mean NOMINAL_VOLTAGE.
+ *
+ * <p>
+ * Units on the Spark MAX: azimuth position is in motor rotations, since SparkMaxEncoderWrapper
+ * resets the position conversion factor to 1, and drive velocity is in meters per second, from the
+ * velocity conversion factor ModuleIOSparkMax sets. The azimuth goes straight to its goal without the
+ * RIO law's trapezoid profile.
+ */
+public class SwerveModuleOnboardController {
+    public static final double NOMINAL_VOLTAGE = 12.0;
+    // The Spark MAX sums and differences its error once per 1 ms loop, rather than per second
+    private static final double ONBOARD_PERIOD_S = 0.001;
+    private static final int SLOT = 0;
+    // The azimuth feedforward is only refreshed each main loop, so near the goal a static friction
+    // kick would be held long enough to push past it. Leave it off inside this error.
+    public static final double ROTATION_KS_DEADBAND_RAD = 0.02;
+    // The drive P term acts on the Spark MAX's own velocity, which by default averages 8 samples
+    // 32 ms apart. Shorten the filter so the loop isn't acting on a reading 100 ms old.
+    public static final int DRIVE_VELOCITY_MEASUREMENT_PERIOD_MS = 16;
+    public static final int DRIVE_VELOCITY_AVERAGE_DEPTH = 2;
+
+    private final CANSparkMax driveMotor;
+    private final CANSparkMax rotationMotor;
+    private final SparkMaxPIDController drivePIDController;
+    private final SparkMaxPIDController rotationPIDController;
+    private final double rotationRadPerMotorRev;
+
+    // The law's gains as of the last push, in RIO units, to notice when they change
+    private final double[] pushedDriveGains = {Double.NaN, Double.NaN, Double.NaN};
+    private final double[] pushedRotationGains = {Double.NaN, Double.NaN, Double.NaN};
+
+    private boolean active = false;
+    private double rotationSetpoint_rad = 0;
+    private double rotationFeedforwardVolts = 0;
+    private double driveFeedforwardVolts = 0;
+
+    /**
+     * @param rotationRadPerMotorRev module radians per azimuth motor rotation
+     */
+    public SwerveModuleOnboardController(CANSparkMax driveMotor, CANSparkMax rotationMotor,
+            double rotationRadPerMotorRev) {
+        this.driveMotor = driveMotor;
+        this.rotationMotor = rotationMotor;
+        this.rotationRadPerMotorRev = rotationRadPerMotorRev;
+
+        drivePIDController = driveMotor.getPIDController();
+        rotationPIDController = rotationMotor.getPIDController();
+        drivePIDController.setFeedbackDevice(driveMotor.getEncoder());
+        rotationPIDController.setFeedbackDevice(rotationMotor.getEncoder());
+        drivePIDController.setFF(0, SLOT);
+        rotationPIDController.setFF(0, SLOT);
+
+        // Nothing else reads the Spark MAX velocity; SparkMaxEncoderWrapper derives its own from position
+        driveMotor.getEncoder().setMeasurementPeriod(DRIVE_VELOCITY_MEASUREMENT_PERIOD_MS);
+        driveMotor.getEncoder().setAverageDepth(DRIVE_VELOCITY_AVERAGE_DEPTH);
+    }
+
+    /**
+     * Hands the motors to the onboard loops and turns on voltage compensation. The gains are
+     * pushed with the first setpoint, sent by {@link #setReference}.
+     */
+    public void activate() {
+        if (active) {
+            return;
+        }
+        driveMotor.enableVoltageCompensation(NOMINAL_VOLTAGE);
+        rotationMotor.enableVoltageCompensation(NOMINAL_VOLTAGE);
+        active = true;
+    }
+
+    /**
+     * Hands the motors back to the RIO, whose setVoltage already scales by the battery voltage.
+     */
+    public void deactivate() {
+        if (!active) {
+            return;
+        }
+        driveMotor.disableVoltageCompensation();
+        rotationMotor.disableVoltageCompensation();
+        active = false;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Sends one main loop's setpoints.
+     * @param gains the RIO law whose gains the onboard loops run
+     * @param optimizedState the module state to hold, already optimized against the current angle
+     * @param currentAngle_rad the measured module angle, not wrapped, in the same frame as the
+     * azimuth motor's position
+     */
+    public void setReference(SwerveModuleControlLaw gains, SwerveModuleState optimizedState, double currentAngle_rad) {
+        syncGains(gains);
+
+        // The motor position keeps counting past a full turn, so aim for whichever equivalent of
+        // the goal is nearest, rather than unwinding back through the turns already made
+        double error_rad = MathUtil.angleModulus(optimizedState.angle.getRadians() - currentAngle_rad);
+        rotationSetpoint_rad = currentAngle_rad + error_rad;
+        rotationFeedforwardVolts = Math.abs(error_rad) > ROTATION_KS_DEADBAND_RAD
+            ? Math.copySign(SwerveModuleControlLaw.rotationkS, error_rad)
+            : 0;
+        rotationPIDController.setReference(
+            rotationSetpoint_rad / rotationRadPerMotorRev, ControlType.kPosition, SLOT,
+            rotationFeedforwardVolts, ArbFFUnits.kVoltage);
+
+        driveFeedforwardVolts = DriveConstants.driveFeedForward.calculate(optimizedState.speedMetersPerSecond);
+        drivePIDController.setReference(
+            optimizedState.speedMetersPerSecond, ControlType.kVelocity, SLOT,
+            driveFeedforwardVolts, ArbFFUnits.kVoltage);
+    }
+
+    /**
+     * @return the azimuth setpoint last sent, in module radians, not wrapped
+     */
+    public double getRotationSetpoint_rad() {
+        return rotationSetpoint_rad;
+    }
+
+    public double getRotationFeedforwardVolts() {
+        return rotationFeedforwardVolts;
+    }
+
+    public double getDriveFeedforwardVolts() {
+        return driveFeedforwardVolts;
+    }
+
+    /**
+     * Pushes the law's gains to any Spark MAX whose gains have changed since the last push.
+     * Each push is a blocking configuration write, so this only writes on a change.
+     */
+    private void syncGains(SwerveModuleControlLaw gains) {
+        PIDController drive = gains.getDrivePIDController();
+        ProfiledPIDController rotation = gains.getRotationPIDController();
+        // Drive: volts per m/s of error becomes duty cycle per m/s
+        push(drivePIDController, drive.getP(), drive.getI(), drive.getD(), pushedDriveGains, 1.0);
+        // Azimuth: volts per radian of error becomes duty cycle per motor rotation
+        push(rotationPIDController, rotation.getP(), rotation.getI(), rotation.getD(),
+            pushedRotationGains, rotationRadPerMotorRev);
+    }
+
+    /**
+     * @param unitsPerSparkUnit RIO error units per Spark MAX error unit
+     */
+    private static void push(SparkMaxPIDController spark, double kP, double kI, double kD,
+            double[] pushed, double unitsPerSparkUnit) {
+        if (kP == pushed[0] && kI == pushed[1] && kD == pushed[2]) {
+            return;
+        }
+        double scale = unitsPerSparkUnit / NOMINAL_VOLTAGE;
+        spark.setP(kP * scale, SLOT);
+        spark.setI(kI * scale * ONBOARD_PERIOD_S, SLOT);
+        spark.setD(kD * scale / ONBOARD_PERIOD_S, SLOT);
+        pushed[0] = kP;
+        pushed[1] = kI;
+        pushed[2] = kD;
+    }
+}
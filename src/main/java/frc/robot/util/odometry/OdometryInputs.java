@@ -0,0 +1,85 @@
+package frc.robot.util.odometry;
+
+import java.nio.ByteBuffer;
+
+import frc.robot.util.replay.LoggableInputs;
+
+/**
+ * The odometry samples the main loop took from the OdometrySampleQueue in one loop, copied out so
+ * InputLog can record them. When replaying, they come from the recording instead of the queue.
+ */
+public class OdometryInputs implements LoggableInputs {
+    private final OdometrySample[] samples;
+    private final int numModules;
+    private int size = 0;
+
+    /**
+     * @param capacity the most samples one loop can take, the capacity of the queue they come from
+     */
+    public OdometryInputs(int numModules, int capacity) {
+        this.numModules = numModules;
+        samples = new OdometrySample[capacity];
+        for (int i = 0; i < capacity; i++) {
+            samples[i] = new OdometrySample(numModules);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies a sample in after the others.
+     */
+    public void add(OdometrySample sample) {
+        OdometrySample copy = samples[size++];
+        copy.timestamp_s = sample.timestamp_s;
+        copy.gyroAngle_rad = sample.gyroAngle_rad;
+        System.arraycopy(sample.driveDistance_m, 0, copy.driveDistance_m, 0, numModules);
+        System.arraycopy(sample.moduleAngle_rad, 0, copy.moduleAngle_rad, 0, numModules);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the i-th oldest sample. It is overwritten by the next loop's samples.
+     */
+    public OdometrySample get(int i) {
+        return samples[i];
+    }
+
+    @Override
+    public int getLogBytes() {
+        return Integer.BYTES + size * (2 + 2 * numModules) * Double.BYTES;
+    }
+
+    @Override
+    public void toLog(ByteBuffer buf) {
+        buf.putInt(size);
+        for (int i = 0; i < size; i++) {
+            OdometrySample sample = samples[i];
+            buf.putDouble(sample.timestamp_s);
+            buf.putDouble(sample.gyroAngle_rad);
+            for (int m = 0; m < numModules; m++) {
+                buf.putDouble(sample.driveDistance_m[m]);
+                buf.putDouble(sample.moduleAngle_rad[m]);
+            }
+        }
+    }
+
+    @Override
+    public void fromLog(ByteBuffer buf) {
+        size = buf.getInt();
+        for (int i = 0; i < size; i++) {
+            OdometrySample sample = samples[i];
+            sample.timestamp_s = buf.getDouble();
+            sample.gyroAngle_rad = buf.getDouble();
+            for (int m = 0; m < numModules; m++) {
+                sample.driveDistance_m[m] = buf.getDouble();
+                sample.moduleAngle_rad[m] = buf.getDouble();
+            }
+        }
+    }
+}
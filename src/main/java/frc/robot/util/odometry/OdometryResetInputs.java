@@ -0,0 +1,70 @@
+package frc.robot.util.odometry;
+
+import java.nio.ByteBuffer;
+
+import frc.robot.util.replay.LoggableInputs;
+
+/**
+ * The latest odometry reset since the main loop last integrated samples, so InputLog can record it.
+ * Resets happen wherever commands and bindings call them, but only the latest one before each
+ * integration matters, since a reset discards everything measured before it. When replaying, the
+ * recording says which loops had one and with what.
+ *
+ * Holds everything the estimator was reset with, not just the pose: the gyro and module readings
+ * it was reset against may themselves have been reset earlier in the same loop.
+ */
+public class OdometryResetInputs implements LoggableInputs {
+    public boolean pending = false;
+    /** FPGA time of the reset. Samples from before it are discarded. */
+    public double timestamp_s = 0;
+    public double poseX_m = 0;
+    public double poseY_m = 0;
+    public double poseHeading_rad = 0;
+    public double gyroAngle_rad = 0;
+    public final double[] driveDistance_m;
+    public final double[] moduleAngle_rad;
+
+    public OdometryResetInputs(int numModules) {
+        driveDistance_m = new double[numModules];
+        moduleAngle_rad = new double[numModules];
+    }
+
+    @Override
+    public int getLogBytes() {
+        return 1 + (pending ? (6 + 2 * driveDistance_m.length) * Double.BYTES : 0);
+    }
+
+    @Override
+    public void toLog(ByteBuffer buf) {
+        buf.put((byte) (pending ? 1 : 0));
+        if (!pending) {
+            return;
+        }
+        buf.putDouble(timestamp_s);
+        buf.putDouble(poseX_m);
+        buf.putDouble(poseY_m);
+        buf.putDouble(poseHeading_rad);
+        buf.putDouble(gyroAngle_rad);
+        for (int m = 0; m < driveDistance_m.length; m++) {
+            buf.putDouble(driveDistance_m[m]);
+            buf.putDouble(moduleAngle_rad[m]);
+        }
+    }
+
+    @Override
+    public void fromLog(ByteBuffer buf) {
+        pending = buf.get() != 0;
+        if (!pending) {
+            return;
+        }
+        timestamp_s = buf.getDouble();
+        poseX_m = buf.getDouble();
+        poseY_m = buf.getDouble();
+        poseHeading_rad = buf.getDouble();
+        gyroAngle_rad = buf.getDouble();
+        for (int m = 0; m < driveDistance_m.length; m++) {
+            driveDistance_m[m] = buf.getDouble();
+            moduleAngle_rad[m] = buf.getDouble();
+        }
+    }
+}
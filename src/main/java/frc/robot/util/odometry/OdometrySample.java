@@ -0,0 +1,19 @@
+package frc.robot.util.odometry;
+
+/**
+ * One reading of everything odometry needs, taken at a single instant: the gyro heading and each
+ * module's drive distance and steering angle. Samples are preallocated slots in an
+ * OdometrySampleQueue and are reused, so don't hold on to one after releasing it.
+ */
+public class OdometrySample {
+    /** FPGA time the sensors were read at */
+    public double timestamp_s;
+    public double gyroAngle_rad;
+    public final double[] driveDistance_m;
+    public final double[] moduleAngle_rad;
+
+    OdometrySample(int numModules) {
+        driveDistance_m = new double[numModules];
+        moduleAngle_rad = new double[numModules];
+    }
+}
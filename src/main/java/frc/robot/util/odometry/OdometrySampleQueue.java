@@ -0,0 +1,99 @@
+package frc.robot.util.odometry;
+
+/**
+ * A fixed-size, lock-free queue of odometry samples between exactly one producer thread and
+ * exactly one consumer thread.
+ *
+ * The slots are allocated up front and written in place, so passing samples allocates nothing.
+ * The producer claim()s the next free slot, fills it in and publish()es it; the consumer peek()s
+ * at the oldest published sample, reads it and release()s it. Each index is only ever written by
+ * one side, and being volatile, publishing the tail also publishes the slot contents written before it.
+ */
+public class OdometrySampleQueue {
+    private final OdometrySample[] slots;
+    private final int mask;
+
+    // Total samples released by the consumer, and published by the producer
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile long droppedCount = 0;
+
+    /**
+     * @param numModules number of swerve modules in each sample
+     * @param capacity number of samples the queue holds. Rounded up to a power of two.
+     */
+    public OdometrySampleQueue(int numModules, int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots = new OdometrySample[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new OdometrySample(numModules);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Producer only. Returns the next free slot to fill in, without making it visible to the consumer.
+     * @return the slot, or null if the queue is full, in which case the sample is counted as dropped
+     */
+    public OdometrySample claim() {
+        long t = tail;
+        if (t - head == slots.length) {
+            droppedCount++;
+            return null;
+        }
+        return slots[(int) (t & mask)];
+    }
+
+    /**
+     * Producer only. Hands the slot from the last claim() to the consumer.
+     */
+    public void publish() {
+        tail = tail + 1;
+    }
+
+    /**
+     * Consumer only.
+     * @return the oldest published sample, or null if there are none. It stays in the queue until release().
+     */
+    public OdometrySample peek() {
+        long h = head;
+        if (h == tail) {
+            return null;
+        }
+        return slots[(int) (h & mask)];
+    }
+
+    /**
+     * Consumer only. Frees the sample from the last peek() for the producer to reuse.
+     */
+    public void release() {
+        head = head + 1;
+    }
+
+    /**
+     * Consumer only. Discards every published sample.
+     */
+    public void clear() {
+        head = tail;
+    }
+
+    /**
+     * @return number of published samples not yet released
+     */
+    public int size() {
+        // Head first: it never passes the tail, so reading the tail second can't give a negative size
+        long h = head;
+        return (int) (tail - h);
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return number of samples the producer has had to drop because the consumer fell behind
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -0,0 +1,72 @@
+package frc.robot.util.odometry;
+
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+ * Samples the odometry sensors on its own Notifier thread, faster than the main loop, and passes
+ * the timestamped samples to the main loop through an OdometrySampleQueue. The main loop then
+ * integrates every sample since the last loop instead of one per loop.
+ */
+public class OdometryThread {
+
+    /**
+     * Reads the odometry sensors into a sample. Called from the Notifier thread, so it may only
+     * read sensors that are safe to read from another thread.
+     */
+    @FunctionalInterface
+    public interface Sampler {
+        /**
+         * @return false to discard the sample, if there's nothing new since the last one
+         */
+        boolean sample(OdometrySample sample);
+    }
+
+    private final Sampler sampler;
+    private final OdometrySampleQueue queue;
+    private final Notifier notifier;
+    private final double periodSeconds;
+    private boolean running = false;
+
+    public OdometryThread(Sampler sampler, OdometrySampleQueue queue, double periodSeconds) {
+        this.sampler = sampler;
+        this.queue = queue;
+        this.periodSeconds = periodSeconds;
+        notifier = new Notifier(this::sample);
+        notifier.setName("Odometry");
+    }
+
+    /**
+     * Starts sampling every period.
+     */
+    public synchronized void start() {
+        running = true;
+        notifier.startPeriodic(periodSeconds);
+    }
+
+    public synchronized void stop() {
+        notifier.stop();
+        running = false;
+    }
+
+    /**
+     * Takes one sample on the calling thread. For simulation, where the sensors only change once
+     * per loop and the Notifier isn't started. The queue takes a single producer, so this
+     * can't be used while the thread is running.
+     */
+    public synchronized void sampleNow() {
+        if (running) {
+            throw new IllegalStateException("Odometry thread is already sampling");
+        }
+        sample();
+    }
+
+    private void sample() {
+        OdometrySample sample = queue.claim();
+        if (sample == null) {
+            return;
+        }
+        if (sampler.sample(sample)) {
+            queue.publish();
+        }
+    }
+}
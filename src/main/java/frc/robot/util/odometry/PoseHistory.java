@@ -0,0 +1,124 @@
+package frc.robot.util.odometry;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * The robot's recent poses by time, for consumers that need to know where the robot was when
+ * something happened: a camera frame, a game piece leaving the shooter, a log entry.
+ *
+ * Poses are kept in parallel primitive arrays used as a ring, so adding one is O(1) and allocates
+ * nothing, unlike a TreeMap-backed interpolating buffer. Lookups binary search the ring and
+ * interpolate. Not thread-safe; it belongs to the thread that adds to it.
+ */
+public class PoseHistory {
+    private final double[] timestamps_s;
+    private final double[] xs_m;
+    private final double[] ys_m;
+    private final double[] thetas_rad;
+    private int oldest = 0;
+    private int size = 0;
+
+    /**
+     * @param capacity number of poses kept. At odometry rate, 250 per second of history.
+     */
+    public PoseHistory(int capacity) {
+        timestamps_s = new double[capacity];
+        xs_m = new double[capacity];
+        ys_m = new double[capacity];
+        thetas_rad = new double[capacity];
+    }
+
+    /**
+     * Adds a pose, replacing the oldest once full. Poses must be added in time order; one no
+     * newer than the newest is ignored.
+     */
+    public void add(double timestamp_s, double x_m, double y_m, double theta_rad) {
+        if (size > 0 && timestamp_s <= timestamps_s[index(size - 1)]) {
+            return;
+        }
+        int slot;
+        if (size < timestamps_s.length) {
+            slot = index(size);
+            size++;
+        } else {
+            slot = oldest;
+            oldest = index(1);
+        }
+        timestamps_s[slot] = timestamp_s;
+        xs_m[slot] = x_m;
+        ys_m[slot] = y_m;
+        thetas_rad[slot] = theta_rad;
+    }
+
+    public void clear() {
+        oldest = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return time of the oldest pose kept, or NaN if there are none
+     */
+    public double getOldestTimestamp() {
+        return size == 0 ? Double.NaN : timestamps_s[oldest];
+    }
+
+    /**
+     * @return time of the newest pose, or NaN if there are none
+     */
+    public double getNewestTimestamp() {
+        return size == 0 ? Double.NaN : timestamps_s[index(size - 1)];
+    }
+
+    /**
+     * Returns the pose at the given time, interpolated between the poses either side of it:
+     * linearly in x and y, and along the shorter way around in heading. Times outside the history
+     * get the oldest or newest pose; it never extrapolates.
+     * @return the pose, or null if the history is empty
+     */
+    public Pose2d getPoseAt(double timestamp_s) {
+        if (size == 0) {
+            return null;
+        }
+        // Binary search for the first pose after the given time, in age order
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timestamps_s[index(mid)] <= timestamp_s) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == 0) {
+            return poseAt(oldest);
+        }
+        if (lo == size) {
+            return poseAt(index(size - 1));
+        }
+        int before = index(lo - 1);
+        int after = index(lo);
+        double fraction = (timestamp_s - timestamps_s[before]) / (timestamps_s[after] - timestamps_s[before]);
+        double dTheta = MathUtil.angleModulus(thetas_rad[after] - thetas_rad[before]);
+        return new Pose2d(
+            xs_m[before] + fraction * (xs_m[after] - xs_m[before]),
+            ys_m[before] + fraction * (ys_m[after] - ys_m[before]),
+            new Rotation2d(thetas_rad[before] + fraction * dTheta));
+    }
+
+    private Pose2d poseAt(int slot) {
+        return new Pose2d(xs_m[slot], ys_m[slot], new Rotation2d(thetas_rad[slot]));
+    }
+
+    // Ring slot of the pose ageIndex places newer than the oldest
+    private int index(int ageIndex) {
+        int slot = oldest + ageIndex;
+        return slot >= timestamps_s.length ? slot - timestamps_s.length : slot;
+    }
+}
@@ -0,0 +1,185 @@
+package frc.robot.util.odometry;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Checks each odometry sample for a wheel that disagrees with rigid-body motion, and replaces the
+ * slipping wheel's distance with what the other wheels say it should have been.
+ *
+ * The chassis is rigid, so over one sample every module moves by the same robot translation plus
+ * the gyro's rotation times its offset from center. Taking the rotation out of each module's
+ * measured displacement leaves one estimate of the robot translation per module. A module whose
+ * estimate is far from the mean of the other three is slipping (or its encoder is wrong).
+ *
+ * Four modules can isolate one fault. If the remaining three don't agree either, the whole robot
+ * is sliding or being pushed, no one wheel is to blame, and the measurements are passed through.
+ */
+public class SlipDetector {
+    private final int numModules;
+    private final double[] offsetX_m;
+    private final double[] offsetY_m;
+    private final double residualThreshold_mps;
+    private final double residualFraction;
+
+    private boolean initialized = false;
+    private double lastTimestamp_s;
+    private double lastGyroAngle_rad;
+    private final double[] lastMeasuredDistance_m;
+    private final double[] correctedDistance_m;
+
+    // Per-sample scratch: each module's estimate of the robot translation, robot frame
+    private final double[] translationX_m;
+    private final double[] translationY_m;
+
+    private int slippingModule = -1;
+    private boolean inconsistent = false;
+    private final long[] slipCounts;
+
+    /**
+     * @param moduleOffsets module positions relative to the robot center
+     * @param residualThreshold_mps disagreement always tolerated, as a speed
+     * @param residualFraction disagreement tolerated in proportion to robot speed
+     */
+    public SlipDetector(Translation2d[] moduleOffsets, double residualThreshold_mps, double residualFraction) {
+        numModules = moduleOffsets.length;
+        offsetX_m = new double[numModules];
+        offsetY_m = new double[numModules];
+        for (int i = 0; i < numModules; i++) {
+            offsetX_m[i] = moduleOffsets[i].getX();
+            offsetY_m[i] = moduleOffsets[i].getY();
+        }
+        this.residualThreshold_mps = residualThreshold_mps;
+        this.residualFraction = residualFraction;
+        lastMeasuredDistance_m = new double[numModules];
+        correctedDistance_m = new double[numModules];
+        translationX_m = new double[numModules];
+        translationY_m = new double[numModules];
+        slipCounts = new long[numModules];
+    }
+
+    /**
+     * Forgets the previous sample. The next sample is taken as is, and becomes the baseline.
+     */
+    public void reset() {
+        initialized = false;
+        slippingModule = -1;
+        inconsistent = false;
+    }
+
+    /**
+     * Checks one odometry sample against the previous one.
+     * @param driveDistance_m measured drive distances
+     * @param moduleAngle_rad module angles
+     * @return the index of the module found slipping and corrected, or -1
+     */
+    public int update(double timestamp_s, double gyroAngle_rad, double[] driveDistance_m, double[] moduleAngle_rad) {
+        if (!initialized) {
+            initialized = true;
+            lastTimestamp_s = timestamp_s;
+            lastGyroAngle_rad = gyroAngle_rad;
+            System.arraycopy(driveDistance_m, 0, lastMeasuredDistance_m, 0, numModules);
+            System.arraycopy(driveDistance_m, 0, correctedDistance_m, 0, numModules);
+            slippingModule = -1;
+            inconsistent = false;
+            return -1;
+        }
+        double dt = timestamp_s - lastTimestamp_s;
+        double dTheta = MathUtil.angleModulus(gyroAngle_rad - lastGyroAngle_rad);
+
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = 0; i < numModules; i++) {
+            double delta = driveDistance_m[i] - lastMeasuredDistance_m[i];
+            // Take out the rotation's contribution, dTheta cross offset
+            translationX_m[i] = delta * Math.cos(moduleAngle_rad[i]) + dTheta * offsetY_m[i];
+            translationY_m[i] = delta * Math.sin(moduleAngle_rad[i]) - dTheta * offsetX_m[i];
+            sumX += translationX_m[i];
+            sumY += translationY_m[i];
+        }
+        double speed = Math.hypot(sumX, sumY) / numModules / dt;
+        double threshold = (residualThreshold_mps + residualFraction * speed) * dt;
+
+        int worst = -1;
+        double worstResidual = threshold;
+        for (int i = 0; i < numModules; i++) {
+            double residual = residualAgainstOthers(i, sumX, sumY, i);
+            if (residual > worstResidual) {
+                worst = i;
+                worstResidual = residual;
+            }
+        }
+
+        slippingModule = -1;
+        inconsistent = false;
+        if (worst >= 0) {
+            // Only blame one module if the other three agree with each other
+            double othersX = sumX - translationX_m[worst];
+            double othersY = sumY - translationY_m[worst];
+            for (int i = 0; i < numModules && !inconsistent; i++) {
+                inconsistent = i != worst && residualAgainstOthers(i, othersX, othersY, worst) > threshold;
+            }
+            if (!inconsistent) {
+                slippingModule = worst;
+                slipCounts[worst]++;
+            }
+        }
+
+        for (int i = 0; i < numModules; i++) {
+            double delta = driveDistance_m[i] - lastMeasuredDistance_m[i];
+            if (i == slippingModule) {
+                // Where the others say this module went, along the direction its wheel rolls
+                double othersX = (sumX - translationX_m[i]) / (numModules - 1);
+                double othersY = (sumY - translationY_m[i]) / (numModules - 1);
+                double moveX = othersX - dTheta * offsetY_m[i];
+                double moveY = othersY + dTheta * offsetX_m[i];
+                delta = moveX * Math.cos(moduleAngle_rad[i]) + moveY * Math.sin(moduleAngle_rad[i]);
+            }
+            correctedDistance_m[i] += delta;
+            lastMeasuredDistance_m[i] = driveDistance_m[i];
+        }
+        lastTimestamp_s = timestamp_s;
+        lastGyroAngle_rad = gyroAngle_rad;
+        return slippingModule;
+    }
+
+    /**
+     * Distance between module i's translation estimate and the mean of the others in the given
+     * sum, which already leaves out module excluded (if it isn't i).
+     */
+    private double residualAgainstOthers(int i, double sumX, double sumY, int excluded) {
+        int others = excluded == i ? numModules - 1 : numModules - 2;
+        double othersX = (sumX - translationX_m[i]) / others;
+        double othersY = (sumY - translationY_m[i]) / others;
+        return Math.hypot(translationX_m[i] - othersX, translationY_m[i] - othersY);
+    }
+
+    /**
+     * @return the drive distances to feed odometry: measured, except for a slipping module's
+     * increments, which come from the other modules instead
+     */
+    public double[] getCorrectedDistances() {
+        return correctedDistance_m;
+    }
+
+    /**
+     * @return the module corrected in the last sample, or -1
+     */
+    public int getSlippingModule() {
+        return slippingModule;
+    }
+
+    /**
+     * @return true if in the last sample the modules disagreed but no single one could be blamed
+     */
+    public boolean isInconsistent() {
+        return inconsistent;
+    }
+
+    /**
+     * @return how many samples module i has been corrected in
+     */
+    public long getSlipCount(int i) {
+        return slipCounts[i];
+    }
+}
@@ -0,0 +1,78 @@
+package frc.robot.util.odometry;
+
+/**
+ * The last few timestamped readings of one signal, in primitive arrays, for reading the signal
+ * at a time between readings. Not thread-safe; each buffer belongs to whichever thread writes it.
+ * Reads never index outside the arrays though, even if a write lands part way through them, so a
+ * reader can read optimistically and retry if a write overlapped (see SparkMaxEncoderWrapper).
+ */
+public class TimestampedDoubleBuffer {
+    private final double[] timestamps_s;
+    private final double[] values;
+    // Always a valid index, even when empty, so a racing read can't go out of bounds
+    private int newest;
+    private int size = 0;
+
+    public TimestampedDoubleBuffer(int capacity) {
+        timestamps_s = new double[capacity];
+        values = new double[capacity];
+        newest = capacity - 1;
+    }
+
+    /**
+     * Adds a reading. Readings must be added in time order; one no newer than the newest is ignored.
+     */
+    public void add(double timestamp_s, double value) {
+        if (size > 0 && timestamp_s <= timestamps_s[newest]) {
+            return;
+        }
+        newest = (newest + 1) % timestamps_s.length;
+        timestamps_s[newest] = timestamp_s;
+        values[newest] = value;
+        size = Math.min(size + 1, timestamps_s.length);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return time of the newest reading, or negative infinity if there are none
+     */
+    public double getNewestTimestamp() {
+        return size == 0 ? Double.NEGATIVE_INFINITY : timestamps_s[newest];
+    }
+
+    public double getNewestValue() {
+        return size == 0 ? 0.0 : values[newest];
+    }
+
+    /**
+     * Linearly interpolates between the readings either side of the given time. Times outside
+     * the buffer get the oldest or newest reading; it never extrapolates.
+     * @return the interpolated value, or 0 if there are no readings
+     */
+    public double getAt(double timestamp_s) {
+        if (size == 0) {
+            return 0.0;
+        }
+        int after = newest;
+        if (timestamp_s >= timestamps_s[after]) {
+            return values[after];
+        }
+        // Walk back from the newest, which is where lookups almost always land
+        for (int i = 1; i < size; i++) {
+            int before = (after - 1 + timestamps_s.length) % timestamps_s.length;
+            if (timestamp_s >= timestamps_s[before]) {
+                double fraction = (timestamp_s - timestamps_s[before]) / (timestamps_s[after] - timestamps_s[before]);
+                return values[before] + fraction * (values[after] - values[before]);
+            }
+            after = before;
+        }
+        return values[after];
+    }
+}
@@ -0,0 +1,57 @@
+package frc.robot.util.replay;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.subsystems.DrivebaseS;
+import frc.robot.subsystems.io.GyroIOReplay;
+import frc.robot.subsystems.io.ModuleIOReplay;
+
+/**
+ * Replays the drivebase from a recording made by InputLog, as fast as the CPU allows, and prints
+ * the odometry estimate along the way. Change the odometry code and replay the same recording to
+ * see what the change would have done on the robot.
+ *
+ * Only the drivebase is replayed: no commands run, so the recording alone decides what the
+ * drivebase saw. The odometry resets the robot's commands made are in the recording, and are
+ * applied on the loops they happened in. Vision isn't recorded yet, so the estimate is odometry only.
+ */
+public class DriveReplay {
+    // Print the estimate every this many loops, about every 5 seconds of the recording
+    private static final int PRINT_PERIOD_LOOPS = 250;
+
+    /**
+     * @param args the recording to replay
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: DriveReplay <recording>");
+            System.exit(1);
+        }
+        HAL.initialize(500, 0);
+        InputLog log = InputLog.getInstance();
+        log.startReplay(new File(args[0]));
+
+        // The drivebase read its hardware when it was created, into the first frame
+        log.beginCycle();
+        DrivebaseS drivebase = new DrivebaseS(new GyroIOReplay(), moduleConstants -> new ModuleIOReplay());
+        log.endCycle();
+
+        int loops = 0;
+        while (log.beginCycle()) {
+            CommandScheduler.getInstance().run();
+            log.endCycle();
+            loops++;
+            if (loops % PRINT_PERIOD_LOOPS == 0) {
+                System.out.printf("%8.3fs %s%n", Timer.getFPGATimestamp(), drivebase.getPose());
+            }
+        }
+        log.close();
+
+        System.out.printf("Replayed %d loops, final estimate %s%n", loops, drivebase.getPose());
+        System.exit(0);
+    }
+}
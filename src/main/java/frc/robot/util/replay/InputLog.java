@@ -0,0 +1,316 @@
+package frc.robot.util.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+
+/**
+ * Records every subsystem's hardware inputs, one frame per main loop, so the loop can be replayed
+ * later from the recording instead of from hardware.
+ *
+ * A frame is the FPGA time the loop started, then each LoggableInputs passed to process() in
+ * the order it was passed. Subsystems read their IO and process the inputs at the same points
+ * every loop, so replay reads them back in the same order with no names needed.
+ *
+ * While recording, process() writes the inputs into the frame. While replaying, it overwrites
+ * them from the recorded frame, and the IO implementations underneath do nothing. beginCycle()
+ * also moves the simulated clock to the recorded time, so everything that reads the FPGA clock
+ * sees what it saw on the robot, and the same inputs give the same results.
+ *
+ * While recording, endCycle() only copies the finished frame onto a queue. A background thread
+ * writes the queue to the file and flushes it every FLUSH_PERIOD_S, so the main loop never waits on
+ * the disk, and a power-off loses at most the last flush period. If the writer falls so far behind
+ * that the queue fills, frames are dropped, with a warning, rather than stalling the loop.
+ *
+ * Main thread only, except close() and flush(). When neither recording nor replaying, every
+ * method does nothing.
+ */
+public class InputLog {
+    private static final int INITIAL_FRAME_BYTES = 4096;
+    // Frames waiting for the writer: a few seconds of loops
+    private static final int WRITE_QUEUE_FRAMES = 256;
+    private static final double FLUSH_PERIOD_S = 1.0;
+    private static final long CLOSE_TIMEOUT_MS = 2000;
+    // Queued in place of a frame to have the writer flush, or flush and stop
+    private static final ByteBuffer FLUSH = ByteBuffer.allocate(0);
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+    private enum Mode {
+        OFF,
+        RECORDING,
+        REPLAYING
+    }
+
+    private static InputLog instance;
+
+    /**
+     * @return the log shared by every subsystem
+     */
+    public static synchronized InputLog getInstance() {
+        if (instance == null) {
+            instance = new InputLog();
+        }
+        return instance;
+    }
+
+    private volatile Mode mode = Mode.OFF;
+    private DataInputStream input;
+    private ByteBuffer frame = ByteBuffer.allocate(INITIAL_FRAME_BYTES);
+    private boolean inCycle = false;
+
+    // Recording: finished frames go to the writer on written, and their buffers come back on free
+    private BlockingQueue<ByteBuffer> written;
+    private BlockingQueue<ByteBuffer> free;
+    private Thread writer;
+    private volatile boolean writerFailed = false;
+    private long droppedFrames = 0;
+
+    private InputLog() {}
+
+    /**
+     * Starts writing frames to a new file. Recording stops with a warning if the file can't be written,
+     * rather than stopping the robot.
+     */
+    public synchronized void startRecording(File file) {
+        if (mode != Mode.OFF) {
+            throw new IllegalStateException("Input log is already " + mode);
+        }
+        DataOutputStream output;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        } catch (IOException e) {
+            DriverStation.reportWarning("Not recording inputs to " + file + ": " + e.getMessage(), false);
+            return;
+        }
+        written = new ArrayBlockingQueue<>(WRITE_QUEUE_FRAMES);
+        free = new ArrayBlockingQueue<>(WRITE_QUEUE_FRAMES);
+        for (int i = 0; i < WRITE_QUEUE_FRAMES; i++) {
+            free.add(ByteBuffer.allocate(INITIAL_FRAME_BYTES));
+        }
+        writerFailed = false;
+        droppedFrames = 0;
+        writer = new Thread(() -> writeFrames(output), "Input Log Writer");
+        writer.setDaemon(true);
+        writer.start();
+        mode = Mode.RECORDING;
+    }
+
+    /**
+     * Starts reading frames from a recording. Simulation only: this pauses the simulated clock,
+     * and from then on only beginCycle() moves it.
+     */
+    public void startReplay(File file) throws IOException {
+        if (mode != Mode.OFF) {
+            throw new IllegalStateException("Input log is already " + mode);
+        }
+        input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        SimHooks.pauseTiming();
+        mode = Mode.REPLAYING;
+    }
+
+    public boolean isRecording() {
+        return mode == Mode.RECORDING;
+    }
+
+    public boolean isReplaying() {
+        return mode == Mode.REPLAYING;
+    }
+
+    /**
+     * Starts a loop's frame. When replaying, reads the next recorded frame and steps the simulated
+     * clock to the time it was recorded at.
+     * @return false if replaying and the recording has ended
+     */
+    public boolean beginCycle() {
+        if (inCycle) {
+            throw new IllegalStateException("Input log cycle already begun");
+        }
+        switch (mode) {
+            case RECORDING:
+                frame.clear();
+                frame.putLong(RobotController.getFPGATime());
+                break;
+            case REPLAYING:
+                if (!readFrame()) {
+                    return false;
+                }
+                long delta_us = frame.getLong() - RobotController.getFPGATime();
+                if (delta_us > 0) {
+                    // Half a microsecond over, so the conversion back to whole microseconds lands exactly
+                    SimHooks.stepTiming((delta_us + 0.5) / 1e6);
+                }
+                break;
+            default:
+                return true;
+        }
+        inCycle = true;
+        return true;
+    }
+
+    /**
+     * Records the inputs into this loop's frame, or when replaying, overwrites them from it.
+     */
+    public void process(LoggableInputs inputs) {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        if (!inCycle) {
+            throw new IllegalStateException("Inputs processed outside an input log cycle");
+        }
+        if (mode == Mode.RECORDING) {
+            ensureRemaining(inputs.getLogBytes());
+            inputs.toLog(frame);
+        } else {
+            inputs.fromLog(frame);
+        }
+    }
+
+    /**
+     * Ends the loop's frame, handing it to the writer if recording.
+     */
+    public synchronized void endCycle() {
+        if (!inCycle) {
+            return;
+        }
+        inCycle = false;
+        if (mode == Mode.RECORDING) {
+            if (writerFailed) {
+                close();
+                return;
+            }
+            ByteBuffer copy = free.poll();
+            if (copy != null) {
+                if (copy.capacity() < frame.position()) {
+                    copy = ByteBuffer.allocate(frame.capacity());
+                }
+                copy.clear();
+                copy.put(frame.array(), 0, frame.position());
+                copy.flip();
+                if (written.offer(copy)) {
+                    return;
+                }
+                free.offer(copy);
+            }
+            if (droppedFrames++ == 0) {
+                DriverStation.reportWarning("Input log writer is behind; dropping frames", false);
+            }
+        } else if (frame.hasRemaining()) {
+            // The code being replayed processed fewer inputs than were recorded, so everything after
+            // this would be read from the wrong place
+            throw new IllegalStateException(
+                "Replay out of step with the recording: " + frame.remaining() + " bytes left in the frame");
+        }
+    }
+
+    /**
+     * Has the writer flush everything recorded so far to the file, without waiting for it.
+     */
+    public synchronized void flush() {
+        if (mode == Mode.RECORDING) {
+            written.offer(FLUSH);
+        }
+    }
+
+    /**
+     * Writes out the frames still queued, and closes the file. Waits a couple of seconds at most for
+     * the writer. The log is off afterwards. Safe to call from a shutdown hook.
+     */
+    public synchronized void close() {
+        if (mode == Mode.RECORDING) {
+            // A writer that failed has already closed the file
+            if (writer.isAlive()) {
+                try {
+                    written.offer(CLOSE, CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    writer.join(CLOSE_TIMEOUT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (droppedFrames > 0) {
+                DriverStation.reportWarning("Input log dropped " + droppedFrames + " frames", false);
+            }
+            writer = null;
+        }
+        try {
+            if (input != null) {
+                input.close();
+            }
+        } catch (IOException e) {
+            DriverStation.reportWarning("Couldn't close input log: " + e.getMessage(), false);
+        }
+        input = null;
+        inCycle = false;
+        mode = Mode.OFF;
+    }
+
+    /**
+     * The writer thread: writes each queued frame as its length then its bytes, flushing every
+     * FLUSH_PERIOD_S and when asked to, until it's told to close.
+     */
+    private void writeFrames(DataOutputStream output) {
+        long flushPeriod_ns = (long) (FLUSH_PERIOD_S * 1e9);
+        long lastFlush_ns = System.nanoTime();
+        try (output) {
+            while (true) {
+                ByteBuffer buf = written.poll(flushPeriod_ns, TimeUnit.NANOSECONDS);
+                if (buf == CLOSE) {
+                    return;
+                }
+                if (buf != null && buf != FLUSH) {
+                    output.writeInt(buf.remaining());
+                    output.write(buf.array(), 0, buf.remaining());
+                    free.offer(buf);
+                }
+                long now_ns = System.nanoTime();
+                if (buf == FLUSH || now_ns - lastFlush_ns >= flushPeriod_ns) {
+                    output.flush();
+                    lastFlush_ns = now_ns;
+                }
+            }
+        } catch (IOException e) {
+            DriverStation.reportWarning("Stopped recording inputs: " + e.getMessage(), false);
+            writerFailed = true;
+        } catch (InterruptedException e) {
+            writerFailed = true;
+        }
+    }
+
+    private boolean readFrame() {
+        try {
+            int length = input.readInt();
+            if (frame.capacity() < length) {
+                frame = ByteBuffer.allocate(length);
+            }
+            input.readFully(frame.array(), 0, length);
+            frame.clear().limit(length);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't read input log", e);
+        }
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (frame.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(frame.capacity() * 2, frame.position() + bytes));
+            frame.flip();
+            larger.put(frame);
+            frame = larger;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package frc.robot.util.replay;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A flat set of sensor readings that InputLog can record and replay. Every field should be a
+ * primitive, written and read back in the same order.
+ */
+public interface LoggableInputs {
+    /**
+     * @return the number of bytes toLog() will write for the current values
+     */
+    int getLogBytes();
+
+    void toLog(ByteBuffer buf);
+
+    /**
+     * Overwrites every field with values written by toLog().
+     */
+    void fromLog(ByteBuffer buf);
+}
@@ -0,0 +1,441 @@
+package frc.robot.util.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import frc.robot.util.sim.wpiClasses.QuadSwerveSim;
+
+/**
+ * Several simulated robots sharing a walled field, pushing on each other and on the walls.
+ *
+ * Each robot is a QuadSwerveSim with a rectangular bumper footprint. Contacts are modelled with
+ * penalty forces: a spring on how far two footprints overlap, a damper on how fast they close,
+ * and friction along the contact capped by the normal force. The resulting force and torque on
+ * each robot go in through QuadSwerveSim.setExternalForce, so the drivetrain model decides how
+ * much of a push the treads resist.
+ *
+ * Robot pairs are only tested in full when they share a cell of a uniform grid over the field,
+ * with cells as big as the largest robot, so each robot only meets its neighbours.
+ *
+ * Contacts are recomputed every fixed step and held through it, so the step has to be short
+ * against the contact spring's period (about 0.1 s for a 10 kg robot); the 1 ms default is.
+ */
+public class FieldSim {
+    /** Field length along x: 54 ft */
+    public static final double FIELD_LENGTH_M = 16.4592;
+    /** Field width along y: 27 ft */
+    public static final double FIELD_WIDTH_M = 8.2296;
+
+    private static final double DEFAULT_STEP_S = 0.001;
+
+    // Bumper contact model
+    private static final double CONTACT_STIFFNESS_N_PER_M = 2.0e4;
+    private static final double CONTACT_DAMPING_N_PER_MPS = 300;
+    private static final double CONTACT_FRICTION_COEF = 0.3;
+    // Viscous approximation of sliding friction at low slip speed, so sticking contacts don't chatter
+    private static final double CONTACT_FRICTION_DAMPING_N_PER_MPS = 1000;
+
+    private final double stepSeconds;
+    private boolean wallsEnabled = true;
+
+    private final List<QuadSwerveSim> robots = new ArrayList<>();
+    private double[] halfLength_m = new double[0];
+    private double[] halfWidth_m = new double[0];
+    private double[] boundingRadius_m = new double[0];
+
+    // Per-step snapshot of each robot's state, and the contact force accumulated on it
+    private double[] poseX = new double[0];
+    private double[] poseY = new double[0];
+    private double[] poseCos = new double[0];
+    private double[] poseSin = new double[0];
+    private double[] velX = new double[0];
+    private double[] velY = new double[0];
+    private double[] omega = new double[0];
+    private double[] forceX = new double[0];
+    private double[] forceY = new double[0];
+    private double[] torque = new double[0];
+
+    // Broad phase grid, bucketed by counting sort: robots in cell c are
+    // cellEntries[cellStart[c]] up to (not including) cellEntries[cellStart[c + 1]]
+    private double cellSize_m;
+    private int gridCellsX;
+    private int gridCellsY;
+    private int[] cellStart = new int[1];
+    private int[] cellFill = new int[0];
+    private int[] cellEntries = new int[0];
+    private int[] robotCellMinX = new int[0];
+    private int[] robotCellMaxX = new int[0];
+    private int[] robotCellMinY = new int[0];
+    private int[] robotCellMaxY = new int[0];
+    // A pair's entry is stamped with the step it was tested in, so pairs sharing several cells are only tested once
+    private int[] pairTestedStamp = new int[0];
+    private int stamp = 0;
+
+    private int contactCount = 0;
+
+    // Narrow phase scratch
+    private final double[] cornerX = new double[4];
+    private final double[] cornerY = new double[4];
+
+    public FieldSim() {
+        this(DEFAULT_STEP_S);
+    }
+
+    /**
+     * @param stepSeconds fixed physics step. Contacts are recomputed every step.
+     */
+    public FieldSim(double stepSeconds) {
+        this.stepSeconds = stepSeconds;
+    }
+
+    /**
+     * Adds a robot to the field. It keeps whatever pose it has; use QuadSwerveSim.modelReset to place it.
+     * @param robot the robot's drivetrain sim. Its inputs stay with the caller.
+     * @param bumperLength_m outside bumper length along the robot's x axis
+     * @param bumperWidth_m outside bumper width along the robot's y axis
+     * @return the robot's index on this field
+     */
+    public int addRobot(QuadSwerveSim robot, double bumperLength_m, double bumperWidth_m) {
+        int index = robots.size();
+        robots.add(robot);
+        int count = robots.size();
+
+        halfLength_m = Arrays.copyOf(halfLength_m, count);
+        halfWidth_m = Arrays.copyOf(halfWidth_m, count);
+        boundingRadius_m = Arrays.copyOf(boundingRadius_m, count);
+        halfLength_m[index] = bumperLength_m / 2;
+        halfWidth_m[index] = bumperWidth_m / 2;
+        boundingRadius_m[index] = Math.hypot(halfLength_m[index], halfWidth_m[index]);
+
+        poseX = new double[count];
+        poseY = new double[count];
+        poseCos = new double[count];
+        poseSin = new double[count];
+        velX = new double[count];
+        velY = new double[count];
+        omega = new double[count];
+        forceX = new double[count];
+        forceY = new double[count];
+        torque = new double[count];
+        robotCellMinX = new int[count];
+        robotCellMaxX = new int[count];
+        robotCellMinY = new int[count];
+        robotCellMaxY = new int[count];
+        pairTestedStamp = new int[count * count];
+        stamp = 0;
+
+        // Cells at least as wide as any robot, so a robot covers at most 2x2 cells
+        double maxDiameter = 0;
+        for (double radius : boundingRadius_m) {
+            maxDiameter = Math.max(maxDiameter, 2 * radius);
+        }
+        cellSize_m = maxDiameter;
+        gridCellsX = Math.max(1, (int) Math.ceil(FIELD_LENGTH_M / cellSize_m));
+        gridCellsY = Math.max(1, (int) Math.ceil(FIELD_WIDTH_M / cellSize_m));
+        cellStart = new int[gridCellsX * gridCellsY + 1];
+        cellFill = new int[gridCellsX * gridCellsY];
+        cellEntries = new int[4 * count];
+        return index;
+    }
+
+    public QuadSwerveSim getRobot(int index) {
+        return robots.get(index);
+    }
+
+    public int getRobotCount() {
+        return robots.size();
+    }
+
+    /**
+     * Walls are on by default. Without them the field is an open plane and only robots collide.
+     */
+    public void setWallsEnabled(boolean wallsEnabled) {
+        this.wallsEnabled = wallsEnabled;
+    }
+
+    /**
+     * @return the number of robot-robot and robot-wall contacts in the most recent step
+     */
+    public int getContactCount() {
+        return contactCount;
+    }
+
+    /**
+     * Advances every robot by a control period in fixed steps, with each robot's input voltages held.
+     * @param periodSeconds loop period, normally 0.02
+     */
+    public void advance(double periodSeconds) {
+        int steps = Math.max(1, (int) Math.round(periodSeconds / stepSeconds));
+        double dt = periodSeconds / steps;
+        for (int i = 0; i < steps; i++) {
+            step(dt);
+        }
+    }
+
+    /**
+     * Computes contact forces at the present poses, then advances every robot by dtSeconds under them.
+     */
+    public void step(double dtSeconds) {
+        int count = robots.size();
+        for (int i = 0; i < count; i++) {
+            QuadSwerveSim robot = robots.get(i);
+            poseX[i] = robot.getPoseX_m();
+            poseY[i] = robot.getPoseY_m();
+            poseCos[i] = robot.getHeadingCos();
+            poseSin[i] = robot.getHeadingSin();
+            velX[i] = robot.getFieldVelocityX_mps();
+            velY[i] = robot.getFieldVelocityY_mps();
+            omega[i] = robot.getAngularVelocity_radPerSec();
+            forceX[i] = 0;
+            forceY[i] = 0;
+            torque[i] = 0;
+        }
+
+        contactCount = 0;
+        if (wallsEnabled) {
+            for (int i = 0; i < count; i++) {
+                addWallContacts(i);
+            }
+        }
+        if (count > 1) {
+            buildGrid();
+            addRobotContacts();
+        }
+
+        for (int i = 0; i < count; i++) {
+            QuadSwerveSim robot = robots.get(i);
+            robot.setExternalForce(forceX[i], forceY[i], torque[i]);
+            robot.update(dtSeconds);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////
+    // Walls
+
+    private void addWallContacts(int i) {
+        computeCorners(i);
+        for (int c = 0; c < 4; c++) {
+            double x = cornerX[c];
+            double y = cornerY[c];
+            if (x < 0) {
+                addContact(i, -1, x, y, 1, 0, -x);
+            } else if (x > FIELD_LENGTH_M) {
+                addContact(i, -1, x, y, -1, 0, x - FIELD_LENGTH_M);
+            }
+            if (y < 0) {
+                addContact(i, -1, x, y, 0, 1, -y);
+            } else if (y > FIELD_WIDTH_M) {
+                addContact(i, -1, x, y, 0, -1, y - FIELD_WIDTH_M);
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////
+    // Broad phase
+
+    private int cellX(double x) {
+        return Math.max(0, Math.min(gridCellsX - 1, (int) Math.floor(x / cellSize_m)));
+    }
+
+    private int cellY(double y) {
+        return Math.max(0, Math.min(gridCellsY - 1, (int) Math.floor(y / cellSize_m)));
+    }
+
+    /**
+     * Buckets each robot into every cell its bounding circle's box touches. Robots off the field
+     * land in the edge cells, which keeps them colliding with each other.
+     */
+    private void buildGrid() {
+        int count = robots.size();
+        int numCells = gridCellsX * gridCellsY;
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < count; i++) {
+            double r = boundingRadius_m[i];
+            robotCellMinX[i] = cellX(poseX[i] - r);
+            robotCellMaxX[i] = cellX(poseX[i] + r);
+            robotCellMinY[i] = cellY(poseY[i] - r);
+            robotCellMaxY[i] = cellY(poseY[i] + r);
+            for (int cy = robotCellMinY[i]; cy <= robotCellMaxY[i]; cy++) {
+                for (int cx = robotCellMinX[i]; cx <= robotCellMaxX[i]; cx++) {
+                    cellStart[cy * gridCellsX + cx + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < numCells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        System.arraycopy(cellStart, 0, cellFill, 0, numCells);
+        for (int i = 0; i < count; i++) {
+            for (int cy = robotCellMinY[i]; cy <= robotCellMaxY[i]; cy++) {
+                for (int cx = robotCellMinX[i]; cx <= robotCellMaxX[i]; cx++) {
+                    cellEntries[cellFill[cy * gridCellsX + cx]++] = i;
+                }
+            }
+        }
+    }
+
+    private void addRobotContacts() {
+        int count = robots.size();
+        stamp++;
+        for (int cell = 0; cell < gridCellsX * gridCellsY; cell++) {
+            for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++) {
+                for (int q = p + 1; q < cellStart[cell + 1]; q++) {
+                    int a = Math.min(cellEntries[p], cellEntries[q]);
+                    int b = Math.max(cellEntries[p], cellEntries[q]);
+                    if (pairTestedStamp[a * count + b] == stamp) {
+                        continue;
+                    }
+                    pairTestedStamp[a * count + b] = stamp;
+                    collide(a, b);
+                }
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////
+    // Narrow phase
+
+    /**
+     * Separating axis test between two bumper rectangles. When they overlap, pushes them apart
+     * along the axis of least overlap, at the average of the corners of each that are inside the other.
+     */
+    private void collide(int a, int b) {
+        double dx = poseX[b] - poseX[a];
+        double dy = poseY[b] - poseY[a];
+        double reach = boundingRadius_m[a] + boundingRadius_m[b];
+        if (dx * dx + dy * dy >= reach * reach) {
+            return;
+        }
+
+        double depth = Double.POSITIVE_INFINITY;
+        double normalX = 0;
+        double normalY = 0;
+        // Candidate axes: each robot's x and y axes
+        for (int axis = 0; axis < 4; axis++) {
+            int owner = axis < 2 ? a : b;
+            double ax = (axis & 1) == 0 ? poseCos[owner] : -poseSin[owner];
+            double ay = (axis & 1) == 0 ? poseSin[owner] : poseCos[owner];
+            double separation = dx * ax + dy * ay;
+            double overlap = projectedHalfExtent(a, ax, ay) + projectedHalfExtent(b, ax, ay) - Math.abs(separation);
+            if (overlap <= 0) {
+                return;
+            }
+            if (overlap < depth) {
+                depth = overlap;
+                // Normal points from a toward b
+                double sign = separation >= 0 ? 1 : -1;
+                normalX = ax * sign;
+                normalY = ay * sign;
+            }
+        }
+
+        double contactX = 0;
+        double contactY = 0;
+        int inside = 0;
+        computeCorners(b);
+        for (int c = 0; c < 4; c++) {
+            if (containsPoint(a, cornerX[c], cornerY[c])) {
+                contactX += cornerX[c];
+                contactY += cornerY[c];
+                inside++;
+            }
+        }
+        computeCorners(a);
+        for (int c = 0; c < 4; c++) {
+            if (containsPoint(b, cornerX[c], cornerY[c])) {
+                contactX += cornerX[c];
+                contactY += cornerY[c];
+                inside++;
+            }
+        }
+        if (inside > 0) {
+            contactX /= inside;
+            contactY /= inside;
+        } else {
+            // Edges crossing with no corner inside either: push at the midpoint between centers
+            contactX = poseX[a] + dx / 2;
+            contactY = poseY[a] + dy / 2;
+        }
+
+        addContact(b, a, contactX, contactY, normalX, normalY, depth);
+    }
+
+    private double projectedHalfExtent(int i, double axisX, double axisY) {
+        return halfLength_m[i] * Math.abs(poseCos[i] * axisX + poseSin[i] * axisY)
+             + halfWidth_m[i] * Math.abs(-poseSin[i] * axisX + poseCos[i] * axisY);
+    }
+
+    private boolean containsPoint(int i, double x, double y) {
+        double relX = x - poseX[i];
+        double relY = y - poseY[i];
+        double alongLength =  relX * poseCos[i] + relY * poseSin[i];
+        double alongWidth  = -relX * poseSin[i] + relY * poseCos[i];
+        return Math.abs(alongLength) <= halfLength_m[i] && Math.abs(alongWidth) <= halfWidth_m[i];
+    }
+
+    private void computeCorners(int i) {
+        for (int c = 0; c < 4; c++) {
+            double localX = (c == 0 || c == 3) ? halfLength_m[i] : -halfLength_m[i];
+            double localY = (c < 2) ? halfWidth_m[i] : -halfWidth_m[i];
+            cornerX[c] = poseX[i] + localX * poseCos[i] - localY * poseSin[i];
+            cornerY[c] = poseY[i] + localX * poseSin[i] + localY * poseCos[i];
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////
+    // Contact forces
+
+    /**
+     * Applies a penalty contact at a point, pushing robot i along the normal and robot other
+     * (or a wall, if other is negative) the opposite way.
+     * @param normalX unit normal toward which robot i is pushed
+     * @param normalY unit normal toward which robot i is pushed
+     * @param depth how far the two overlap along the normal
+     */
+    private void addContact(int i, int other, double contactX, double contactY,
+                            double normalX, double normalY, double depth) {
+        contactCount++;
+
+        // Velocity of the contact point on robot i, relative to the other side
+        double relVelX = pointVelocityX(i, contactY);
+        double relVelY = pointVelocityY(i, contactX);
+        if (other >= 0) {
+            relVelX -= pointVelocityX(other, contactY);
+            relVelY -= pointVelocityY(other, contactX);
+        }
+        double separatingSpeed = relVelX * normalX + relVelY * normalY;
+
+        double normalForce = Math.max(0, CONTACT_STIFFNESS_N_PER_M * depth - CONTACT_DAMPING_N_PER_MPS * separatingSpeed);
+        double fx = normalForce * normalX;
+        double fy = normalForce * normalY;
+
+        double slipX = relVelX - separatingSpeed * normalX;
+        double slipY = relVelY - separatingSpeed * normalY;
+        double slipSpeed = Math.hypot(slipX, slipY);
+        if (slipSpeed > 1e-9) {
+            double friction = Math.min(CONTACT_FRICTION_COEF * normalForce, CONTACT_FRICTION_DAMPING_N_PER_MPS * slipSpeed);
+            fx -= friction * slipX / slipSpeed;
+            fy -= friction * slipY / slipSpeed;
+        }
+
+        applyForce(i, contactX, contactY, fx, fy);
+        if (other >= 0) {
+            applyForce(other, contactX, contactY, -fx, -fy);
+        }
+    }
+
+    private double pointVelocityX(int i, double pointY) {
+        return velX[i] - omega[i] * (pointY - poseY[i]);
+    }
+
+    private double pointVelocityY(int i, double pointX) {
+        return velY[i] + omega[i] * (pointX - poseX[i]);
+    }
+
+    private void applyForce(int i, double pointX, double pointY, double fx, double fy) {
+        forceX[i] += fx;
+        forceY[i] += fy;
+        torque[i] += (pointX - poseX[i]) * fy - (pointY - poseY[i]) * fx;
+    }
+}
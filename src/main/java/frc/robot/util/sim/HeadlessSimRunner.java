@@ -0,0 +1,213 @@
+package frc.robot.util.sim;
+
+import java.util.function.DoubleFunction;
+
+import com.pathplanner.lib.PathConstraints;
+import com.pathplanner.lib.PathPlanner;
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.subsystems.DrivebaseS;
+import frc.robot.subsystems.VisionS;
+
+/**
+ * Runs the drivebase simulation without the sim GUI or a wall-clock TimedRobot loop.
+ *
+ * HAL timing is paused and stepped by hand, so everything that reads the FPGA clock
+ * (command Timers, Notifiers, the pose estimator) sees a virtual clock that advances
+ * 20 ms per loop as fast as the CPU can run the loop. Each loop does what the robot loop does:
+ * run the CommandScheduler (subsystem periodic, simulationPeriodic, then commands),
+ * then advance the clock.
+ *
+ * Only one runner should exist per JVM, since the HAL and CommandScheduler are process-wide.
+ */
+public class HeadlessSimRunner {
+    private static final double LOOP_PERIOD_S = 0.02;
+
+    private static boolean halInitialized = false;
+
+    private final DrivebaseS drivebase;
+
+    /**
+     * The outcome of a single headless run.
+     * Tracking errors compare the simulated (ground truth) pose against the reference.
+     * They are NaN if no reference was given.
+     */
+    public static class Result {
+        public final Pose2d finalSimPose;
+        public final Pose2d finalEstimatedPose;
+        public final double finalTranslationError_m;
+        public final double maxTranslationError_m;
+        public final double rmsTranslationError_m;
+        public final double maxRotationError_rad;
+        public final double elapsedSimSeconds;
+        /** False if the command was still running when the timeout was hit. */
+        public final boolean finished;
+
+        Result(Pose2d finalSimPose, Pose2d finalEstimatedPose, double finalTranslationError_m,
+                double maxTranslationError_m, double rmsTranslationError_m, double maxRotationError_rad,
+                double elapsedSimSeconds, boolean finished) {
+            this.finalSimPose = finalSimPose;
+            this.finalEstimatedPose = finalEstimatedPose;
+            this.finalTranslationError_m = finalTranslationError_m;
+            this.maxTranslationError_m = maxTranslationError_m;
+            this.rmsTranslationError_m = rmsTranslationError_m;
+            this.maxRotationError_rad = maxRotationError_rad;
+            this.elapsedSimSeconds = elapsedSimSeconds;
+            this.finished = finished;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "Result(t: %.2fs, finished: %b, final: %s, final err: %.3fm, max err: %.3fm, rms err: %.3fm, max rot err: %.3frad)",
+                elapsedSimSeconds, finished, finalSimPose, finalTranslationError_m,
+                maxTranslationError_m, rmsTranslationError_m, maxRotationError_rad);
+        }
+    }
+
+    /**
+     * Initializes the HAL in simulation, pauses its clock, and enables the simulated driver station
+     * in autonomous. Must be called before any hardware objects (including DrivebaseS) are constructed.
+     */
+    public static synchronized void initializeHal() {
+        if (!halInitialized) {
+            HAL.initialize(500, 0);
+            halInitialized = true;
+        }
+        SimHooks.pauseTiming();
+        DriverStationSim.setDsAttached(true);
+        DriverStationSim.setAutonomous(true);
+        DriverStationSim.setEnabled(true);
+        DriverStationSim.notifyNewData();
+    }
+
+    /**
+     * Initializes the HAL and creates a runner around a fresh DrivebaseS.
+     */
+    public static HeadlessSimRunner create() {
+        initializeHal();
+        return new HeadlessSimRunner(new DrivebaseS());
+    }
+
+    /**
+     * Like create(), with a VisionS correcting the pose estimate from the simulated camera.
+     * The scheduler runs it each loop along with the drivebase.
+     */
+    public static HeadlessSimRunner createWithVision() {
+        initializeHal();
+        DrivebaseS drivebase = new DrivebaseS();
+        new VisionS(drivebase, null).awaitLayout();
+        return new HeadlessSimRunner(drivebase);
+    }
+
+    public HeadlessSimRunner(DrivebaseS drivebase) {
+        this.drivebase = drivebase;
+    }
+
+    public DrivebaseS getDrivebase() {
+        return drivebase;
+    }
+
+    /**
+     * Resets the drivebase to the trajectory's start, then follows it with the drivebase's
+     * PathPlanner command until the command finishes.
+     * @param trajectory the trajectory to follow
+     * @param extraTimeoutSeconds how long past the trajectory's duration to wait for the command to finish
+     * @return the run result, with tracking error measured against the trajectory's holonomic pose
+     */
+    public Result runTrajectory(PathPlannerTrajectory trajectory, double extraTimeoutSeconds) {
+        drivebase.resetPose(trajectory.getInitialHolonomicPose());
+        return run(
+            drivebase.pathPlannerCommand(trajectory),
+            (time) -> {
+                PathPlannerState state = (PathPlannerState) trajectory.sample(time);
+                return new Pose2d(state.poseMeters.getTranslation(), state.holonomicRotation);
+            },
+            trajectory.getTotalTimeSeconds() + extraTimeoutSeconds);
+    }
+
+    /**
+     * Schedules the command and steps the virtual clock until it finishes or the timeout is hit.
+     * @param command the command to run
+     * @param reference the reference pose as a function of time since the command started, or null
+     * @param timeoutSeconds the maximum simulated time to run for
+     * @return the run result
+     */
+    public Result run(Command command, DoubleFunction<Pose2d> reference, double timeoutSeconds) {
+        CommandScheduler scheduler = CommandScheduler.getInstance();
+        command.schedule();
+
+        int maxLoops = (int) Math.ceil(timeoutSeconds / LOOP_PERIOD_S);
+        int loops = 0;
+        double maxTranslationError = 0;
+        double sumSquaredTranslationError = 0;
+        double maxRotationError = 0;
+        double translationError = Double.NaN;
+
+        // The first scheduler run initializes the command, matching the robot loop.
+        scheduler.run();
+        while (command.isScheduled() && loops < maxLoops) {
+            SimHooks.stepTiming(LOOP_PERIOD_S);
+            loops++;
+            scheduler.run();
+
+            if (reference != null) {
+                Pose2d target = reference.apply(loops * LOOP_PERIOD_S);
+                Pose2d actual = drivebase.getSimPose();
+                translationError = actual.getTranslation().getDistance(target.getTranslation());
+                double rotationError = Math.abs(actual.getRotation().minus(target.getRotation()).getRadians());
+                maxTranslationError = Math.max(maxTranslationError, translationError);
+                sumSquaredTranslationError += translationError * translationError;
+                maxRotationError = Math.max(maxRotationError, rotationError);
+            }
+        }
+
+        boolean finished = !command.isScheduled();
+        if (!finished) {
+            command.cancel();
+        }
+        // Leave the modules commanded to stop for the next run.
+        drivebase.drive(0, 0, 0, false);
+
+        boolean tracked = reference != null && loops > 0;
+        return new Result(
+            drivebase.getSimPose(),
+            drivebase.getPose(),
+            tracked ? translationError : Double.NaN,
+            tracked ? maxTranslationError : Double.NaN,
+            tracked ? Math.sqrt(sumSquaredTranslationError / loops) : Double.NaN,
+            tracked ? maxRotationError : Double.NaN,
+            loops * LOOP_PERIOD_S,
+            finished);
+    }
+
+    /**
+     * Runs a PathPlanner path from the deploy directory headless and prints the result and the wall time.
+     * @param args path name (defaults to "path1"), max velocity, max acceleration, and "vision" to run with vision
+     */
+    public static void main(String... args) {
+        String pathName = args.length > 0 ? args[0] : "path1";
+        double maxVel = args.length > 1 ? Double.parseDouble(args[1]) : 4;
+        double maxAccel = args.length > 2 ? Double.parseDouble(args[2]) : 3;
+
+        boolean withVision = args.length > 3 && args[3].equals("vision");
+
+        HeadlessSimRunner runner = withVision ? createWithVision() : create();
+        PathPlannerTrajectory trajectory = PathPlanner.loadPath(pathName, new PathConstraints(maxVel, maxAccel));
+
+        long startNanos = System.nanoTime();
+        Result result = runner.runTrajectory(trajectory, 1.0);
+        double wallSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        System.out.println(result);
+        System.out.printf("Wall time %.3fs (%.1fx real time)%n", wallSeconds, result.elapsedSimSeconds / wallSeconds);
+        System.exit(0);
+    }
+}
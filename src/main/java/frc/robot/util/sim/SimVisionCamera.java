@@ -0,0 +1,112 @@
+package frc.robot.util.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.util.vision.IndexedTagLayout;
+import frc.robot.util.vision.TagSighting;
+import frc.robot.util.vision.VisionCamera;
+
+/**
+ * Stands in for a PhotonVision camera in simulation, seeing tags from the simulated robot pose.
+ *
+ * Each frame sees the tags that are in front of the camera, inside its horizontal field of view
+ * and range, and facing it. Their translations get Gaussian noise that grows with range.
+ * A frame is only reported once its latency has passed, stamped with its capture time,
+ * the way photonlib stamps real results. It needs no HAL or NetworkTables, so it runs headless.
+ */
+public class SimVisionCamera implements VisionCamera {
+    private final Supplier<Pose2d> truePose;
+    private final DoubleSupplier clock;
+    private final IndexedTagLayout layout;
+    private final Transform3d robotToCamera;
+    private final double halfFov_rad;
+    private final double maxRange_m;
+    private final double latency_s;
+    private final double framePeriod_s;
+    private final double noisePerMeter;
+    private final Random random;
+
+    private final List<TagSighting> pendingSightings = new ArrayList<>();
+    private double pendingCaptureTime_s = Double.NaN;
+    private double lastCaptureTime_s = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param truePose the simulated robot pose, such as QuadSwerveSim.getCurPose
+     * @param clock FPGA time in seconds
+     * @param horizontalFov_rad full horizontal field of view
+     * @param noisePerMeter translation noise standard deviation per meter from the camera
+     * @param seed noise seed, so runs repeat
+     */
+    public SimVisionCamera(Supplier<Pose2d> truePose, DoubleSupplier clock, IndexedTagLayout layout,
+                           Transform3d robotToCamera, double horizontalFov_rad, double maxRange_m,
+                           double latency_s, double framePeriod_s, double noisePerMeter, long seed) {
+        this.truePose = truePose;
+        this.clock = clock;
+        this.layout = layout;
+        this.robotToCamera = robotToCamera;
+        this.halfFov_rad = horizontalFov_rad / 2;
+        this.maxRange_m = maxRange_m;
+        this.latency_s = latency_s;
+        this.framePeriod_s = framePeriod_s;
+        this.noisePerMeter = noisePerMeter;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public double readFrame(List<TagSighting> sightings) {
+        double now = clock.getAsDouble();
+        // One frame in flight at a time, as long as the latency is shorter than the frame period
+        if (Double.isNaN(pendingCaptureTime_s) && now - lastCaptureTime_s >= framePeriod_s) {
+            capture(now);
+        }
+        if (Double.isNaN(pendingCaptureTime_s) || now < pendingCaptureTime_s + latency_s) {
+            return Double.NaN;
+        }
+        double captureTime = pendingCaptureTime_s;
+        sightings.addAll(pendingSightings);
+        pendingSightings.clear();
+        pendingCaptureTime_s = Double.NaN;
+        return captureTime;
+    }
+
+    private void capture(double now) {
+        Pose3d cameraPose = new Pose3d(truePose.get()).transformBy(robotToCamera);
+        Transform3d fieldToCamera = new Transform3d(new Pose3d(), cameraPose);
+        for (int i = 0; i < layout.size(); i++) {
+            int id = layout.getId(i);
+            Transform3d tagToCamera = layout.getTagToField(id).plus(fieldToCamera);
+            // The tag's x axis points out of its face, so the camera has to be on its +x side
+            if (tagToCamera.getX() <= 0) {
+                continue;
+            }
+            Transform3d cameraToTag = tagToCamera.inverse();
+            Translation3d t = cameraToTag.getTranslation();
+            double distance = t.getNorm();
+            if (t.getX() <= 0 || distance > maxRange_m || Math.abs(Math.atan2(t.getY(), t.getX())) > halfFov_rad) {
+                continue;
+            }
+            double noise = noisePerMeter * distance;
+            Translation3d noisyTranslation = new Translation3d(
+                t.getX() + random.nextGaussian() * noise,
+                t.getY() + random.nextGaussian() * noise,
+                t.getZ() + random.nextGaussian() * noise);
+            pendingSightings.add(new TagSighting(
+                id, new Transform3d(noisyTranslation, cameraToTag.getRotation()), 0.0));
+        }
+        pendingCaptureTime_s = now;
+        lastCaptureTime_s = now;
+    }
+
+    @Override
+    public Transform3d getRobotToCamera() {
+        return robotToCamera;
+    }
+}
@@ -0,0 +1,159 @@
+package frc.robot.util.sim;
+
+import static frc.robot.Constants.DriveConstants.AZMTH_ENC_COUNTS_PER_MODULE_REV;
+import static frc.robot.Constants.DriveConstants.NUM_MODULES;
+import static frc.robot.Constants.DriveConstants.ROBOT_MASS_kg;
+import static frc.robot.Constants.DriveConstants.ROBOT_MOI_KGM2;
+import static frc.robot.Constants.DriveConstants.WHEEL_BASE_WIDTH_M;
+import static frc.robot.Constants.DriveConstants.WHEEL_ENC_COUNTS_PER_WHEEL_REV;
+import static frc.robot.Constants.DriveConstants.WHEEL_RADIUS_M;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants.DriveConstants.ModuleConstants;
+import frc.robot.subsystems.DrivebaseS;
+import frc.robot.util.controllers.SwerveModuleControlLaw;
+import frc.robot.util.sim.wpiClasses.QuadSwerveSim;
+import frc.robot.util.sim.wpiClasses.SwerveModuleSim;
+
+/**
+ * A complete simulated drivetrain that needs no HAL: the swerve physics, the module control laws
+ * and wheel odometry, wired together the way DrivebaseS wires them in simulationPeriodic.
+ *
+ * Instances share no state, so many can be stepped in parallel on different threads.
+ * Drive voltages are the control law's commanded volts, clamped to 12 V.
+ */
+public class SimulatedDrivetrain {
+    private static final double MAX_VOLTAGE = 12.0;
+
+    private final List<SwerveModuleSim> moduleSims = new ArrayList<>(NUM_MODULES);
+    private final QuadSwerveSim quadSwerveSim;
+    private final SwerveModuleControlLaw[] controlLaws = new SwerveModuleControlLaw[NUM_MODULES];
+    private final SwerveDriveKinematics kinematics;
+    private final SwerveDriveOdometry odometry;
+
+    // Simulated sensor readings, as the module encoder wrappers would report them
+    private final double[] azimuthAngle_rad = new double[NUM_MODULES];
+    private final double[] wheelPos_m = new double[NUM_MODULES];
+    private final double[] wheelVel_mps = new double[NUM_MODULES];
+    private final SwerveModulePosition[] modulePositions = new SwerveModulePosition[NUM_MODULES];
+
+    /**
+     * Creates a drivetrain with our nominal physical parameters.
+     */
+    public SimulatedDrivetrain() {
+        this(1.5, 2, 0.01, ROBOT_MASS_kg);
+    }
+
+    /**
+     * @param treadStaticCoefFric static coefficient of friction between tread and carpet
+     * @param treadKineticCoefFric kinetic coefficient of friction between tread and carpet
+     * @param azimuthEffectiveMOI effective moment of inertia of each module about its steering axis
+     * @param robotMass_kg robot mass. Robot MOI is scaled from the nominal with mass.
+     */
+    public SimulatedDrivetrain(double treadStaticCoefFric, double treadKineticCoefFric,
+            double azimuthEffectiveMOI, double robotMass_kg) {
+        for (int i = 0; i < NUM_MODULES; i++) {
+            moduleSims.add(DrivebaseS.swerveSimModuleFactory(
+                treadStaticCoefFric, treadKineticCoefFric, azimuthEffectiveMOI, robotMass_kg));
+            controlLaws[i] = new SwerveModuleControlLaw();
+            modulePositions[i] = new SwerveModulePosition();
+        }
+        quadSwerveSim = new QuadSwerveSim(
+            WHEEL_BASE_WIDTH_M,
+            WHEEL_BASE_WIDTH_M,
+            robotMass_kg,
+            ROBOT_MOI_KGM2 * robotMass_kg / ROBOT_MASS_kg,
+            moduleSims);
+        // Own kinematics rather than the shared constant, since kinematics objects cache state between calls.
+        kinematics = new SwerveDriveKinematics(
+            ModuleConstants.FL.centerOffset,
+            ModuleConstants.FR.centerOffset,
+            ModuleConstants.BL.centerOffset,
+            ModuleConstants.BR.centerOffset);
+        odometry = new SwerveDriveOdometry(kinematics, new Rotation2d(), updateModulePositions(), new Pose2d());
+    }
+
+    /**
+     * Resets the physics and odometry to the given pose.
+     */
+    public void reset(Pose2d pose) {
+        quadSwerveSim.modelReset(pose);
+        readSensors();
+        odometry.resetPosition(getGyroAngle(), updateModulePositions(), pose);
+    }
+
+    /**
+     * Runs each module's control law toward the states for the given speeds, as DrivebaseS.drive does.
+     * @param speeds robot-relative chassis speeds
+     */
+    public void drive(ChassisSpeeds speeds) {
+        SwerveModuleState[] states = DrivebaseS.calculateModuleStates(kinematics, speeds);
+        for (int i = 0; i < NUM_MODULES; i++) {
+            controlLaws[i].calculate(states[i], new Rotation2d(azimuthAngle_rad[i]), wheelVel_mps[i]);
+            moduleSims.get(i).setInputVoltages(
+                MathUtil.clamp(controlLaws[i].getDriveVolts(), -MAX_VOLTAGE, MAX_VOLTAGE),
+                MathUtil.clamp(controlLaws[i].getRotationVolts(), -MAX_VOLTAGE, MAX_VOLTAGE));
+        }
+    }
+
+    /**
+     * Advances the physics by one loop period, with whichever integrator the QuadSwerveSim is set to,
+     * and updates odometry from the resulting sensor readings.
+     * @param periodSeconds loop period, normally 0.02
+     */
+    public void step(double periodSeconds) {
+        quadSwerveSim.advance(periodSeconds);
+        readSensors();
+        odometry.update(getGyroAngle(), updateModulePositions());
+    }
+
+    private void readSensors() {
+        for (int i = 0; i < NUM_MODULES; i++) {
+            SwerveModuleSim moduleSim = moduleSims.get(i);
+            azimuthAngle_rad[i] = moduleSim.getAzimuthEncoderPositionRev() / AZMTH_ENC_COUNTS_PER_MODULE_REV * 2 * Math.PI;
+            wheelPos_m[i] = moduleSim.getWheelEncoderPositionRev() / WHEEL_ENC_COUNTS_PER_WHEEL_REV * 2 * Math.PI * WHEEL_RADIUS_M;
+            wheelVel_mps[i] = moduleSim.getWheelEncoderVelocityRevPerSec() / WHEEL_ENC_COUNTS_PER_WHEEL_REV * 2 * Math.PI * WHEEL_RADIUS_M;
+        }
+    }
+
+    private SwerveModulePosition[] updateModulePositions() {
+        for (int i = 0; i < NUM_MODULES; i++) {
+            modulePositions[i].distanceMeters = wheelPos_m[i];
+            modulePositions[i].angle = new Rotation2d(azimuthAngle_rad[i]);
+        }
+        return modulePositions;
+    }
+
+    /** A perfect gyro: the simulated robot's true heading. */
+    private Rotation2d getGyroAngle() {
+        return quadSwerveSim.getCurPose().getRotation();
+    }
+
+    /**
+     * @return the odometry (wheel and gyro) estimate of the robot pose, which the controllers act on
+     */
+    public Pose2d getPose() {
+        return odometry.getPoseMeters();
+    }
+
+    /**
+     * @return the simulated ground-truth robot pose
+     */
+    public Pose2d getTruePose() {
+        return quadSwerveSim.getCurPose();
+    }
+
+    public QuadSwerveSim getQuadSwerveSim() {
+        return quadSwerveSim;
+    }
+}
@@ -1,16 +1,24 @@
 package frc.robot.util.sim;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.concurrent.locks.StampedLock;
 
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
 
 import edu.wpi.first.hal.CANData;
-import edu.wpi.first.math.filter.LinearFilter;
 import edu.wpi.first.wpilibj.CAN;
-import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.CANConstants;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.util.can.CANClock;
+import frc.robot.util.can.CANFrames;
+import frc.robot.util.can.CANStatusSampler;
+import frc.robot.util.can.FrameStatistics;
+import frc.robot.util.odometry.TimestampedDoubleBuffer;
+import frc.robot.util.velocity.MovingAverageVelocityEstimator;
+import frc.robot.util.velocity.VelocityEstimator;
 
 public class SparkMaxEncoderWrapper {
     private static final int deviceManufacturer = 5; // REV
@@ -19,17 +27,29 @@ public class SparkMaxEncoderWrapper {
   
     private final CANSparkMax sparkMax;
     private final CAN canInterface;
-    private final LinearFilter velocityFilter;
-    private final Notifier notifier;
+    private final VelocityEstimator velocityEstimator;
+    // Reused for every frame; only the sampler thread touches it
+    private final CANData canData = new CANData();
+    private final FrameStatistics frameStatistics;
+    // RobotBase.isReal() is a call into the HAL, and the getters check it on every read
+    private final boolean real = RobotBase.isReal();
   
-    private boolean firstCycle = true;
-    private double timestamp = 0.0;
+    // Guards the published measurements below. Readers never take it: they read optimistically
+    // and retry if a frame was published meanwhile, so the sampler thread never waits on them.
+    private final StampedLock lock = new StampedLock();
     private double position = 0.0;
     private double velocity = 0.0;
-    private double simPosition = 0.0;
-    private double simVelocity = 0.0;
-    private double positionConversionFactor = 0.0;
-    private double velocityConversionFactor = 0.0;
+    // Recent positions by the FPGA time the Spark MAX measured them, for aligning with other sensors.
+    // Long enough to reach back as far as odometry may sample.
+    private final TimestampedDoubleBuffer positionHistory;
+
+    private volatile double simPosition = 0.0;
+    private volatile double simVelocity = 0.0;
+    private final double positionConversionFactor;
+    private final double velocityConversionFactor;
+
+    // Set by setPosition, so the estimator doesn't see the jump as motion
+    private volatile boolean resetVelocityEstimator = false;
   
     /**
      * Creates a new SparkMaxDerivedVelocityController using a default set of parameters.
@@ -38,56 +58,99 @@ public class SparkMaxEncoderWrapper {
       this(sparkMax, 0.02, 5);
     }
   
-    /** Creates a new SparkMaxDerivedVelocityController. */
+    /**
+     * Creates a new SparkMaxDerivedVelocityController, averaging the last few differences
+     * for velocity. The Spark MAX sends its position every periodSeconds, and the shared
+     * CANStatusSampler reads it.
+     */
     public SparkMaxEncoderWrapper(CANSparkMax sparkMax,
         double periodSeconds, int averagingTaps) {
+      this(sparkMax, periodSeconds, new MovingAverageVelocityEstimator(averagingTaps));
+    }
+
+    /**
+     * Creates a new SparkMaxDerivedVelocityController with the given velocity estimator, which
+     * it runs on the CANStatusSampler thread.
+     */
+    public SparkMaxEncoderWrapper(CANSparkMax sparkMax,
+        double periodSeconds, VelocityEstimator velocityEstimator) {
             this.sparkMax = sparkMax;
-            velocityFilter = LinearFilter.movingAverage(averagingTaps);
+            this.velocityEstimator = velocityEstimator;
             
             positionConversionFactor = sparkMax.getEncoder().getPositionConversionFactor();
             velocityConversionFactor = sparkMax.getEncoder().getVelocityConversionFactor();
             sparkMax.getEncoder().setPositionConversionFactor(1.0);
             int periodMs = (int) (periodSeconds * 1000);
             sparkMax.setPeriodicFramePeriod(PeriodicFrame.kStatus2, periodMs);
+            positionHistory = new TimestampedDoubleBuffer(
+                (int) Math.ceil(DriveConstants.ODOMETRY_MAX_SAMPLE_AGE_S / periodSeconds) + 2);
         
             canInterface =
                 new CAN(sparkMax.getDeviceId(), deviceManufacturer, deviceType);
-            
-            notifier = new Notifier(this::update);
-            notifier.startPeriodic(periodSeconds);
+            frameStatistics = new FrameStatistics(
+                "SparkMax-" + sparkMax.getDeviceId() + "-Position", periodSeconds, CANConstants.MAX_FRAME_AGE_S);
+
+            CANStatusSampler.getInstance().register(this::update);
 
     }
   
     /**
-     * Reads new data, updates the velocity measurement, and runs the controller.
+     * Reads new data and updates the velocity measurement. Called by the CANStatusSampler thread.
      */
     private void update() {
-      CANData canData = new CANData();
-      boolean isFresh = canInterface.readPacketNew(apiId, canData);
-      double newTimestamp = canData.timestamp / 1000.0;
-      double newPosition = ByteBuffer.wrap(canData.data)
-          .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(0);
-  
-      if (isFresh) {
-        synchronized (this) {
-          if (!firstCycle) {
-            velocity = velocityFilter.calculate(
-                (newPosition - position) / (newTimestamp - timestamp) * 60);
-          }
-          firstCycle = false;
-          timestamp = newTimestamp;
-          position = newPosition;
+      if (canInterface.readPacketNew(apiId, canData)) {
+        double newTimestamp = canData.timestamp / 1000.0;
+        double newPosition = CANFrames.getFloatLE(canData.data, 0);
+        double now = Timer.getFPGATimestamp();
+        if (resetVelocityEstimator) {
+          resetVelocityEstimator = false;
+          velocityEstimator.reset();
+        }
+        double newVelocity = velocityEstimator.update(newTimestamp, newPosition) * 60;
+        double measuredAt_s = CANClock.getInstance().toFpgaTime(newTimestamp, now);
 
+        long stamp = lock.writeLock();
+        try {
+          position = newPosition;
+          velocity = newVelocity;
+          positionHistory.add(measuredAt_s, newPosition);
+        } finally {
+          lock.unlockWrite(stamp);
         }
+        frameStatistics.recordFresh(newTimestamp, measuredAt_s);
+      } else {
+        frameStatistics.recordStale();
       }
     }
+
+    /**
+     * Returns how the position frames have been arriving.
+     */
+    public FrameStatistics getFrameStatistics() {
+        return frameStatistics;
+    }
+
+    /**
+     * Returns false if the position frames have stopped arriving, so the position is frozen.
+     * Always true in simulation.
+     */
+    public boolean isHealthy() {
+        return !real || frameStatistics.isHealthy();
+    }
   
     /**
      * Returns the current position in rotations.
      */
-    public synchronized double getPosition() {
-        if(RobotBase.isReal()) {
-            return position * positionConversionFactor;
+    public double getPosition() {
+        if(real) {
+            while (true) {
+                long stamp = lock.tryOptimisticRead();
+                double rawPosition = position;
+                if (lock.validate(stamp)) {
+                    return rawPosition * positionConversionFactor;
+                }
+                Thread.onSpinWait();
+            }
         }
         else {
             return simPosition;
@@ -98,27 +161,112 @@ public class SparkMaxEncoderWrapper {
     /**
      * Returns the current velocity in rotations/minute.
      */
-    public synchronized double getVelocity() {
-        if(RobotBase.isReal()) {
-            return velocity * velocityConversionFactor;
+    public double getVelocity() {
+        if(real) {
+            while (true) {
+                long stamp = lock.tryOptimisticRead();
+                double rawVelocity = velocity;
+                if (lock.validate(stamp)) {
+                    return rawVelocity * velocityConversionFactor;
+                }
+                Thread.onSpinWait();
+            }
         } else {
             return simVelocity;
         }
     }
 
-    public synchronized void setPosition(double position) {
+    /**
+     * One consistent reading of the encoder, filled in by read() from a single frame's worth of
+     * published state. Callers own one per thread and reuse it.
+     */
+    public static class Snapshot {
+        /** Position in rotations times the position conversion factor */
+        public double position;
+        /** Velocity in rotations/minute times the velocity conversion factor */
+        public double velocity;
+        /**
+         * FPGA time in seconds that the newest position was measured at, as stamped on its CAN frame.
+         * In simulation the position is always current, so this is the current time.
+         */
+        public double timestamp_s;
+    }
+
+    /**
+     * Reads the newest position, velocity and measurement time together, so none of them is from
+     * a newer frame than the others.
+     */
+    public void read(Snapshot out) {
+        read(out, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Like read(Snapshot), but with the position at the given FPGA time, interpolated between the
+     * measurements either side of it. Times past the newest measurement get the newest position.
+     */
+    public void read(Snapshot out, double timestamp_s) {
+        if(real) {
+            while (true) {
+                long stamp = lock.tryOptimisticRead();
+                boolean empty = positionHistory.isEmpty();
+                double rawPosition = empty ? position : positionHistory.getAt(timestamp_s);
+                double rawVelocity = velocity;
+                double newest = positionHistory.getNewestTimestamp();
+                if (lock.validate(stamp)) {
+                    out.position = rawPosition * positionConversionFactor;
+                    out.velocity = rawVelocity * velocityConversionFactor;
+                    out.timestamp_s = newest;
+                    return;
+                }
+                Thread.onSpinWait();
+            }
+        } else {
+            out.position = simPosition;
+            out.velocity = simVelocity;
+            out.timestamp_s = Timer.getFPGATimestamp();
+        }
+    }
+
+    public void setPosition(double position) {
         // we still want the encoder to report in motor shaft rotations, so divide by conversion factor.
         sparkMax.getEncoder().setPosition(position / positionConversionFactor);
+        // Older measurements are from before the jump, and can't be interpolated or differenced across it
+        resetVelocityEstimator = true;
+        long stamp = lock.writeLock();
+        try {
+            positionHistory.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
         setSimPosition(position);
     }
 
-    public synchronized void setSimPosition(double position) {
+    public void setSimPosition(double position) {
         simPosition = position;
     }
 
-    public synchronized void setSimVelocity(double velocity) {
+    public void setSimVelocity(double velocity) {
         simVelocity = velocity;
     }
 
+    // Simulated position and velocity
+    public static final int SIM_STATE_BYTES = 2 * Double.BYTES;
+
+    /**
+     * Writes the simulated position and velocity into buf.
+     */
+    public void saveSimState(ByteBuffer buf) {
+        buf.putDouble(simPosition);
+        buf.putDouble(simVelocity);
+    }
+
+    /**
+     * Reads back values written by saveSimState().
+     */
+    public void restoreSimState(ByteBuffer buf) {
+        simPosition = buf.getDouble();
+        simVelocity = buf.getDouble();
+    }
+
     
   }
@@ -0,0 +1,289 @@
+package frc.robot.util.sim;
+
+import static frc.robot.Constants.DriveConstants.ROBOT_MASS_kg;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.pathplanner.lib.PathPlannerTrajectory;
+import com.pathplanner.lib.PathPlannerTrajectory.PathPlannerState;
+import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Monte Carlo sweep over the swerve sim's physical parameters.
+ *
+ * Each sample builds its own SimulatedDrivetrain with tread friction, azimuth MOI and robot mass
+ * drawn around our nominal values, follows the same trajectory with the same controller gains
+ * DrivebaseS uses, and records where it ended up. Samples share nothing, so they are spread across
+ * a ForkJoinPool and throughput scales with core count.
+ *
+ * Each sample's parameters come from its own random stream seeded from (seed, index), so a sweep is
+ * reproducible no matter how the work gets split between threads.
+ */
+public class SwerveParameterSweep {
+    private static final double LOOP_PERIOD_S = 0.02;
+    // Samples per leaf task. Each sample is several ms of work, so small leaves still amortize the forking.
+    private static final int LEAF_SIZE = 4;
+
+    /** The physical parameters of one sampled robot. */
+    public static class Parameters {
+        public final double treadStaticCoefFric;
+        public final double treadKineticCoefFric;
+        public final double azimuthEffectiveMOI;
+        public final double robotMass_kg;
+
+        public Parameters(double treadStaticCoefFric, double treadKineticCoefFric,
+                double azimuthEffectiveMOI, double robotMass_kg) {
+            this.treadStaticCoefFric = treadStaticCoefFric;
+            this.treadKineticCoefFric = treadKineticCoefFric;
+            this.azimuthEffectiveMOI = azimuthEffectiveMOI;
+            this.robotMass_kg = robotMass_kg;
+        }
+
+        /** The values hard-coded in DrivebaseS.swerveSimModuleFactory. */
+        public static Parameters nominal() {
+            return new Parameters(1.5, 2, 0.01, ROBOT_MASS_kg);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Parameters(static mu: %.3f, kinetic mu: %.3f, azimuth MOI: %.4f, mass: %.2fkg)",
+                treadStaticCoefFric, treadKineticCoefFric, azimuthEffectiveMOI, robotMass_kg);
+        }
+    }
+
+    /**
+     * Relative (fractional) standard deviations of each parameter around nominal.
+     * Draws are Gaussian, clamped to stay within 3 standard deviations and positive.
+     */
+    public static class Spread {
+        public final double treadFricRelStdDev;
+        public final double azimuthMOIRelStdDev;
+        public final double robotMassRelStdDev;
+
+        public Spread(double treadFricRelStdDev, double azimuthMOIRelStdDev, double robotMassRelStdDev) {
+            this.treadFricRelStdDev = treadFricRelStdDev;
+            this.azimuthMOIRelStdDev = azimuthMOIRelStdDev;
+            this.robotMassRelStdDev = robotMassRelStdDev;
+        }
+
+        /** Carpet varies a lot between events; weight varies with mechanisms and battery. */
+        public static Spread defaults() {
+            return new Spread(0.2, 0.3, 0.1);
+        }
+    }
+
+    /** The outcome of one sampled robot following the trajectory. */
+    public static class Sample {
+        public final Parameters parameters;
+        public final Pose2d finalPose;
+        /** Distance from the simulated final pose to the trajectory's end. */
+        public final double endpointTranslationError_m;
+        public final double endpointRotationError_rad;
+        /** Distance from the odometry estimate to the simulated final pose. */
+        public final double odometryError_m;
+
+        Sample(Parameters parameters, Pose2d finalPose, double endpointTranslationError_m,
+                double endpointRotationError_rad, double odometryError_m) {
+            this.parameters = parameters;
+            this.finalPose = finalPose;
+            this.endpointTranslationError_m = endpointTranslationError_m;
+            this.endpointRotationError_rad = endpointRotationError_rad;
+            this.odometryError_m = odometryError_m;
+        }
+    }
+
+    /** Summary statistics of one metric across all samples. */
+    public static class Distribution {
+        public final double mean;
+        public final double stdDev;
+        public final double p50;
+        public final double p90;
+        public final double p95;
+        public final double max;
+
+        Distribution(double[] values) {
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (double value : sorted) {
+                sum += value;
+            }
+            mean = sum / sorted.length;
+            double sumSquaredDeviation = 0;
+            for (double value : sorted) {
+                sumSquaredDeviation += (value - mean) * (value - mean);
+            }
+            stdDev = Math.sqrt(sumSquaredDeviation / sorted.length);
+            p50 = percentile(sorted, 0.50);
+            p90 = percentile(sorted, 0.90);
+            p95 = percentile(sorted, 0.95);
+            max = sorted[sorted.length - 1];
+        }
+
+        private static double percentile(double[] sorted, double fraction) {
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("mean %.4f, std %.4f, p50 %.4f, p90 %.4f, p95 %.4f, max %.4f",
+                mean, stdDev, p50, p90, p95, max);
+        }
+    }
+
+    /** All samples from a sweep plus their aggregate error distributions. */
+    public static class Result {
+        public final Sample[] samples;
+        public final Distribution endpointTranslationError_m;
+        public final Distribution endpointRotationError_rad;
+        public final Distribution odometryError_m;
+        public final double wallSeconds;
+
+        Result(Sample[] samples, double wallSeconds) {
+            this.samples = samples;
+            this.wallSeconds = wallSeconds;
+            double[] translation = new double[samples.length];
+            double[] rotation = new double[samples.length];
+            double[] odometry = new double[samples.length];
+            for (int i = 0; i < samples.length; i++) {
+                translation[i] = samples[i].endpointTranslationError_m;
+                rotation[i] = samples[i].endpointRotationError_rad;
+                odometry[i] = samples[i].odometryError_m;
+            }
+            endpointTranslationError_m = new Distribution(translation);
+            endpointRotationError_rad = new Distribution(rotation);
+            odometryError_m = new Distribution(odometry);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%d samples in %.2fs%n  endpoint translation error (m): %s%n  endpoint rotation error (rad): %s%n  odometry error (m): %s",
+                samples.length, wallSeconds, endpointTranslationError_m, endpointRotationError_rad, odometryError_m);
+        }
+    }
+
+    private final Parameters nominal;
+    private final Spread spread;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a sweep around the nominal parameters with the default spread, using every core.
+     */
+    public SwerveParameterSweep() {
+        this(Parameters.nominal(), Spread.defaults(), ForkJoinPool.commonPool());
+    }
+
+    public SwerveParameterSweep(Parameters nominal, Spread spread, ForkJoinPool pool) {
+        this.nominal = nominal;
+        this.spread = spread;
+        this.pool = pool;
+    }
+
+    /**
+     * Runs numSamples perturbed robots through the trajectory in parallel.
+     * @param trajectory the trajectory every sample follows
+     * @param numSamples how many robots to sample
+     * @param seed base seed for the parameter draws
+     * @return every sample and the aggregate error distributions
+     */
+    public Result run(PathPlannerTrajectory trajectory, int numSamples, long seed) {
+        Sample[] samples = new Sample[numSamples];
+        long startNanos = System.nanoTime();
+        pool.invoke(new SweepTask(trajectory, samples, seed, 0, numSamples));
+        return new Result(samples, (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    /**
+     * Draws the parameters for sample {@code index}.
+     */
+    public Parameters drawParameters(long seed, int index) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index);
+        // Static and kinetic friction come from the same carpet, so perturb them together.
+        double fricScale = perturbation(random, spread.treadFricRelStdDev);
+        return new Parameters(
+            nominal.treadStaticCoefFric * fricScale,
+            nominal.treadKineticCoefFric * fricScale,
+            nominal.azimuthEffectiveMOI * perturbation(random, spread.azimuthMOIRelStdDev),
+            nominal.robotMass_kg * perturbation(random, spread.robotMassRelStdDev));
+    }
+
+    private static double perturbation(SplittableRandom random, double relStdDev) {
+        // Box-Muller; SplittableRandom has no nextGaussian on Java 11.
+        double u1 = 1.0 - random.nextDouble();
+        double u2 = random.nextDouble();
+        double gaussian = Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+        gaussian = Math.max(-3.0, Math.min(3.0, gaussian));
+        return Math.max(0.05, 1.0 + relStdDev * gaussian);
+    }
+
+    /**
+     * Follows the trajectory with one simulated robot, the way PPSwerveControllerCommand does on the robot.
+     */
+    public static Sample simulate(PathPlannerTrajectory trajectory, Parameters parameters) {
+        SimulatedDrivetrain drivetrain = new SimulatedDrivetrain(
+            parameters.treadStaticCoefFric,
+            parameters.treadKineticCoefFric,
+            parameters.azimuthEffectiveMOI,
+            parameters.robotMass_kg);
+        PPHolonomicDriveController controller = new PPHolonomicDriveController(
+            new PIDController(DriveConstants.TRAJ_TRANSLATION_KP, 0, 0),
+            new PIDController(DriveConstants.TRAJ_TRANSLATION_KP, 0, 0),
+            new PIDController(DriveConstants.TRAJ_ROTATION_KP, 0, DriveConstants.TRAJ_ROTATION_KD));
+
+        drivetrain.reset(trajectory.getInitialHolonomicPose());
+        double totalTime = trajectory.getTotalTimeSeconds();
+        for (double time = 0; time < totalTime; time += LOOP_PERIOD_S) {
+            PathPlannerState desiredState = (PathPlannerState) trajectory.sample(time);
+            drivetrain.drive(controller.calculate(drivetrain.getPose(), desiredState));
+            drivetrain.step(LOOP_PERIOD_S);
+        }
+
+        PathPlannerState endState = trajectory.getEndState();
+        Pose2d finalPose = drivetrain.getTruePose();
+        return new Sample(
+            parameters,
+            finalPose,
+            finalPose.getTranslation().getDistance(endState.poseMeters.getTranslation()),
+            Math.abs(finalPose.getRotation().minus(endState.holonomicRotation).getRadians()),
+            drivetrain.getPose().getTranslation().getDistance(finalPose.getTranslation()));
+    }
+
+    private class SweepTask extends RecursiveAction {
+        private final PathPlannerTrajectory trajectory;
+        private final Sample[] samples;
+        private final long seed;
+        private final int start;
+        private final int end;
+
+        SweepTask(PathPlannerTrajectory trajectory, Sample[] samples, long seed, int start, int end) {
+            this.trajectory = trajectory;
+            this.samples = samples;
+            this.seed = seed;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= LEAF_SIZE) {
+                for (int i = start; i < end; i++) {
+                    samples[i] = simulate(trajectory, drawParameters(seed, i));
+                }
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(
+                    new SweepTask(trajectory, samples, seed, start, mid),
+                    new SweepTask(trajectory, samples, seed, mid, end));
+            }
+        }
+    }
+}
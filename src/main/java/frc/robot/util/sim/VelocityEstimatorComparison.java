@@ -0,0 +1,124 @@
+package frc.robot.util.sim;
+
+import static frc.robot.Constants.DriveConstants.ODOMETRY_PERIOD_S;
+import static frc.robot.Constants.DriveConstants.WHEEL_RADIUS_M;
+import static frc.robot.Constants.DriveConstants.WHEEL_REVS_PER_ENC_REV;
+
+import java.util.Random;
+
+import frc.robot.util.velocity.VelocityEstimator;
+import frc.robot.util.velocity.VelocityEstimatorType;
+
+/**
+ * Measures each velocity estimator's lag and noise on a simulated drive encoder, so they can be
+ * compared before one goes on the robot.
+ *
+ * The encoder is a NEO as a Spark MAX reports it: position quantized to the hall sensor's counts,
+ * one frame per odometry period, stamped when the roboRIO receives it after a varying delay. The
+ * wheel sits still, accelerates steadily to cruise speed, then cruises. Lag is the average error
+ * while accelerating divided by the acceleration; bias and noise are the average error and the
+ * standard deviation while cruising.
+ */
+public class VelocityEstimatorComparison {
+    private static final double COUNTS_PER_REV = 42;
+    private static final double MIN_LATENCY_S = 0.0002;
+    private static final double MAX_LATENCY_S = 0.0012;
+
+    private static final double WHEEL_METERS_PER_MOTOR_REV = 2 * Math.PI * WHEEL_RADIUS_M * WHEEL_REVS_PER_ENC_REV;
+    private static final double ACCEL_START_S = 0.5;
+    private static final double ACCEL_MPS2 = 8;
+    private static final double CRUISE_MPS = 4;
+    private static final double CRUISE_START_S = ACCEL_START_S + CRUISE_MPS / ACCEL_MPS2;
+    private static final double END_S = CRUISE_START_S + 1.5;
+    // Left out of the averages, so each estimator's window has filled with the new motion
+    private static final double SETTLE_S = 0.1;
+
+    public static class Result {
+        public final double lag_s;
+        public final double bias_mps;
+        public final double noise_mps;
+
+        public Result(double lag_s, double bias_mps, double noise_mps) {
+            this.lag_s = lag_s;
+            this.bias_mps = bias_mps;
+            this.noise_mps = noise_mps;
+        }
+    }
+
+    private static double trueVelocity_mps(double t) {
+        if (t < ACCEL_START_S) {
+            return 0;
+        }
+        return t < CRUISE_START_S ? ACCEL_MPS2 * (t - ACCEL_START_S) : CRUISE_MPS;
+    }
+
+    private static double truePosition_m(double t) {
+        if (t < ACCEL_START_S) {
+            return 0;
+        }
+        if (t < CRUISE_START_S) {
+            return 0.5 * ACCEL_MPS2 * (t - ACCEL_START_S) * (t - ACCEL_START_S);
+        }
+        double accelTime = CRUISE_START_S - ACCEL_START_S;
+        return 0.5 * ACCEL_MPS2 * accelTime * accelTime + CRUISE_MPS * (t - CRUISE_START_S);
+    }
+
+    /**
+     * Runs one estimator through the profile.
+     * @param seed seeds the frame timing jitter and where the encoder starts between counts
+     */
+    public static Result measure(VelocityEstimator estimator, long seed) {
+        Random random = new Random(seed);
+        double countOffset = random.nextDouble();
+        double sumLagError = 0;
+        int lagCount = 0;
+        double sumCruise = 0;
+        double sumSquaredCruise = 0;
+        int cruiseCount = 0;
+
+        for (int frame = 0; frame * ODOMETRY_PERIOD_S < END_S; frame++) {
+            double t = frame * ODOMETRY_PERIOD_S;
+            double motorRevs = truePosition_m(t) / WHEEL_METERS_PER_MOTOR_REV;
+            double reported = Math.floor(motorRevs * COUNTS_PER_REV + countOffset) / COUNTS_PER_REV;
+            double stamp = t + MIN_LATENCY_S + random.nextDouble() * (MAX_LATENCY_S - MIN_LATENCY_S);
+            double estimate_mps = estimator.update(stamp, reported) * WHEEL_METERS_PER_MOTOR_REV;
+
+            if (t > ACCEL_START_S + SETTLE_S && t < CRUISE_START_S) {
+                sumLagError += trueVelocity_mps(t) - estimate_mps;
+                lagCount++;
+            } else if (t > CRUISE_START_S + SETTLE_S) {
+                sumCruise += estimate_mps;
+                sumSquaredCruise += estimate_mps * estimate_mps;
+                cruiseCount++;
+            }
+        }
+        double meanCruise = sumCruise / cruiseCount;
+        return new Result(
+            sumLagError / lagCount / ACCEL_MPS2,
+            meanCruise - CRUISE_MPS,
+            Math.sqrt(Math.max(sumSquaredCruise / cruiseCount - meanCruise * meanCruise, 0)));
+    }
+
+    /**
+     * Prints each estimator's lag and noise with its DriveConstants tuning, averaged over several
+     * runs.
+     * @param args number of runs (defaults to 20)
+     */
+    public static void main(String... args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        System.out.printf("%-16s %10s %12s %12s%n", "Estimator", "Lag (ms)", "Bias (m/s)", "Noise (m/s)");
+        for (VelocityEstimatorType type : VelocityEstimatorType.values()) {
+            double sumLag = 0;
+            double sumBias = 0;
+            double sumNoise = 0;
+            for (int seed = 0; seed < runs; seed++) {
+                Result result = measure(type.create(), seed);
+                sumLag += result.lag_s;
+                sumBias += result.bias_mps;
+                sumNoise += result.noise_mps;
+            }
+            System.out.printf("%-16s %10.1f %12.4f %12.4f%n",
+                type, sumLag / runs * 1000, sumBias / runs, sumNoise / runs);
+        }
+    }
+}
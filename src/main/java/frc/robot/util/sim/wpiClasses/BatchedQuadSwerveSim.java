@@ -0,0 +1,469 @@
+package frc.robot.util.sim.wpiClasses;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.system.plant.DCMotor;
+
+/**
+ * Many independent swerve robots stepped together, with the same physics as QuadSwerveSim's
+ * TRAPEZOIDAL integrator (SwerveModuleSim, SimpleMotorWithMassModel and MotorGearboxWheelSim folded in).
+ *
+ * State is held structure-of-arrays: one double[] column per quantity, indexed by robot for
+ * robot-level state and by {@code robot * NUM_MODULES + module} for module-level state. A step
+ * is a handful of flat loops over those columns, each doing one stage of the model for every
+ * robot, rather than a walk over a graph of small objects per robot. The pure arithmetic stages
+ * are straight-line code with no branches, so the JIT is free to unroll and vectorize them;
+ * the stages that need sin/cos/exp are kept separate so they don't hold the others back.
+ *
+ * All robots share geometry and motors. Tread friction, azimuth MOI, mass and MOI can differ
+ * per robot, for parameter sweeps.
+ */
+public class BatchedQuadSwerveSim {
+    static public final int NUM_MODULES = QuadSwerveSim.NUM_MODULES;
+
+    // Matches SwerveModuleSim
+    private static final double WHEEL_GEARBOX_LOSS_FACTOR = 0.01;
+    private static final double STICK_SPEED_MPS = 0.001;
+    // Motors run from QuadSwerveSim's steady supply; there is no battery model here
+    private static final double SUPPLY_VOLTAGE = 12.0;
+
+    private final int numRobots;
+    private final int numModules;
+
+    // Shared geometry and drivetrain constants
+    private final double[] robotToModuleX = new double[NUM_MODULES];
+    private final double[] robotToModuleY = new double[NUM_MODULES];
+    private final double wheelRadius_m;
+    private final double azimuthEncGearRatio;
+    private final double wheelEncGearRatio;
+    // Wheel ground force is linear in voltage and ground speed: F = forcePerVolt * V + forcePerSpeed * v
+    private final double wheelForcePerVolt;
+    private final double wheelForcePerSpeed;
+    // Azimuth plant coefficients, before dividing by each robot's azimuth MOI
+    private final double azmthAccelPerSpeedTimesMOI;
+    private final double azmthAccelPerVoltTimesMOI;
+
+    // Per-robot parameters
+    private final double[] robotMass_kg;
+    private final double[] robotMOI;
+    private final double[] treadStaticFricForce;
+    private final double[] treadKineticFricForce;
+    private final double[] azmthAccelPerSpeed;
+    private final double[] azmthAccelPerVolt;
+    // Azimuth plant discretized at lastDt_s, as in SimpleMotorWithMassModel:
+    //   speed' = azmthSpeedDecay * speed + azmthSpeedPerVolt * V
+    //   displacement (rad) = azmthDispPerSpeed * speed + azmthDispPerVolt * V
+    private final double[] azmthSpeedDecay;
+    private final double[] azmthSpeedPerVolt;
+    private final double[] azmthDispPerSpeed;
+    private final double[] azmthDispPerVolt;
+    private double lastDt_s = Double.NaN;
+
+    // Per-robot state, field frame. Heading is a normalized cos/sin pair, as in QuadSwerveSim.
+    private final double[] poseX;
+    private final double[] poseY;
+    private final double[] poseCos;
+    private final double[] poseSin;
+    private final double[] velPrevX;
+    private final double[] velPrevY;
+    private final double[] accelPrevX;
+    private final double[] accelPrevY;
+    private final double[] rotVelPrev;
+    private final double[] rotAccelPrev;
+    // Net wheel motive force per robot in the robot frame, before friction
+    private final double[] preFricForceX;
+    private final double[] preFricForceY;
+
+    // Per-module state
+    private final double[] wheelVoltage;
+    private final double[] azmthVoltage;
+    private final double[] moduleX;
+    private final double[] moduleY;
+    private final double[] relVelX;
+    private final double[] relVelY;
+    private final double[] azmthPosition_Rev;
+    private final double[] azmthSpeed_RadPerSec;
+    private final double[] azmthCos;
+    private final double[] azmthSin;
+    private final double[] wheelRotation_rad;
+    private final double[] wheelRate_RadPerSec;
+    private final double[] wheelMotiveForce;
+    private final double[] crossTreadFricForce;
+
+    /**
+     * Creates numRobots robots with the same parameters, all at the origin.
+     * Parameters are as for QuadSwerveSim and SwerveModuleSim; the normal force on each module is a quarter of the robot's weight.
+     */
+    public BatchedQuadSwerveSim(
+        int numRobots,
+        double wheelBaseWidth_m,
+        double wheelBaseLength_m,
+        DCMotor azimuthMotor,
+        DCMotor wheelMotor,
+        double wheelRadius_m,
+        double azimuthGearRatio,
+        double wheelGearRatio,
+        double azimuthEncGearRatio,
+        double wheelEncGearRatio,
+        double treadStaticCoefFric,
+        double treadKineticCoefFric,
+        double azimuthEffectiveMOI,
+        double robotMass_kg,
+        double robotMOI
+    ){
+        this.numRobots = numRobots;
+        this.numModules = numRobots * NUM_MODULES;
+
+        // Same module layout as QuadSwerveSim
+        double[] signX = { 1,  1, -1, -1};
+        double[] signY = { 1, -1,  1, -1};
+        for(int m = 0; m < NUM_MODULES; m++){
+            robotToModuleX[m] = signX[m] * wheelBaseWidth_m/2;
+            robotToModuleY[m] = signY[m] * wheelBaseLength_m/2;
+        }
+
+        this.wheelRadius_m = wheelRadius_m;
+        this.azimuthEncGearRatio = azimuthEncGearRatio;
+        this.wheelEncGearRatio = wheelEncGearRatio;
+
+        // MotorGearboxWheelSim.calcGroundForce_N, expanded into its linear form
+        wheelForcePerVolt = wheelMotor.KtNMPerAmp / wheelMotor.rOhms * wheelGearRatio / wheelRadius_m / 2;
+        wheelForcePerSpeed = -(wheelMotor.KtNMPerAmp / (wheelMotor.KvRadPerSecPerVolt * wheelMotor.rOhms) * wheelGearRatio
+                                + WHEEL_GEARBOX_LOSS_FACTOR)
+                             * wheelGearRatio / wheelRadius_m / wheelRadius_m / 2;
+
+        // SimpleMotorWithMassModel's flywheel plant
+        azmthAccelPerSpeedTimesMOI = -azimuthGearRatio * azimuthGearRatio * azimuthMotor.KtNMPerAmp
+                                     / (azimuthMotor.KvRadPerSecPerVolt * azimuthMotor.rOhms);
+        azmthAccelPerVoltTimesMOI = azimuthGearRatio * azimuthMotor.KtNMPerAmp / azimuthMotor.rOhms;
+
+        this.robotMass_kg = new double[numRobots];
+        this.robotMOI = new double[numRobots];
+        treadStaticFricForce = new double[numRobots];
+        treadKineticFricForce = new double[numRobots];
+        azmthAccelPerSpeed = new double[numRobots];
+        azmthAccelPerVolt = new double[numRobots];
+        azmthSpeedDecay = new double[numRobots];
+        azmthSpeedPerVolt = new double[numRobots];
+        azmthDispPerSpeed = new double[numRobots];
+        azmthDispPerVolt = new double[numRobots];
+
+        poseX = new double[numRobots];
+        poseY = new double[numRobots];
+        poseCos = new double[numRobots];
+        poseSin = new double[numRobots];
+        velPrevX = new double[numRobots];
+        velPrevY = new double[numRobots];
+        accelPrevX = new double[numRobots];
+        accelPrevY = new double[numRobots];
+        rotVelPrev = new double[numRobots];
+        rotAccelPrev = new double[numRobots];
+        preFricForceX = new double[numRobots];
+        preFricForceY = new double[numRobots];
+
+        wheelVoltage = new double[numModules];
+        azmthVoltage = new double[numModules];
+        moduleX = new double[numModules];
+        moduleY = new double[numModules];
+        relVelX = new double[numModules];
+        relVelY = new double[numModules];
+        azmthPosition_Rev = new double[numModules];
+        azmthSpeed_RadPerSec = new double[numModules];
+        azmthCos = new double[numModules];
+        azmthSin = new double[numModules];
+        wheelRotation_rad = new double[numModules];
+        wheelRate_RadPerSec = new double[numModules];
+        wheelMotiveForce = new double[numModules];
+        crossTreadFricForce = new double[numModules];
+
+        for(int r = 0; r < numRobots; r++){
+            setRobotParameters(r, treadStaticCoefFric, treadKineticCoefFric, azimuthEffectiveMOI, robotMass_kg, robotMOI);
+            modelReset(r, 0, 0, 0);
+        }
+    }
+
+    public int getNumRobots(){
+        return numRobots;
+    }
+
+    /**
+     * Sets one robot's physical parameters.
+     * @param robot robot index
+     * @param treadStaticCoefFric static coefficient of friction between tread and carpet
+     * @param treadKineticCoefFric kinetic coefficient of friction between tread and carpet
+     * @param azimuthEffectiveMOI effective moment of inertia of each module about its steering axis
+     * @param robotMass_kg robot mass, which also sets the normal force on each module
+     * @param robotMOI robot moment of inertia about its center
+     */
+    public void setRobotParameters(int robot, double treadStaticCoefFric, double treadKineticCoefFric,
+                                   double azimuthEffectiveMOI, double robotMass_kg, double robotMOI){
+        double moduleNormalForce = robotMass_kg * 9.81 / NUM_MODULES;
+        this.robotMass_kg[robot] = robotMass_kg;
+        this.robotMOI[robot] = robotMOI;
+        treadStaticFricForce[robot] = treadStaticCoefFric * moduleNormalForce;
+        treadKineticFricForce[robot] = treadKineticCoefFric * moduleNormalForce;
+        azmthAccelPerSpeed[robot] = azmthAccelPerSpeedTimesMOI / azimuthEffectiveMOI;
+        azmthAccelPerVolt[robot] = azmthAccelPerVoltTimesMOI / azimuthEffectiveMOI;
+        discretizeAzimuth(robot, lastDt_s);
+    }
+
+    /**
+     * Puts one robot at rest at the given pose. As with QuadSwerveSim.modelReset, wheel and azimuth
+     * encoders keep counting from where they were.
+     */
+    public void modelReset(int robot, double x_m, double y_m, double heading_rad){
+        poseX[robot] = x_m;
+        poseY[robot] = y_m;
+        poseCos[robot] = Math.cos(heading_rad);
+        poseSin[robot] = Math.sin(heading_rad);
+        velPrevX[robot] = 0;
+        velPrevY[robot] = 0;
+        accelPrevX[robot] = 0;
+        accelPrevY[robot] = 0;
+        rotVelPrev[robot] = 0;
+        rotAccelPrev[robot] = 0;
+        for(int i = robot * NUM_MODULES; i < (robot + 1) * NUM_MODULES; i++){
+            int m = i & (NUM_MODULES - 1);
+            moduleX[i] = x_m + robotToModuleX[m] * poseCos[robot] - robotToModuleY[m] * poseSin[robot];
+            moduleY[i] = y_m + robotToModuleX[m] * poseSin[robot] + robotToModuleY[m] * poseCos[robot];
+            azmthCos[i] = 1;
+            azmthSin[i] = 0;
+        }
+    }
+
+    public void modelReset(int robot, Pose2d pose){
+        modelReset(robot, pose.getX(), pose.getY(), pose.getRotation().getRadians());
+    }
+
+    public void setInputVoltages(int robot, int module, double wheelVoltage, double azmthVoltage){
+        int i = robot * NUM_MODULES + module;
+        this.wheelVoltage[i] = wheelVoltage;
+        this.azmthVoltage[i] = azmthVoltage;
+    }
+
+    /**
+     * Sets every module's voltages at once.
+     * @param wheelVoltages drive voltages, indexed robot * NUM_MODULES + module
+     * @param azmthVoltages steering voltages, indexed the same way
+     */
+    public void setInputVoltages(double[] wheelVoltages, double[] azmthVoltages){
+        System.arraycopy(wheelVoltages, 0, wheelVoltage, 0, numModules);
+        System.arraycopy(azmthVoltages, 0, azmthVoltage, 0, numModules);
+    }
+
+    /**
+     * Advances every robot by dtSeconds.
+     */
+    public void update(double dtSeconds){
+        if(dtSeconds != lastDt_s){
+            lastDt_s = dtSeconds;
+            for(int r = 0; r < numRobots; r++){
+                discretizeAzimuth(r, dtSeconds);
+            }
+        }
+
+        updateModuleMotion(dtSeconds);
+        updateAzimuths(dtSeconds);
+        sumMotiveForces();
+        updateCrossTreadFriction();
+        updateRobotMotion(dtSeconds);
+    }
+
+    private void discretizeAzimuth(int robot, double dtSeconds){
+        // Exact discretization of the first-order plant, as SimpleMotorWithMassModel does
+        double a = azmthAccelPerSpeed[robot];
+        double expm1 = Math.expm1(a * dtSeconds);
+        azmthSpeedDecay[robot] = expm1 + 1;
+        azmthSpeedPerVolt[robot] = expm1 / a * azmthAccelPerVolt[robot];
+        azmthDispPerSpeed[robot] = expm1 / a;
+        azmthDispPerVolt[robot] = -azmthAccelPerVolt[robot] / a * (dtSeconds - expm1 / a);
+    }
+
+    /**
+     * Contact patch velocity from how far each module moved since the last step, then the wheel's
+     * ground force and rotation from its along-tread part.
+     */
+    private void updateModuleMotion(double dtSeconds){
+        double invDt = 1.0 / dtSeconds;
+        for(int i = 0; i < numModules; i++){
+            int r = i / NUM_MODULES;
+            int m = i & (NUM_MODULES - 1);
+            double cos = poseCos[r];
+            double sin = poseSin[r];
+            double x = poseX[r] + robotToModuleX[m] * cos - robotToModuleY[m] * sin;
+            double y = poseY[r] + robotToModuleX[m] * sin + robotToModuleY[m] * cos;
+            double xVel = (x - moduleX[i]) * invDt;
+            double yVel = (y - moduleY[i]) * invDt;
+            moduleX[i] = x;
+            moduleY[i] = y;
+
+            double vx =  xVel * cos + yVel * sin;
+            double vy = -xVel * sin + yVel * cos;
+            relVelX[i] = vx;
+            relVelY[i] = vy;
+
+            // Assume the wheel does not lose traction along its wheel direction (on-tread)
+            double velocityAlongAzimuth = vx * azmthCos[i] + vy * azmthSin[i];
+            double volts = Math.max(-SUPPLY_VOLTAGE, Math.min(SUPPLY_VOLTAGE, wheelVoltage[i]));
+            wheelMotiveForce[i] = wheelForcePerVolt * volts + wheelForcePerSpeed * velocityAlongAzimuth;
+
+            double wheelRate = velocityAlongAzimuth / wheelRadius_m;
+            wheelRotation_rad[i] += (wheelRate + wheelRate_RadPerSec[i]) / 2 * dtSeconds; //Trapezoidal integration
+            wheelRate_RadPerSec[i] = wheelRate;
+        }
+    }
+
+    private void updateAzimuths(double dtSeconds){
+        for(int i = 0; i < numModules; i++){
+            int r = i / NUM_MODULES;
+            double volts = Math.max(-SUPPLY_VOLTAGE, Math.min(SUPPLY_VOLTAGE, azmthVoltage[i]));
+            double speed = azmthSpeed_RadPerSec[i];
+            azmthPosition_Rev[i] += (azmthDispPerSpeed[r] * speed + azmthDispPerVolt[r] * volts) / (2 * Math.PI);
+            azmthSpeed_RadPerSec[i] = azmthSpeedDecay[r] * speed + azmthSpeedPerVolt[r] * volts;
+
+            double angle_rad = azmthPosition_Rev[i] * 2 * Math.PI;
+            azmthCos[i] = Math.cos(angle_rad);
+            azmthSin[i] = Math.sin(angle_rad);
+        }
+    }
+
+    private void sumMotiveForces(){
+        for(int r = 0; r < numRobots; r++){
+            double forceX = 0;
+            double forceY = 0;
+            for(int i = r * NUM_MODULES; i < (r + 1) * NUM_MODULES; i++){
+                forceX += wheelMotiveForce[i] * azmthCos[i];
+                forceY += wheelMotiveForce[i] * azmthSin[i];
+            }
+            preFricForceX[r] = forceX;
+            preFricForceY[r] = forceY;
+        }
+    }
+
+    /**
+     * SwerveModuleSim's cross-tread friction, with the robot's motive force shared evenly between its modules.
+     */
+    private void updateCrossTreadFriction(){
+        double perWheelForceFrac = 1.0 / NUM_MODULES;
+        for(int i = 0; i < numModules; i++){
+            int r = i / NUM_MODULES;
+            double crossTreadUnitX = -azmthSin[i];
+            double crossTreadUnitY =  azmthCos[i];
+            double crossTreadVel = relVelX[i] * crossTreadUnitX + relVelY[i] * crossTreadUnitY;
+            double crossTreadForce = (preFricForceX[r] * crossTreadUnitX + preFricForceY[r] * crossTreadUnitY) * perWheelForceFrac;
+
+            boolean kinetic = Math.abs(crossTreadForce) > treadStaticFricForce[r] || Math.abs(crossTreadVel) > STICK_SPEED_MPS;
+            crossTreadFricForce[i] = kinetic
+                ? -Math.signum(crossTreadVel) * treadKineticFricForce[r]
+                : -crossTreadForce;
+        }
+    }
+
+    private void updateRobotMotion(double dtSeconds){
+        for(int r = 0; r < numRobots; r++){
+            double forceX = preFricForceX[r];
+            double forceY = preFricForceY[r];
+            double netTorque = 0;
+            for(int i = r * NUM_MODULES; i < (r + 1) * NUM_MODULES; i++){
+                int m = i & (NUM_MODULES - 1);
+                double fricX = -azmthSin[i] * crossTreadFricForce[i];
+                double fricY =  azmthCos[i] * crossTreadFricForce[i];
+                forceX += fricX;
+                forceY += fricY;
+                netTorque += robotToModuleX[m] * (wheelMotiveForce[i] * azmthSin[i] + fricY)
+                           - robotToModuleY[m] * (wheelMotiveForce[i] * azmthCos[i] + fricX);
+            }
+
+            double cos = poseCos[r];
+            double sin = poseSin[r];
+
+            //a = F/m in field frame
+            double accelX = (forceX * cos - forceY * sin) / robotMass_kg[r];
+            double accelY = (forceX * sin + forceY * cos) / robotMass_kg[r];
+
+            double velocityX = velPrevX[r] + (accelX + accelPrevX[r])/2 * dtSeconds; //Trapezoidal integration
+            double velocityY = velPrevY[r] + (accelY + accelPrevY[r])/2 * dtSeconds;
+            double posChangeX = (velocityX + velPrevX[r])/2 * dtSeconds;
+            double posChangeY = (velocityY + velPrevY[r])/2 * dtSeconds;
+            velPrevX[r] = velocityX;
+            velPrevY[r] = velocityY;
+            accelPrevX[r] = accelX;
+            accelPrevY[r] = accelY;
+
+            double rotAccel = netTorque / robotMOI[r];
+            double rotVel = rotVelPrev[r] + (rotAccel + rotAccelPrev[r])/2 * dtSeconds;
+            double rotPosChange = (rotVel + rotVelPrev[r])/2 * dtSeconds;
+            rotVelPrev[r] = rotVel;
+            rotAccelPrev[r] = rotAccel;
+
+            //Twist needs to be relative to robot reference frame
+            double twistX =  posChangeX * cos + posChangeY * sin;
+            double twistY = -posChangeX * sin + posChangeY * cos;
+            applyTwist(r, twistX, twistY, rotPosChange);
+        }
+    }
+
+    /**
+     * Same as QuadSwerveSim.applyTwist, for one robot.
+     */
+    private void applyTwist(int r, double dx, double dy, double dtheta){
+        double sinTheta = Math.sin(dtheta);
+        double cosTheta = Math.cos(dtheta);
+
+        double s;
+        double c;
+        if (Math.abs(dtheta) < 1E-9) {
+            s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+            c = 0.5 * dtheta;
+        } else {
+            s = sinTheta / dtheta;
+            c = (1 - cosTheta) / dtheta;
+        }
+
+        double transX = dx * s - dy * c;
+        double transY = dx * c + dy * s;
+
+        double cos = poseCos[r];
+        double sin = poseSin[r];
+        poseX[r] += transX * cos - transY * sin;
+        poseY[r] += transX * sin + transY * cos;
+
+        double newCos = cosTheta * cos - sinTheta * sin;
+        double newSin = cosTheta * sin + sinTheta * cos;
+        double mag = Math.hypot(newCos, newSin);
+        poseCos[r] = newCos / mag;
+        poseSin[r] = newSin / mag;
+    }
+
+    public double getPoseX(int robot){
+        return poseX[robot];
+    }
+
+    public double getPoseY(int robot){
+        return poseY[robot];
+    }
+
+    public double getHeading_rad(int robot){
+        return Math.atan2(poseSin[robot], poseCos[robot]);
+    }
+
+    /**
+     * Allocates; prefer the primitive getters in hot loops.
+     */
+    public Pose2d getCurPose(int robot){
+        return new Pose2d(poseX[robot], poseY[robot], new Rotation2d(poseCos[robot], poseSin[robot]));
+    }
+
+    public double getAzimuthEncoderPositionRev(int robot, int module){
+        return azmthPosition_Rev[robot * NUM_MODULES + module] * azimuthEncGearRatio;
+    }
+
+    public double getWheelEncoderPositionRev(int robot, int module){
+        return wheelRotation_rad[robot * NUM_MODULES + module] / 2 / Math.PI * wheelEncGearRatio;
+    }
+
+    public double getWheelEncoderVelocityRevPerSec(int robot, int module){
+        return wheelRate_RadPerSec[robot * NUM_MODULES + module] / 2 / Math.PI * wheelEncGearRatio;
+    }
+
+}
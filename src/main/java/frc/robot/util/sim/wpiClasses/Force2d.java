@@ -7,8 +7,14 @@ import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N2;
 
+/**
+ * A 2d force vector. Components are held as plain doubles so the physics core can
+ * do its arithmetic without going through EJML; the Matrix constructor remains for
+ * compatibility with callers that still build forces from state-space math.
+ */
 public class Force2d {
-  Matrix<N2, N1> m;
+  double x;
+  double y;
 
   /**
    * Constructs a Force2d with X and Y components equal to zero.
@@ -25,9 +31,8 @@ public class Force2d {
    * @param y The y component of the force.
    */
   public Force2d( double x, double y) {
-    m = new Matrix<>(new SimpleMatrix(2, 1));
-    m.set(0, 0, x);
-    m.set(1, 0, y);
+    this.x = x;
+    this.y = y;
   }
 
   /**
@@ -47,7 +52,7 @@ public class Force2d {
    * @param m_in 2 row, 1 column input matrix
    */
   public Force2d(Matrix<N2, N1> m_in) {
-    m = m_in;
+    this(m_in.get(0, 0), m_in.get(1, 0));
   }
   
   /**
@@ -66,7 +71,7 @@ public class Force2d {
    */
 
   public double getX() {
-    return m.get(0, 0);
+    return x;
   }
 
   /**
@@ -76,7 +81,7 @@ public class Force2d {
    */
 
   public double getY() {
-    return m.get(1, 0);
+    return y;
   }
 
   /**
@@ -85,7 +90,7 @@ public class Force2d {
    * @return The norm of the force.
    */
   public double getNorm() {
-    return m.normF();
+    return Math.hypot(x, y);
   }
 
   /**
@@ -93,7 +98,8 @@ public class Force2d {
    * @return a unit vector in the directino this force points
    */
   public Vector2d getUnitVector() {
-    return new Vector2d(this.getX()/this.getNorm(), this.getY()/this.getNorm());
+    double norm = this.getNorm();
+    return new Vector2d(x/norm, y/norm);
   }
 
   /**
@@ -112,8 +118,8 @@ public class Force2d {
    */
   public Force2d rotateBy(Rotation2d angle) {
     return new Force2d(
-            this.getX() * angle.getCos() - this.getY() * angle.getSin(),
-            this.getX() * angle.getSin() + this.getY() * angle.getCos()
+            x * angle.getCos() - y * angle.getSin(),
+            x * angle.getSin() + y * angle.getCos()
     );
   }
 
@@ -128,7 +134,7 @@ public class Force2d {
    * @return The sum of the forces.
    */
   public Force2d plus(Force2d other) {
-    return new Force2d(this.m.plus(other.m));
+    return new Force2d(x + other.x, y + other.y);
   }
 
   /**
@@ -139,7 +145,8 @@ public class Force2d {
    * @return nothing (acts on this force in-place)
    */
   public void accum(Force2d other) {
-    this.m = this.m.plus(other.m);
+    x += other.x;
+    y += other.y;
   }
 
   /**
@@ -153,7 +160,7 @@ public class Force2d {
    * @return The difference between the two forces.
    */
   public Force2d minus(Force2d other) {
-    return new Force2d(this.m.minus(other.m));
+    return new Force2d(x - other.x, y - other.y);
   }
 
   /**
@@ -164,7 +171,7 @@ public class Force2d {
    * @return The inverse of the current force.
    */
   public Force2d unaryMinus() {
-    return new Force2d(this.m.times(-1.0));
+    return new Force2d(-x, -y);
   }
 
   /**
@@ -176,7 +183,7 @@ public class Force2d {
    * @return The scaled force.
    */
   public Force2d times(double scalar) {
-    return new Force2d(this.m.times(scalar));
+    return new Force2d(x * scalar, y * scalar);
   }
 
   /**
@@ -188,14 +195,24 @@ public class Force2d {
    * @return The reference to the new mutated object.
    */
   public Force2d div(double scalar) {
-    return new Force2d(this.m.div(scalar));
+    return new Force2d(x / scalar, y / scalar);
+  }
+
+  /**
+   * Returns the force as a 2-element column matrix.
+   */
+  public Matrix<N2, N1> getMatrix() {
+    Matrix<N2, N1> m = new Matrix<>(new SimpleMatrix(2, 1));
+    m.set(0, 0, x);
+    m.set(1, 0, y);
+    return m;
   }
 
   /**
    * Creates a Vector2d object from the force this object represents
    */
   public Vector2d getVector2d(){
-    return new Vector2d(this.getX(), this.getY());
+    return new Vector2d(x, y);
   }
 
   @Override
@@ -212,7 +229,8 @@ public class Force2d {
   @Override
   public boolean equals(Object obj) {
     if (obj instanceof Force2d) {
-      return this.m.isEqual(((Force2d)obj).m, 1E-9);
+      return Math.abs(((Force2d)obj).x - x) < 1E-9
+          && Math.abs(((Force2d)obj).y - y) < 1E-9;
     } else {
       return false;
     }
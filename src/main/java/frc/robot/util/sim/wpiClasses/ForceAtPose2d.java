@@ -3,7 +3,6 @@ package frc.robot.util.sim.wpiClasses;
 import java.util.Objects;
 
 import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.geometry.Transform2d;
 
 public class ForceAtPose2d {
   public Force2d force;
@@ -33,19 +32,48 @@ public class ForceAtPose2d {
    * positive is counter-clockwise, negative is clockwise
    */
   public double getTorque(Pose2d centerOfRotation){
-    Transform2d transCORtoF = new Transform2d(centerOfRotation, pos);
-
-    //Align the force to the reference frame of the center of rotation
-    Force2d alignedForce = getForceInRefFrame(centerOfRotation); 
-
-    //Calculate the lever arm the force acts at
-    Vector2d leverArm = new Vector2d(transCORtoF.getX(), transCORtoF.getY());
-    return leverArm.cross(alignedForce.getVector2d());
+    return torque(force.x, force.y, pos.getX(), pos.getY(), pos.getRotation().getCos(), pos.getRotation().getSin(),
+                  centerOfRotation.getX(), centerOfRotation.getY(),
+                  centerOfRotation.getRotation().getCos(), centerOfRotation.getRotation().getSin());
   }
 
   public Force2d getForceInRefFrame(Pose2d refFrame){
-    Transform2d trans = new Transform2d(refFrame, pos);
-    return force.rotateBy(trans.getRotation());
+    // Rotate by (pos rotation - refFrame rotation), expanded to avoid building a Transform2d
+    double cos = pos.getRotation().getCos() * refFrame.getRotation().getCos() + pos.getRotation().getSin() * refFrame.getRotation().getSin();
+    double sin = pos.getRotation().getSin() * refFrame.getRotation().getCos() - pos.getRotation().getCos() * refFrame.getRotation().getSin();
+    return new Force2d(force.x * cos - force.y * sin, force.x * sin + force.y * cos);
+  }
+
+  /**
+   * Primitive form of {@link #getTorque(Pose2d)}, used by the physics core so that
+   * no geometry objects are created per step.
+   * @param fx force x component, in the reference frame of the force's pose
+   * @param fy force y component, in the reference frame of the force's pose
+   * @param px x position the force acts at (field frame)
+   * @param py y position the force acts at (field frame)
+   * @param pCos cosine of the force pose's rotation
+   * @param pSin sine of the force pose's rotation
+   * @param cx x position of the center of rotation (field frame)
+   * @param cy y position of the center of rotation (field frame)
+   * @param cCos cosine of the center of rotation's rotation
+   * @param cSin sine of the center of rotation's rotation
+   * @return torque about the center of rotation, positive counter-clockwise
+   */
+  static double torque(double fx, double fy, double px, double py, double pCos, double pSin,
+                       double cx, double cy, double cCos, double cSin){
+    //Calculate the lever arm the force acts at, in the center of rotation's frame
+    double dx = px - cx;
+    double dy = py - cy;
+    double leverX =  dx * cCos + dy * cSin;
+    double leverY = -dx * cSin + dy * cCos;
+
+    //Align the force to the reference frame of the center of rotation
+    double cos = pCos * cCos + pSin * cSin;
+    double sin = pSin * cCos - pCos * cSin;
+    double alignedX = fx * cos - fy * sin;
+    double alignedY = fx * sin + fy * cos;
+
+    return leverX * alignedY - leverY * alignedX;
   }
 
   @Override
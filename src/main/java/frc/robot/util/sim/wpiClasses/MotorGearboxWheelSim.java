@@ -1,5 +1,7 @@
 package frc.robot.util.sim.wpiClasses;
 
+import java.nio.ByteBuffer;
+
 import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.util.Units;
 
@@ -9,6 +11,7 @@ class MotorGearboxWheelSim {
     double gearRatio;
     double wheelRadius_m;
     double curGroundForce_N;
+    double curMotorCurrent_A;
     double wheelRotations_rad;
     double gearboxFricCoef_NmPerRadPerSec;
     double prevWheelRotationalSpeed_radPerSec;
@@ -37,19 +40,62 @@ class MotorGearboxWheelSim {
         double wheelRotationalSpeed_radPerSec = groundVelocity_mps / wheelRadius_m;
         double motorRotationalSpeed_radPerSec = wheelRotationalSpeed_radPerSec * gearRatio;
 
+        curGroundForce_N = calcGroundForce_N(groundVelocity_mps, motorVoltage);
+        curMotorCurrent_A = motor.getCurrent(motorRotationalSpeed_radPerSec, motorVoltage);
+
+        wheelRotations_rad += (wheelRotationalSpeed_radPerSec + prevWheelRotationalSpeed_radPerSec)/2 * dtSeconds; //Trapezoidal integration
+
+        prevWheelRotationalSpeed_radPerSec = wheelRotationalSpeed_radPerSec;
+
+        wheelSpeed_RPM = Units.radiansPerSecondToRotationsPerMinute(wheelRotationalSpeed_radPerSec);
+        motorSpeed_RPM = Units.radiansPerSecondToRotationsPerMinute(motorRotationalSpeed_radPerSec);
+    }
+
+    /**
+     * Ground force for a given ground speed and voltage, without touching any state.
+     */
+    public double calcGroundForce_N(double groundVelocity_mps, double motorVoltage){
+        double motorRotationalSpeed_radPerSec = groundVelocity_mps / wheelRadius_m * gearRatio;
+
         double motorTorque_Nm = motor.KtNMPerAmp * motor.getCurrent(motorRotationalSpeed_radPerSec, motorVoltage);
 
         double gearboxFrictionalTorque_Nm = motorRotationalSpeed_radPerSec * gearboxFricCoef_NmPerRadPerSec;
         double curWheelTorque_Nm = motorTorque_Nm * gearRatio  - gearboxFrictionalTorque_Nm; //div by 1/torque ratio 
         
-        curGroundForce_N = curWheelTorque_Nm / wheelRadius_m / 2;
-
-        wheelRotations_rad += (wheelRotationalSpeed_radPerSec + prevWheelRotationalSpeed_radPerSec)/2 * dtSeconds; //Trapezoidal integration
+        return curWheelTorque_Nm / wheelRadius_m / 2;
+    }
 
+    /**
+     * Overwrites the wheel state with one computed by an external integrator.
+     */
+    public void setState(double wheelRotations_rad, double groundVelocity_mps, double motorVoltage){
+        double wheelRotationalSpeed_radPerSec = groundVelocity_mps / wheelRadius_m;
+        this.wheelRotations_rad = wheelRotations_rad;
         prevWheelRotationalSpeed_radPerSec = wheelRotationalSpeed_radPerSec;
-
+        curGroundForce_N = calcGroundForce_N(groundVelocity_mps, motorVoltage);
+        curMotorCurrent_A = motor.getCurrent(wheelRotationalSpeed_radPerSec * gearRatio, motorVoltage);
         wheelSpeed_RPM = Units.radiansPerSecondToRotationsPerMinute(wheelRotationalSpeed_radPerSec);
-        motorSpeed_RPM = Units.radiansPerSecondToRotationsPerMinute(motorRotationalSpeed_radPerSec);
+        motorSpeed_RPM = Units.radiansPerSecondToRotationsPerMinute(wheelRotationalSpeed_radPerSec * gearRatio);
+    }
+
+    static final int STATE_BYTES = 6 * Double.BYTES;
+
+    void saveState(ByteBuffer buf){
+        buf.putDouble(wheelRotations_rad);
+        buf.putDouble(prevWheelRotationalSpeed_radPerSec);
+        buf.putDouble(curGroundForce_N);
+        buf.putDouble(curMotorCurrent_A);
+        buf.putDouble(wheelSpeed_RPM);
+        buf.putDouble(motorSpeed_RPM);
+    }
+
+    void restoreState(ByteBuffer buf){
+        wheelRotations_rad = buf.getDouble();
+        prevWheelRotationalSpeed_radPerSec = buf.getDouble();
+        curGroundForce_N = buf.getDouble();
+        curMotorCurrent_A = buf.getDouble();
+        wheelSpeed_RPM = buf.getDouble();
+        motorSpeed_RPM = buf.getDouble();
     }
 
     public double getPosition_Rev(){
@@ -60,6 +106,13 @@ class MotorGearboxWheelSim {
         return wheelSpeed_RPM / 60.0;
     }
 
+    /**
+     * @return the present motor current, signed with the motor's torque
+     */
+    public double getMotorCurrent_A(){
+        return curMotorCurrent_A;
+    }
+
     public double getGroundForce_N(){
         return curGroundForce_N;
     }
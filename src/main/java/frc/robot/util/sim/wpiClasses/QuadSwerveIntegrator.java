@@ -0,0 +1,495 @@
+package frc.robot.util.sim.wpiClasses;
+
+/**
+ * Runge-Kutta integration of the QuadSwerveSim model in continuous time.
+ *
+ * The trapezoidal scheme in QuadSwerveSim finite-differences module velocities between fixed steps,
+ * so it can only run at a fixed small step. Here module velocities come straight from the rigid body
+ * state, so the forces can be evaluated at any point inside a step. A few other things make long steps
+ * possible:
+ * <ul>
+ * <li>The azimuth motors don't push back on the robot (idealized azimuth control), and their voltage is
+ * constant over a call, so their exact solution is used rather than integrating them. They are the
+ * stiffest part of the model and would otherwise cap the step at a few ms.</li>
+ * <li>Each module's friction regime (static, or kinetic in either direction) is held fixed through the
+ * stages of a step. When it changes by the end of a step, the adaptive integrator shortens the step to
+ * end where the switch happens, so no step straddles the discontinuity.</li>
+ * <li>A sticking tread produces whatever cross-tread force keeps it from sliding, up to the static
+ * friction limit. The trapezoidal scheme only gets that on average, by chattering in and out of the
+ * static band every few steps; here it is solved for directly, which keeps forces smooth.</li>
+ * </ul>
+ */
+final class QuadSwerveIntegrator {
+    private static final int NUM_MODULES = QuadSwerveSim.NUM_MODULES;
+
+    // State vector layout: robot pose and velocity in the field frame, then each wheel's rotation.
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int THETA = 2;
+    private static final int VX = 3;
+    private static final int VY = 4;
+    private static final int OMEGA = 5;
+    private static final int WHEEL_ROT = 6;
+    private static final int NUM_STATES = WHEEL_ROT + NUM_MODULES;
+
+    // Cross-tread slip speed below which a tread can stick, matching SwerveModuleSim
+    private static final double STICK_SPEED_MPS = 0.001;
+    private static final int STICK_SOLVER_ITERATIONS = 8;
+    // Tries at pinning a friction regime switch to within the minimum step before settling
+    private static final int MAX_SWITCH_LOCATE_TRIES = 4;
+
+    // Dormand-Prince 5(4) tableau
+    private static final double C2 = 1.0/5, C3 = 3.0/10, C4 = 4.0/5, C5 = 8.0/9;
+    private static final double A21 = 1.0/5;
+    private static final double A31 = 3.0/40, A32 = 9.0/40;
+    private static final double A41 = 44.0/45, A42 = -56.0/15, A43 = 32.0/9;
+    private static final double A51 = 19372.0/6561, A52 = -25360.0/2187, A53 = 64448.0/6561, A54 = -212.0/729;
+    private static final double A61 = 9017.0/3168, A62 = -355.0/33, A63 = 46732.0/5247, A64 = 49.0/176, A65 = -5103.0/18656;
+    private static final double B1 = 35.0/384, B3 = 500.0/1113, B4 = 125.0/192, B5 = -2187.0/6784, B6 = 11.0/84;
+    // Difference between the 5th order and embedded 4th order weights
+    private static final double E1 = 71.0/57600, E3 = -71.0/16695, E4 = 71.0/1920, E5 = -17253.0/339200, E6 = 22.0/525, E7 = -1.0/40;
+
+    private final QuadSwerveSim sim;
+    private final SwerveModuleSim[] modules;
+
+    private double absTolerance = 1e-5;
+    private double relTolerance = 1e-5;
+    private double minStep_s = 5e-5;
+    private double maxStep_s = 0.02;
+    // Adaptive step size carried between calls, so each call starts from what worked last time
+    private double adaptiveStep_s = 0.001;
+
+    // Integrator scratch, preallocated so stepping allocates nothing
+    private final double[] state = new double[NUM_STATES];
+    private final double[] stageState = new double[NUM_STATES];
+    private final double[] nextState = new double[NUM_STATES];
+    private final double[] k1 = new double[NUM_STATES];
+    private final double[] k2 = new double[NUM_STATES];
+    private final double[] k3 = new double[NUM_STATES];
+    private final double[] k4 = new double[NUM_STATES];
+    private final double[] k5 = new double[NUM_STATES];
+    private final double[] k6 = new double[NUM_STATES];
+    private final double[] k7 = new double[NUM_STATES];
+
+    // Azimuth state at the start of the call, which the exact solution is taken from
+    private final double[] azmthStartAngle = new double[NUM_MODULES];
+    private final double[] azmthStartSpeed = new double[NUM_MODULES];
+
+    // Per-module intermediate results of the most recent derivative evaluation
+    private final double[] evalAzmthAngle = new double[NUM_MODULES];
+    private final double[] evalAzmthCos = new double[NUM_MODULES];
+    private final double[] evalAzmthSin = new double[NUM_MODULES];
+    private final double[] evalVelAlongAzmth = new double[NUM_MODULES];
+    private final double[] evalGroundForce = new double[NUM_MODULES];
+    private final double[] evalCrossTreadVel = new double[NUM_MODULES];
+    private final double[] evalCrossTreadForce = new double[NUM_MODULES];
+    private final double[] evalCrossTreadFric = new double[NUM_MODULES];
+    // Torque on the robot per newton of cross-tread force at each module
+    private final double[] evalCrossTreadLever = new double[NUM_MODULES];
+    // Friction regime each module would naturally be in at the evaluated state
+    private final int[] evalFricRegime = new int[NUM_MODULES];
+
+    // Friction regimes held fixed through the stages of one step
+    private final int[] lockedFricRegime = new int[NUM_MODULES];
+    // Switching quantities at the start of the current step, for locating a regime switch inside it
+    private final double[] stepStartCrossTreadVel = new double[NUM_MODULES];
+    private final double[] stepStartCrossTreadForce = new double[NUM_MODULES];
+
+    private final boolean[] sticking = new boolean[NUM_MODULES];
+    private final double[] stickAccel = new double[NUM_MODULES];
+    private final double[][] stickCoupling = new double[NUM_MODULES][NUM_MODULES];
+
+    QuadSwerveIntegrator(QuadSwerveSim sim){
+        this.sim = sim;
+        this.modules = sim.moduleArr;
+    }
+
+    void setTolerances(double absTolerance, double relTolerance, double minStep_s, double maxStep_s){
+        this.absTolerance = absTolerance;
+        this.relTolerance = relTolerance;
+        this.minStep_s = minStep_s;
+        this.maxStep_s = maxStep_s;
+    }
+
+    /** The step size the next adaptive call starts from, which is the only state carried between calls. */
+    double getAdaptiveStep(){
+        return adaptiveStep_s;
+    }
+
+    void setAdaptiveStep(double adaptiveStep_s){
+        this.adaptiveStep_s = adaptiveStep_s;
+    }
+
+    /**
+     * Classic RK4 over the interval in equal steps of about stepSeconds.
+     * @return the number of steps taken
+     */
+    int integrateFixed(double intervalSeconds, double stepSeconds){
+        int steps = Math.max(1, (int) Math.round(intervalSeconds / stepSeconds));
+        double h = intervalSeconds / steps;
+        loadState();
+        for(int i = 0; i < steps; i++){
+            double t = i * h;
+            derivative(state, t, k1, false);
+            lockFricRegimes();
+            stage(state, h * 0.5, k1, stageState);
+            derivative(stageState, t + h * 0.5, k2, true);
+            stage(state, h * 0.5, k2, stageState);
+            derivative(stageState, t + h * 0.5, k3, true);
+            stage(state, h, k3, stageState);
+            derivative(stageState, t + h, k4, true);
+            for(int j = 0; j < NUM_STATES; j++){
+                state[j] += h / 6.0 * (k1[j] + 2 * k2[j] + 2 * k3[j] + k4[j]);
+            }
+        }
+        derivative(state, intervalSeconds, k1, false);
+        storeState(intervalSeconds);
+        return steps;
+    }
+
+    private static void stage(double[] y, double h, double[] k, double[] out){
+        for(int i = 0; i < NUM_STATES; i++){
+            out[i] = y[i] + h * k[i];
+        }
+    }
+
+    /**
+     * Dormand-Prince 5(4) over the interval, with error-controlled step sizes.
+     * @return the number of accepted steps
+     */
+    int integrateAdaptive(double intervalSeconds){
+        loadState();
+        derivative(state, 0, k1, false);
+        lockFricRegimes();
+
+        double t = 0;
+        int steps = 0;
+        int switchLocateTries = 0;
+        double h = Math.min(Math.max(adaptiveStep_s, minStep_s), maxStep_s);
+        while(t < intervalSeconds){
+            double remaining = intervalSeconds - t;
+            // Stretch a step slightly rather than leave a sliver at the end of the interval
+            boolean lastStep = h >= remaining * 0.99;
+            double step = lastStep ? remaining : h;
+
+            for(int i = 0; i < NUM_STATES; i++){
+                stageState[i] = state[i] + step * A21 * k1[i];
+            }
+            derivative(stageState, t + C2 * step, k2, true);
+            for(int i = 0; i < NUM_STATES; i++){
+                stageState[i] = state[i] + step * (A31 * k1[i] + A32 * k2[i]);
+            }
+            derivative(stageState, t + C3 * step, k3, true);
+            for(int i = 0; i < NUM_STATES; i++){
+                stageState[i] = state[i] + step * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+            }
+            derivative(stageState, t + C4 * step, k4, true);
+            for(int i = 0; i < NUM_STATES; i++){
+                stageState[i] = state[i] + step * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+            }
+            derivative(stageState, t + C5 * step, k5, true);
+            for(int i = 0; i < NUM_STATES; i++){
+                stageState[i] = state[i] + step * (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65 * k5[i]);
+            }
+            derivative(stageState, t + step, k6, true);
+            for(int i = 0; i < NUM_STATES; i++){
+                nextState[i] = state[i] + step * (B1 * k1[i] + B3 * k3[i] + B4 * k4[i] + B5 * k5[i] + B6 * k6[i]);
+            }
+            derivative(nextState, t + step, k7, true);
+
+            // A module ending the step in a different friction regime switched somewhere inside it.
+            // Unless the switch is already within the last minimum step, retry with a step that ends
+            // just past where the switch is estimated to be.
+            boolean regimeSwitched = false;
+            for(int idx = 0; idx < NUM_MODULES; idx++){
+                regimeSwitched |= evalFricRegime[idx] != lockedFricRegime[idx];
+            }
+            if(regimeSwitched){
+                double switchTime = step * estimateSwitchFraction();
+                if(step - switchTime > minStep_s && switchLocateTries < MAX_SWITCH_LOCATE_TRIES){
+                    switchLocateTries++;
+                    h = Math.max(switchTime + 0.5 * minStep_s, minStep_s);
+                    continue;
+                }
+            }
+
+            double sumSquaredErr = 0;
+            for(int i = 0; i < NUM_STATES; i++){
+                double err = step * (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i] + E7 * k7[i]);
+                double scale = absTolerance + relTolerance * Math.max(Math.abs(state[i]), Math.abs(nextState[i]));
+                sumSquaredErr += (err / scale) * (err / scale);
+            }
+            double errNorm = Math.sqrt(sumSquaredErr / NUM_STATES);
+
+            // Standard step size controller, with a safety factor and limits on how fast it can change
+            double factor = errNorm == 0 ? 5.0 : Math.min(5.0, Math.max(0.2, 0.9 * Math.pow(errNorm, -0.2)));
+
+            if(errNorm <= 1.0 || step <= minStep_s){
+                t = lastStep ? intervalSeconds : t + step;
+                steps++;
+                switchLocateTries = 0;
+                System.arraycopy(nextState, 0, state, 0, NUM_STATES);
+                if(regimeSwitched){
+                    // Re-evaluate in the new regimes rather than reuse the end-of-step derivative
+                    derivative(state, t, k1, false);
+                    // Step back out gently after a switch
+                    factor = Math.min(factor, 1.0);
+                } else {
+                    // First-same-as-last: the end-of-step derivative starts the next step
+                    System.arraycopy(k7, 0, k1, 0, NUM_STATES);
+                }
+                lockFricRegimes();
+                // Don't let a step shortened to fit the interval or a switch shrink the next one
+                h = Math.max(step, h) * factor;
+            } else {
+                h = step * factor;
+            }
+            h = Math.min(Math.max(h, minStep_s), maxStep_s);
+        }
+        adaptiveStep_s = h;
+        // k1 and the eval arrays are from the evaluation at the final state
+        storeState(intervalSeconds);
+        return steps;
+    }
+
+    /** Locks in the regimes from the latest evaluation, and remembers where the switching quantities started. */
+    private void lockFricRegimes(){
+        System.arraycopy(evalFricRegime, 0, lockedFricRegime, 0, NUM_MODULES);
+        System.arraycopy(evalCrossTreadVel, 0, stepStartCrossTreadVel, 0, NUM_MODULES);
+        System.arraycopy(evalCrossTreadForce, 0, stepStartCrossTreadForce, 0, NUM_MODULES);
+    }
+
+    /**
+     * Estimates how far through the step the first friction regime switch happened, by linear
+     * interpolation of the quantities the regime depends on between the start and end of the step.
+     */
+    private double estimateSwitchFraction(){
+        double fraction = 1.0;
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            if(evalFricRegime[idx] == lockedFricRegime[idx]){
+                continue;
+            }
+            double v0 = stepStartCrossTreadVel[idx];
+            double v1 = evalCrossTreadVel[idx];
+            double f0 = stepStartCrossTreadForce[idx];
+            double f1 = evalCrossTreadForce[idx];
+            double cap = modules[idx].getTreadStaticFricForce();
+            fraction = Math.min(fraction, crossingFraction(v0 - STICK_SPEED_MPS, v1 - STICK_SPEED_MPS));
+            fraction = Math.min(fraction, crossingFraction(v0 + STICK_SPEED_MPS, v1 + STICK_SPEED_MPS));
+            fraction = Math.min(fraction, crossingFraction(v0, v1));
+            fraction = Math.min(fraction, crossingFraction(f0 - cap, f1 - cap));
+            fraction = Math.min(fraction, crossingFraction(f0 + cap, f1 + cap));
+        }
+        return fraction;
+    }
+
+    /** Where a linear function with these end values crosses zero, as a fraction of the way, or 1 if it doesn't. */
+    private static double crossingFraction(double start, double end){
+        if((start > 0) == (end > 0) || start == end){
+            return 1.0;
+        }
+        return start / (start - end);
+    }
+
+    /**
+     * Evaluates the time derivative of the state vector at the present input voltages.
+     * Also leaves each module's intermediate results, and the friction regime it would naturally
+     * be in, in the eval arrays.
+     * @param t time since the start of the call, for the azimuth solution
+     * @param lockRegimes use the friction regimes in lockedFricRegime instead of the natural ones
+     */
+    private void derivative(double[] y, double t, double[] dydt, boolean lockRegimes){
+        double cosTheta = Math.cos(y[THETA]);
+        double sinTheta = Math.sin(y[THETA]);
+        double omega = y[OMEGA];
+        // Robot velocity in the robot frame, which every module frame shares
+        double velX =  y[VX] * cosTheta + y[VY] * sinTheta;
+        double velY = -y[VX] * sinTheta + y[VY] * cosTheta;
+
+        // External force starts the sum, rotated into the robot frame
+        double preFricNetForceX =  sim.externalForceX * cosTheta + sim.externalForceY * sinTheta;
+        double preFricNetForceY = -sim.externalForceX * sinTheta + sim.externalForceY * cosTheta;
+        double netTorque = sim.externalTorque;
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            SwerveModuleSim mod = modules[idx];
+            double azmthAngle = mod.calcAzimuthAngleAfter(azmthStartAngle[idx], azmthStartSpeed[idx], t);
+            double azmthCos = Math.cos(azmthAngle);
+            double azmthSin = Math.sin(azmthAngle);
+            double moduleX = sim.robotToModuleX[idx];
+            double moduleY = sim.robotToModuleY[idx];
+
+            // Contact patch velocity, including the component from the robot's rotation
+            double relVelX = velX - omega * moduleY;
+            double relVelY = velY + omega * moduleX;
+            double velAlongAzmth = relVelX * azmthCos + relVelY * azmthSin;
+            double groundForce = mod.calcWheelGroundForce(velAlongAzmth);
+
+            preFricNetForceX += groundForce * azmthCos;
+            preFricNetForceY += groundForce * azmthSin;
+            netTorque += moduleX * groundForce * azmthSin - moduleY * groundForce * azmthCos;
+
+            evalAzmthAngle[idx] = azmthAngle;
+            evalAzmthCos[idx] = azmthCos;
+            evalAzmthSin[idx] = azmthSin;
+            evalVelAlongAzmth[idx] = velAlongAzmth;
+            evalGroundForce[idx] = groundForce;
+            evalCrossTreadVel[idx] = -relVelX * azmthSin + relVelY * azmthCos;
+            evalCrossTreadLever[idx] = moduleX * azmthCos + moduleY * azmthSin;
+
+            dydt[WHEEL_ROT + idx] = mod.calcWheelRotationRate(velAlongAzmth);
+        }
+
+        // Same regime rules as the trapezoidal scheme: the net motive force is shared evenly between
+        // modules, and enough of it across the tread breaks a module loose.
+        double perWheelForceFrac = 1.0/NUM_MODULES;
+        double forceOnRobotCenterX = preFricNetForceX;
+        double forceOnRobotCenterY = preFricNetForceY;
+        boolean anySticking = false;
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            double azmthCos = evalAzmthCos[idx];
+            double azmthSin = evalAzmthSin[idx];
+            double crossTreadForce = (-preFricNetForceX * azmthSin + preFricNetForceY * azmthCos) * perWheelForceFrac;
+            int regime = modules[idx].calcCrossTreadFrictionRegime(evalCrossTreadVel[idx], crossTreadForce);
+            evalFricRegime[idx] = regime;
+            evalCrossTreadForce[idx] = crossTreadForce;
+            if(lockRegimes){
+                regime = lockedFricRegime[idx];
+            }
+
+            sticking[idx] = regime == SwerveModuleSim.FRIC_STATIC;
+            if(sticking[idx]){
+                anySticking = true;
+                evalCrossTreadFric[idx] = 0;
+            } else {
+                double fric = modules[idx].calcCrossTreadFrictionMagInRegime(regime, crossTreadForce);
+                evalCrossTreadFric[idx] = fric;
+                forceOnRobotCenterX += -fric * azmthSin;
+                forceOnRobotCenterY +=  fric * azmthCos;
+                netTorque += fric * evalCrossTreadLever[idx];
+            }
+        }
+
+        if(anySticking){
+            solveStickingFriction(t, velX, velY, omega, forceOnRobotCenterX, forceOnRobotCenterY, netTorque);
+            for(int idx = 0; idx < NUM_MODULES; idx++){
+                if(sticking[idx]){
+                    double fric = evalCrossTreadFric[idx];
+                    forceOnRobotCenterX += -fric * evalAzmthSin[idx];
+                    forceOnRobotCenterY +=  fric * evalAzmthCos[idx];
+                    netTorque += fric * evalCrossTreadLever[idx];
+                }
+            }
+        }
+
+        dydt[X] = y[VX];
+        dydt[Y] = y[VY];
+        dydt[THETA] = omega;
+        dydt[VX] = (forceOnRobotCenterX * cosTheta - forceOnRobotCenterY * sinTheta) / sim.robotMass_kg;
+        dydt[VY] = (forceOnRobotCenterX * sinTheta + forceOnRobotCenterY * cosTheta) / sim.robotMass_kg;
+        dydt[OMEGA] = netTorque / sim.robotMOI;
+    }
+
+    /**
+     * Finds the static friction at each sticking module that keeps its cross-tread slip speed from
+     * changing, given everything else acting on the robot. The modules are coupled through the robot
+     * body, so this is a small linear system, solved by projected Gauss-Seidel so each module's force
+     * stays within what static friction can supply. Results go in evalCrossTreadFric.
+     * @param t time since the start of the call, for the azimuth solution
+     * @param forceX robot-frame force on the robot from everything but the sticking modules
+     * @param forceY robot-frame force on the robot from everything but the sticking modules
+     * @param torque torque on the robot from everything but the sticking modules
+     */
+    private void solveStickingFriction(double t, double velX, double velY, double omega,
+                                       double forceX, double forceY, double torque){
+        double mass = sim.robotMass_kg;
+        double moi = sim.robotMOI;
+        // Slip acceleration of each sticking patch with no static friction anywhere: the patch's
+        // acceleration along its cross-tread direction in the (rotating) robot frame, less the
+        // turning of that direction as the module steers.
+        double accelX = forceX / mass + omega * velY;
+        double accelY = forceY / mass - omega * velX;
+        double rotAccel = torque / moi;
+        for(int i = 0; i < NUM_MODULES; i++){
+            if(!sticking[i]){
+                continue;
+            }
+            stickAccel[i] = -accelX * evalAzmthSin[i] + accelY * evalAzmthCos[i]
+                          + rotAccel * evalCrossTreadLever[i]
+                          - modules[i].calcAzimuthSpeedAfter(azmthStartSpeed[i], t) * evalVelAlongAzmth[i];
+            // Slip acceleration at i per newton of cross-tread force at j
+            for(int j = 0; j < NUM_MODULES; j++){
+                double crossDot = evalAzmthSin[i] * evalAzmthSin[j] + evalAzmthCos[i] * evalAzmthCos[j];
+                stickCoupling[i][j] = crossDot / mass + evalCrossTreadLever[i] * evalCrossTreadLever[j] / moi;
+            }
+        }
+
+        for(int iter = 0; iter < STICK_SOLVER_ITERATIONS; iter++){
+            for(int i = 0; i < NUM_MODULES; i++){
+                if(!sticking[i]){
+                    continue;
+                }
+                double slipAccel = stickAccel[i];
+                for(int j = 0; j < NUM_MODULES; j++){
+                    if(j != i && sticking[j]){
+                        slipAccel += stickCoupling[i][j] * evalCrossTreadFric[j];
+                    }
+                }
+                double cap = modules[i].getTreadStaticFricForce();
+                double fric = -slipAccel / stickCoupling[i][i];
+                evalCrossTreadFric[i] = Math.max(-cap, Math.min(cap, fric));
+            }
+        }
+    }
+
+    private void loadState(){
+        state[X] = sim.poseX;
+        state[Y] = sim.poseY;
+        state[THETA] = Math.atan2(sim.poseSin, sim.poseCos);
+        state[VX] = sim.velPrevX;
+        state[VY] = sim.velPrevY;
+        state[OMEGA] = sim.rotVel_prev;
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            azmthStartAngle[idx] = modules[idx].getAzimuthAngle_rad();
+            azmthStartSpeed[idx] = modules[idx].getAzimuthSpeed_radPerSec();
+            state[WHEEL_ROT + idx] = modules[idx].getWheelRotation_rad();
+        }
+    }
+
+    /**
+     * Writes the state back to the sim and its modules.
+     * k1 must hold the derivative at the final state, with the eval arrays from that same evaluation.
+     */
+    private void storeState(double intervalSeconds){
+        sim.poseX = state[X];
+        sim.poseY = state[Y];
+        sim.poseCos = Math.cos(state[THETA]);
+        sim.poseSin = Math.sin(state[THETA]);
+        sim.velPrevX = state[VX];
+        sim.velPrevY = state[VY];
+        sim.rotVel_prev = state[OMEGA];
+        sim.accelPrevX = k1[VX];
+        sim.accelPrevY = k1[VY];
+        sim.rotAccel_prev = k1[OMEGA];
+        sim.curPoseStale = true;
+
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            SwerveModuleSim mod = modules[idx];
+            // Leave the module's pose history consistent with its velocity, in case the
+            // trapezoidal scheme is selected afterwards.
+            double modX = sim.modulePoseX(idx);
+            double modY = sim.modulePoseY(idx);
+            double modVelX = sim.velPrevX - sim.rotVel_prev * (modY - sim.poseY);
+            double modVelY = sim.velPrevY + sim.rotVel_prev * (modX - sim.poseX);
+            mod.reset(modX - modVelX * intervalSeconds, modY - modVelY * intervalSeconds, sim.poseCos, sim.poseSin);
+            mod.setModulePose(modX, modY, sim.poseCos, sim.poseSin);
+            mod.setIntegratedState(
+                evalAzmthAngle[idx],
+                mod.calcAzimuthSpeedAfter(azmthStartSpeed[idx], intervalSeconds),
+                state[WHEEL_ROT + idx],
+                evalVelAlongAzmth[idx],
+                evalCrossTreadVel[idx],
+                evalCrossTreadForce[idx],
+                evalCrossTreadFric[idx]);
+        }
+    }
+}
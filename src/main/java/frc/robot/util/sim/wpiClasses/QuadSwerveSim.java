@@ -1,6 +1,6 @@
 package frc.robot.util.sim.wpiClasses;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -8,7 +8,6 @@ import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 
 public class QuadSwerveSim {
 
@@ -18,21 +17,68 @@ public class QuadSwerveSim {
     static public final int BR = 3; // Back Right Module Index
     static public final int NUM_MODULES = 4;
 
+    /**
+     * How update() and advance() integrate the equations of motion.
+     */
+    public enum Integrator {
+        /** The original scheme: trapezoidal integration with velocities finite-differenced from the previous step. */
+        TRAPEZOIDAL,
+        /** Classic fourth-order Runge-Kutta on the continuous-time model, at the fixed step size. */
+        RK4,
+        /**
+         * Dormand-Prince 5(4) on the continuous-time model, with the step size picked each step from the
+         * embedded error estimate. Takes long steps while forces are smooth, and ends a step on each
+         * friction regime switch so no step straddles one.
+         */
+        ADAPTIVE_RK45
+    }
+
     List<SwerveModuleSim> modules;
+    // Array view of the modules so the hot loop doesn't go through the List interface
+    final SwerveModuleSim[] moduleArr;
 
-    Vector2d accel_prev = new Vector2d();
-    Vector2d vel_prev   = new Vector2d();
-    double   rotAccel_prev = 0;
-    double   rotVel_prev   = 0;
+    // All motion state is kept in primitives so update() allocates nothing.
+    double accelPrevX = 0;
+    double accelPrevY = 0;
+    double velPrevX   = 0;
+    double velPrevY   = 0;
+    double rotAccel_prev = 0;
+    double rotVel_prev   = 0;
 
     public final List<Translation2d> robotToModuleTL;
     public final List<Transform2d> robotToModuleTF;
+    final double[] robotToModuleX = new double[NUM_MODULES];
+    final double[] robotToModuleY = new double[NUM_MODULES];
 
-    Pose2d curPose = new Pose2d();
+    // Current pose in the field frame. Heading is stored as a normalized cos/sin pair,
+    // which is what Pose2d composition does internally.
+    double poseX = 0;
+    double poseY = 0;
+    double poseCos = 1;
+    double poseSin = 0;
+
+    // Pose2d view of the state above, rebuilt only when someone asks for it after a step.
+    private Pose2d curPose = new Pose2d();
+    boolean curPoseStale = false;
 
     double robotMass_kg;
     double robotMOI;
 
+    // Force and torque on the robot from outside the drivetrain, field frame, about the robot center
+    double externalForceX = 0;
+    double externalForceY = 0;
+    double externalTorque = 0;
+
+    private Integrator integrator = Integrator.TRAPEZOIDAL;
+    private double fixedStep_s = 0.001;
+    private int lastStepCount = 0;
+    private final QuadSwerveIntegrator rungeKutta;
+
+    // Supply for the module motors. Without a battery model they run from a steady 12 V.
+    private static final double NOMINAL_SUPPLY_VOLTAGE = 12.0;
+    private SimpleBatteryModel battery = null;
+    private double drivetrainCurrent_A = 0;
+
     public QuadSwerveSim(
         double wheelBaseWidth_m,
         double wheelBaseLength_m,
@@ -41,7 +87,8 @@ public class QuadSwerveSim {
         List<SwerveModuleSim> modules
     ){
         this.modules = modules;
- 
+        this.moduleArr = modules.toArray(new SwerveModuleSim[NUM_MODULES]);
+
         robotToModuleTL = Arrays.asList(
             new Translation2d( wheelBaseWidth_m/2,  wheelBaseLength_m/2),
             new Translation2d( wheelBaseWidth_m/2, -wheelBaseLength_m/2),
@@ -54,104 +101,265 @@ public class QuadSwerveSim {
             new Transform2d(robotToModuleTL.get(FR), new Rotation2d(0.0)),
             new Transform2d(robotToModuleTL.get(BL), new Rotation2d(0.0)),
             new Transform2d(robotToModuleTL.get(BR), new Rotation2d(0.0))
-        );   
+        );
+
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            robotToModuleX[idx] = robotToModuleTL.get(idx).getX();
+            robotToModuleY[idx] = robotToModuleTL.get(idx).getY();
+        }
 
         this.robotMass_kg = robotMass_kg;
         this.robotMOI = robotMOI;
-        
+
+        rungeKutta = new QuadSwerveIntegrator(this);
+
     }
 
     public void modelReset(Pose2d pose){
-        accel_prev = new Vector2d();
-        vel_prev   = new Vector2d();
+        accelPrevX = 0;
+        accelPrevY = 0;
+        velPrevX   = 0;
+        velPrevY   = 0;
         rotAccel_prev = 0;
         rotVel_prev   = 0;
+        drivetrainCurrent_A = 0;
+        poseX = pose.getX();
+        poseY = pose.getY();
+        poseCos = pose.getRotation().getCos();
+        poseSin = pose.getRotation().getSin();
         for(int idx = 0; idx < NUM_MODULES; idx++){
-            modules.get(idx).reset(pose.transformBy(robotToModuleTF.get(idx)));
+            moduleArr[idx].reset(modulePoseX(idx), modulePoseY(idx), poseCos, poseSin);
         }
         curPose = pose;
+        curPoseStale = false;
+    }
+
+    /**
+     * Selects the integration scheme. Best chosen before the first step or right after modelReset(),
+     * since the trapezoidal scheme's finite-difference history isn't carried over exactly when switching.
+     */
+    public void setIntegrator(Integrator integrator){
+        this.integrator = integrator;
+    }
+
+    public Integrator getIntegrator(){
+        return integrator;
+    }
+
+    /**
+     * @param fixedStep_s step size advance() uses for the fixed-step integrators. Defaults to 1 ms.
+     */
+    public void setFixedStep(double fixedStep_s){
+        this.fixedStep_s = fixedStep_s;
+    }
+
+    /**
+     * Error control settings for ADAPTIVE_RK45. A step is accepted when its error estimate is
+     * within absTolerance + relTolerance * |state| (RMS over all states).
+     * @param absTolerance absolute tolerance, in each state's own units (m, rad, m/s, rad/s)
+     * @param relTolerance relative tolerance
+     * @param minStep_s smallest step taken; steps this short are accepted whatever their error
+     * @param maxStep_s longest step taken
+     */
+    public void setAdaptiveTolerances(double absTolerance, double relTolerance, double minStep_s, double maxStep_s){
+        rungeKutta.setTolerances(absTolerance, relTolerance, minStep_s, maxStep_s);
+    }
+
+    /**
+     * @return how many integrator steps the most recent advance() or update() took
+     */
+    public int getLastStepCount(){
+        return lastStepCount;
+    }
+
+    /**
+     * Runs the module motors from a battery, so their current draw sags the voltage they can apply.
+     * The supply voltage is recomputed from the motor currents after every step: every trapezoidal
+     * step, or once per advance()/update() call for the Runge-Kutta integrators, which hold their inputs
+     * over a call.
+     * @param battery the battery, or null for a steady 12 V supply
+     */
+    public void setBatteryModel(SimpleBatteryModel battery){
+        this.battery = battery;
+        double supplyVoltage = getSupplyVoltage();
+        boolean outputsEnabled = battery == null || !battery.isBrownedOut();
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            moduleArr[idx].setSupply(supplyVoltage, outputsEnabled);
+        }
+    }
+
+    public SimpleBatteryModel getBatteryModel(){
+        return battery;
     }
 
+    /**
+     * @return the voltage the module motor controllers are running from
+     */
+    public double getSupplyVoltage(){
+        return battery == null ? NOMINAL_SUPPLY_VOLTAGE : battery.getVoltage();
+    }
+
+    /**
+     * @return current drawn from the supply by all eight motors over the last step
+     */
+    public double getDrivetrainCurrent_A(){
+        return drivetrainCurrent_A;
+    }
+
+    private void updateSupply(){
+        drivetrainCurrent_A = 0;
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            drivetrainCurrent_A += moduleArr[idx].getSupplyCurrent_A();
+        }
+        if(battery == null){
+            return;
+        }
+        double supplyVoltage = battery.update(drivetrainCurrent_A);
+        boolean outputsEnabled = !battery.isBrownedOut();
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            moduleArr[idx].setSupply(supplyVoltage, outputsEnabled);
+        }
+    }
+
+    /**
+     * Sets a force on the robot from something other than its own wheels: another robot, a wall,
+     * a field element. It is held until set again, and like the wheels' motive force it is
+     * something the treads' friction gets a chance to resist.
+     * @param forceX_N field-frame x component, applied at the robot center
+     * @param forceY_N field-frame y component, applied at the robot center
+     * @param torque_Nm torque about the robot center, counterclockwise positive
+     */
+    public void setExternalForce(double forceX_N, double forceY_N, double torque_Nm){
+        externalForceX = forceX_N;
+        externalForceY = forceY_N;
+        externalTorque = torque_Nm;
+    }
+
+    /**
+     * Advances the model by a whole control period with the selected integrator.
+     * The fixed-step integrators take as many equal steps of about the fixed step size as fit in the
+     * period; the adaptive one covers the period with as few steps as its tolerances allow.
+     * Input voltages are held constant over the period.
+     */
+    public void advance(double periodSeconds){
+        switch(integrator){
+            case RK4:
+                lastStepCount = rungeKutta.integrateFixed(periodSeconds, fixedStep_s);
+                updateSupply();
+                break;
+            case ADAPTIVE_RK45:
+                lastStepCount = rungeKutta.integrateAdaptive(periodSeconds);
+                updateSupply();
+                break;
+            default:
+                int steps = Math.max(1, (int) Math.round(periodSeconds / fixedStep_s));
+                double dt = periodSeconds / steps;
+                for(int i = 0; i < steps; i++){
+                    updateTrapezoidal(dt);
+                }
+                lastStepCount = steps;
+                break;
+        }
+    }
+
+    /**
+     * Advances the model by dtSeconds with the selected integrator: a single step for the
+     * fixed-step integrators, or as many steps as error control needs for the adaptive one.
+     */
     public void update(double dtSeconds){
+        switch(integrator){
+            case RK4:
+                lastStepCount = rungeKutta.integrateFixed(dtSeconds, dtSeconds);
+                updateSupply();
+                break;
+            case ADAPTIVE_RK45:
+                lastStepCount = rungeKutta.integrateAdaptive(dtSeconds);
+                updateSupply();
+                break;
+            default:
+                updateTrapezoidal(dtSeconds);
+                lastStepCount = 1;
+                break;
+        }
+    }
 
-        Pose2d fieldReferenceFrame = new Pose2d();// global origin
-        Transform2d fieldToRobotTrans = new Transform2d(fieldReferenceFrame, curPose);
+    private void updateTrapezoidal(double dtSeconds){
 
         ////////////////////////////////////////////////////////////////
         // Component-Force Calculations to populate the free-body diagram
+        // Every module frame shares the robot's rotation, so forces expressed in a module
+        // frame are also in the robot frame and can be summed directly.
 
         // Calculate each module's new position, and step it through simulation.
         for(int idx = 0; idx < NUM_MODULES; idx++){
-            Pose2d modPose = fieldReferenceFrame.transformBy(fieldToRobotTrans).transformBy(robotToModuleTF.get(idx));
-            modules.get(idx).setModulePose(modPose);
-            modules.get(idx).update(dtSeconds);
+            moduleArr[idx].setModulePose(modulePoseX(idx), modulePoseY(idx), poseCos, poseSin);
+            moduleArr[idx].update(dtSeconds);
         }
 
-        // Force on frame from wheel motive forces (along-tread)
-        ArrayList<ForceAtPose2d> wheelMotiveForces = new ArrayList<ForceAtPose2d>(NUM_MODULES);
+        // First half of the somewhat-dubious friction model
+        // Add up all the forces that friction gets a chance to fight against (wheel motive forces, along-tread)
+        double preFricNetForceX = 0;
+        double preFricNetForceY = 0;
         for(int idx = 0; idx < NUM_MODULES; idx++){
-            wheelMotiveForces.add(modules.get(idx).getWheelMotiveForce());
+            preFricNetForceX += moduleArr[idx].wheelMotiveForceX;
+            preFricNetForceY += moduleArr[idx].wheelMotiveForceY;
         }
 
-        // First half of the somewhat-dubious friction model
-        Force2d preFricNetForce = new Force2d();
-        wheelMotiveForces.forEach((ForceAtPose2d mf) ->{
-            preFricNetForce.accum(mf.getForceInRefFrame(curPose)); //Add up all the forces that friction gets a chance to fight against
-        });
-
-        Force2d sidekickForce = new Force2d(0, 0);
+        // External force, rotated into the robot frame
+        double sidekickForceX =  externalForceX * poseCos + externalForceY * poseSin;
+        double sidekickForceY = -externalForceX * poseSin + externalForceY * poseCos;
 
-        preFricNetForce.accum(sidekickForce);
-
-        ForceAtPose2d preFricNetForceRobotCenter = new ForceAtPose2d(preFricNetForce, curPose);
+        preFricNetForceX += sidekickForceX;
+        preFricNetForceY += sidekickForceY;
 
         // Calculate the forces from cross-tread friction at each module
-        ArrayList<ForceAtPose2d> netXtreadFricForces = new ArrayList<ForceAtPose2d>(NUM_MODULES);
+        double perWheelForceFrac = 1.0/NUM_MODULES; //Assume force evenly applied to all modules.
         for(int idx = 0; idx < NUM_MODULES; idx++){
-            SwerveModuleSim mod = modules.get(idx);
-            double perWheelForceFrac = 1.0/NUM_MODULES; //Assume force evenly applied to all modules.
-            Force2d preFricForceAtModule = preFricNetForceRobotCenter.getForceInRefFrame(mod.getModulePose()).times(perWheelForceFrac);
-            netXtreadFricForces.add(mod.getCrossTreadFrictionalForce(preFricForceAtModule, dtSeconds));
+            moduleArr[idx].calcCrossTreadFrictionalForce(
+                preFricNetForceX * perWheelForceFrac,
+                preFricNetForceY * perWheelForceFrac,
+                dtSeconds);
         }
 
         ////////////////////////////////////////////////////////////////
         // Combine forces in free-body diagram
 
-        // Using all the above force components, do Sum of Forces
-        Force2d forceOnRobotCenter = preFricNetForce;
-
-        netXtreadFricForces.forEach((ForceAtPose2d f) -> {
-            forceOnRobotCenter.accum(f.getForceInRefFrame(curPose));
-        });
-        
-        ForceAtPose2d netForce = new ForceAtPose2d(forceOnRobotCenter, curPose);
-
-        Force2d robotForceInFieldRefFrame = netForce.getForceInRefFrame(fieldReferenceFrame);
-
-        //Sum of Torques
-        double netTorque = 0;
+        // Using all the above force components, do Sum of Forces and Sum of Torques
+        double forceOnRobotCenterX = preFricNetForceX;
+        double forceOnRobotCenterY = preFricNetForceY;
+        double netTorque = externalTorque;
 
         for(int idx = 0; idx < NUM_MODULES; idx++){
-            netTorque += wheelMotiveForces.get(idx).getTorque(curPose);
-            netTorque += netXtreadFricForces.get(idx).getTorque(curPose);
+            SwerveModuleSim mod = moduleArr[idx];
+            forceOnRobotCenterX += mod.crossTreadFricForceX;
+            forceOnRobotCenterY += mod.crossTreadFricForceY;
+            // Lever arm is the module's offset from robot center
+            netTorque += robotToModuleX[idx] * (mod.wheelMotiveForceY + mod.crossTreadFricForceY)
+                       - robotToModuleY[idx] * (mod.wheelMotiveForceX + mod.crossTreadFricForceX);
         }
 
+        double robotForceInFieldRefFrameX = forceOnRobotCenterX * poseCos - forceOnRobotCenterY * poseSin;
+        double robotForceInFieldRefFrameY = forceOnRobotCenterX * poseSin + forceOnRobotCenterY * poseCos;
+
 
         ////////////////////////////////////////////////////////////////
         // Apply Newton's 2nd law to get motion from forces
 
         //a = F/m in field frame
-        Vector2d accel = robotForceInFieldRefFrame.times(1/robotMass_kg).getVector2d();
+        double accelX = robotForceInFieldRefFrameX / robotMass_kg;
+        double accelY = robotForceInFieldRefFrameY / robotMass_kg;
+
+        double velocityX = velPrevX + (accelX + accelPrevX)/2 * dtSeconds; //Trapezoidal integration
+        double velocityY = velPrevY + (accelY + accelPrevY)/2 * dtSeconds;
+
+        double posChangeX = (velocityX + velPrevX)/2 * dtSeconds; //Trapezoidal integration
+        double posChangeY = (velocityY + velPrevY)/2 * dtSeconds;
 
-        Vector2d velocity = new Vector2d( vel_prev.x + (accel.x + accel_prev.x)/2 * dtSeconds, //Trapezoidal integration
-                                          vel_prev.y + (accel.y + accel_prev.y)/2 * dtSeconds);
+        velPrevX = velocityX;
+        velPrevY = velocityY;
+        accelPrevX = accelX;
+        accelPrevY = accelY;
 
-        Translation2d posChange = new Translation2d( (velocity.x + vel_prev.x)/2 * dtSeconds, //Trapezoidal integration
-                                                     (velocity.y + vel_prev.y)/2 * dtSeconds);
-        
-        vel_prev = velocity;
-        accel_prev = accel;
-        
         //alpha = T/I in field frame
         double rotAccel = netTorque / robotMOI;
         double rotVel = rotVel_prev + (rotAccel + rotAccel_prev)/2 * dtSeconds;
@@ -160,15 +368,197 @@ public class QuadSwerveSim {
         rotVel_prev = rotVel;
         rotAccel_prev = rotAccel;
 
-        posChange = posChange.rotateBy(curPose.getRotation().unaryMinus()); //Twist needs to be relative to robot reference frame
+        //Twist needs to be relative to robot reference frame
+        double twistX =  posChangeX * poseCos + posChangeY * poseSin;
+        double twistY = -posChangeX * poseSin + posChangeY * poseCos;
+
+        applyTwist(twistX, twistY, rotPosChange);
+
+        updateSupply();
+    }
+
+    /**
+     * Primitive equivalent of {@code curPose = curPose.exp(new Twist2d(dx, dy, dtheta))}.
+     */
+    private void applyTwist(double dx, double dy, double dtheta){
+        double sinTheta = Math.sin(dtheta);
+        double cosTheta = Math.cos(dtheta);
+
+        double s;
+        double c;
+        if (Math.abs(dtheta) < 1E-9) {
+            s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+            c = 0.5 * dtheta;
+        } else {
+            s = sinTheta / dtheta;
+            c = (1 - cosTheta) / dtheta;
+        }
+
+        double transX = dx * s - dy * c;
+        double transY = dx * c + dy * s;
+
+        poseX += transX * poseCos - transY * poseSin;
+        poseY += transX * poseSin + transY * poseCos;
+
+        double newCos = cosTheta * poseCos - sinTheta * poseSin;
+        double newSin = cosTheta * poseSin + sinTheta * poseCos;
+        double mag = Math.hypot(newCos, newSin);
+        poseCos = newCos / mag;
+        poseSin = newSin / mag;
+
+        curPoseStale = true;
+    }
+
+    double modulePoseX(int idx){
+        return poseX + robotToModuleX[idx] * poseCos - robotToModuleY[idx] * poseSin;
+    }
+
+    double modulePoseY(int idx){
+        return poseY + robotToModuleX[idx] * poseSin + robotToModuleY[idx] * poseCos;
+    }
+
+    // Bumped whenever the snapshot layout changes, so stale snapshots are rejected rather than misread
+    private static final int SNAPSHOT_VERSION = 2;
+
+    /**
+     * @return the size of a snapshot from saveState()
+     */
+    public int getStateBytes(){
+        return 3 * Integer.BYTES + 16 * Double.BYTES + NUM_MODULES * SwerveModuleSim.STATE_BYTES
+               + 1 + (battery == null ? 0 : SimpleBatteryModel.STATE_BYTES);
+    }
+
+    /**
+     * Writes the full dynamic state of the robot and its modules into buf: pose, velocities, the
+     * trapezoidal scheme's history, motor states, input and supply voltages, the battery, the
+     * external force and the adaptive step size. Restoring it into the same sim, or one built with the same parameters,
+     * makes the following steps repeat exactly.
+     * Physical parameters and integrator tolerances are configuration, and aren't included.
+     */
+    public void saveState(ByteBuffer buf){
+        buf.putInt(SNAPSHOT_VERSION);
+        buf.putInt(integrator.ordinal());
+        buf.putInt(lastStepCount);
+        buf.putDouble(fixedStep_s);
+        buf.putDouble(rungeKutta.getAdaptiveStep());
+        buf.putDouble(poseX);
+        buf.putDouble(poseY);
+        buf.putDouble(poseCos);
+        buf.putDouble(poseSin);
+        buf.putDouble(velPrevX);
+        buf.putDouble(velPrevY);
+        buf.putDouble(accelPrevX);
+        buf.putDouble(accelPrevY);
+        buf.putDouble(rotVel_prev);
+        buf.putDouble(rotAccel_prev);
+        buf.putDouble(externalForceX);
+        buf.putDouble(externalForceY);
+        buf.putDouble(externalTorque);
+        buf.putDouble(drivetrainCurrent_A);
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            moduleArr[idx].saveState(buf);
+        }
+        buf.put((byte) (battery == null ? 0 : 1));
+        if(battery != null){
+            battery.saveState(buf);
+        }
+    }
+
+    /**
+     * Reads back a snapshot written by saveState().
+     * @throws IllegalArgumentException if the snapshot was written by an incompatible version
+     */
+    public void restoreState(ByteBuffer buf){
+        int version = buf.getInt();
+        if(version != SNAPSHOT_VERSION){
+            throw new IllegalArgumentException("Sim snapshot version " + version + " doesn't match " + SNAPSHOT_VERSION);
+        }
+        integrator = Integrator.values()[buf.getInt()];
+        lastStepCount = buf.getInt();
+        fixedStep_s = buf.getDouble();
+        rungeKutta.setAdaptiveStep(buf.getDouble());
+        poseX = buf.getDouble();
+        poseY = buf.getDouble();
+        poseCos = buf.getDouble();
+        poseSin = buf.getDouble();
+        velPrevX = buf.getDouble();
+        velPrevY = buf.getDouble();
+        accelPrevX = buf.getDouble();
+        accelPrevY = buf.getDouble();
+        rotVel_prev = buf.getDouble();
+        rotAccel_prev = buf.getDouble();
+        externalForceX = buf.getDouble();
+        externalForceY = buf.getDouble();
+        externalTorque = buf.getDouble();
+        drivetrainCurrent_A = buf.getDouble();
+        for(int idx = 0; idx < NUM_MODULES; idx++){
+            moduleArr[idx].restoreState(buf);
+        }
+        boolean hasBattery = buf.get() != 0;
+        if(hasBattery != (battery != null)){
+            throw new IllegalArgumentException("Sim snapshot " + (hasBattery ? "has" : "doesn't have") + " a battery model, but this sim " + (hasBattery ? "doesn't" : "does"));
+        }
+        if(battery != null){
+            battery.restoreState(buf);
+        }
+        curPoseStale = true;
+    }
+
+    /**
+     * @return robot velocity along the field x axis
+     */
+    public double getFieldVelocityX_mps(){
+        return velPrevX;
+    }
 
-        Twist2d motionThisLoop = new Twist2d(posChange.getX(), posChange.getY(), rotPosChange);
-        
-        curPose = curPose.exp(motionThisLoop);
+    /**
+     * @return robot velocity along the field y axis
+     */
+    public double getFieldVelocityY_mps(){
+        return velPrevY;
+    }
+
+    /**
+     * @return robot angular velocity, counterclockwise positive
+     */
+    public double getAngularVelocity_radPerSec(){
+        return rotVel_prev;
+    }
+
+    /**
+     * @return robot x position in the field frame. Unlike getCurPose(), allocates nothing.
+     */
+    public double getPoseX_m(){
+        return poseX;
+    }
+
+    /**
+     * @return robot y position in the field frame
+     */
+    public double getPoseY_m(){
+        return poseY;
+    }
+
+    /**
+     * @return cosine of the robot heading
+     */
+    public double getHeadingCos(){
+        return poseCos;
+    }
+
+    /**
+     * @return sine of the robot heading
+     */
+    public double getHeadingSin(){
+        return poseSin;
     }
 
     public Pose2d getCurPose(){
+        if(curPoseStale){
+            curPose = new Pose2d(poseX, poseY, new Rotation2d(poseCos, poseSin));
+            curPoseStale = false;
+        }
         return curPose;
-    }    
+    }
 
 }
@@ -0,0 +1,107 @@
+package frc.robot.util.sim.wpiClasses;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A battery as an ideal voltage source behind an internal resistance (battery, main breaker and
+ * wiring lumped together), plus the roboRIO's brownout protection: below the brownout voltage the
+ * motor outputs are disabled, and they stay disabled until the voltage recovers past a higher threshold.
+ */
+public class SimpleBatteryModel {
+
+    private final double nominalVoltage;
+    private final double internalResistance_Ohm;
+    private final double brownoutVoltage;
+    private final double recoveryVoltage;
+
+    private double otherLoad_A = 0;
+    private double totalCurrent_A = 0;
+    private double voltage;
+    private boolean brownedOut = false;
+
+    /**
+     * A fully charged competition battery with typical wiring, and roboRIO 1 brownout thresholds.
+     */
+    public SimpleBatteryModel(){
+        this(12.0, 0.02, 6.8, 7.5);
+    }
+
+    /**
+     * @param nominalVoltage open-circuit voltage
+     * @param internalResistance_Ohm resistance of the battery and wiring in series
+     * @param brownoutVoltage voltage below which motor outputs are disabled
+     * @param recoveryVoltage voltage above which motor outputs are enabled again after a brownout
+     */
+    public SimpleBatteryModel(double nominalVoltage, double internalResistance_Ohm,
+                              double brownoutVoltage, double recoveryVoltage){
+        this.nominalVoltage = nominalVoltage;
+        this.internalResistance_Ohm = internalResistance_Ohm;
+        this.brownoutVoltage = brownoutVoltage;
+        this.recoveryVoltage = recoveryVoltage;
+        this.voltage = nominalVoltage;
+    }
+
+    /**
+     * @param otherLoad_A current drawn by everything that isn't simulated: other mechanisms, the roboRIO, radio...
+     */
+    public void setOtherLoad(double otherLoad_A){
+        this.otherLoad_A = otherLoad_A;
+    }
+
+    /**
+     * Recomputes the terminal voltage and brownout state under a new load.
+     * @param drivetrainCurrent_A current drawn by the simulated motors. Negative while they regenerate.
+     * @return the terminal voltage
+     */
+    public double update(double drivetrainCurrent_A){
+        totalCurrent_A = drivetrainCurrent_A + otherLoad_A;
+        voltage = Math.max(0.0, nominalVoltage - totalCurrent_A * internalResistance_Ohm);
+        if(brownedOut){
+            brownedOut = voltage < recoveryVoltage;
+        } else {
+            brownedOut = voltage < brownoutVoltage;
+        }
+        return voltage;
+    }
+
+    /**
+     * Back to open circuit voltage with no brownout, as with a fresh battery.
+     */
+    public void reset(){
+        totalCurrent_A = 0;
+        voltage = nominalVoltage;
+        brownedOut = false;
+    }
+
+    // Other load, total current, voltage and brownout
+    static final int STATE_BYTES = 3 * Double.BYTES + 1;
+
+    void saveState(ByteBuffer buf){
+        buf.putDouble(otherLoad_A);
+        buf.putDouble(totalCurrent_A);
+        buf.putDouble(voltage);
+        buf.put((byte) (brownedOut ? 1 : 0));
+    }
+
+    void restoreState(ByteBuffer buf){
+        otherLoad_A = buf.getDouble();
+        totalCurrent_A = buf.getDouble();
+        voltage = buf.getDouble();
+        brownedOut = buf.get() != 0;
+    }
+
+    public double getVoltage(){
+        return voltage;
+    }
+
+    public double getTotalCurrent_A(){
+        return totalCurrent_A;
+    }
+
+    /**
+     * @return true while the roboRIO would have motor outputs disabled
+     */
+    public boolean isBrownedOut(){
+        return brownedOut;
+    }
+}
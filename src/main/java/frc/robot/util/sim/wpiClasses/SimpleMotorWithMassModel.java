@@ -1,48 +1,142 @@
 package frc.robot.util.sim.wpiClasses;
 
-import edu.wpi.first.wpilibj.simulation.FlywheelSim;
+import java.nio.ByteBuffer;
+
 import edu.wpi.first.math.system.plant.DCMotor;
 
 class SimpleMotorWithMassModel {
-    
+
+    private final DCMotor motor;
+    private final double gearing;
+
     double curDisplacement_Rev;
+    private double curSpeed_RadPerSec;
+    private double curVoltage;
+
+    // Continuous-time plant dw/dt = accelPerSpeed * w + accelPerVolt * V,
+    // the same one FlywheelSim builds with LinearSystemId.createFlywheelSystem().
+    private final double accelPerSpeed;
+    private final double accelPerVolt;
 
-    FlywheelSim fwSim;
+    // The plant discretized exactly at cachedDt_s, for update().
+    // Over a step with the voltage held:
+    //   w' = speedDecay * w + speedPerVolt * V
+    //   displacement (rad) = dispPerSpeed * w + dispPerVolt * V
+    private double cachedDt_s = Double.NaN;
+    private double speedDecay;
+    private double speedPerVolt;
+    private double dispPerSpeed;
+    private double dispPerVolt;
 
     /**
-     * So far - this is just a wrapper around FlywheelSim to get position as an output
+     * A DC motor turning a pure inertia through a gearbox: first order in speed, with position
+     * as its integral. Both are advanced with the exact solution for a held voltage.
      * @param motor
-     * @param gearing
-     * @param moi
+     * @param gearing motor rotations per mechanism rotation
+     * @param moi moment of inertia of the mechanism
      */
     SimpleMotorWithMassModel(DCMotor motor, double gearing, double moi){
-        fwSim = new FlywheelSim(motor, gearing, moi);
+        this.motor = motor;
+        this.gearing = gearing;
+        accelPerSpeed = -gearing * gearing * motor.KtNMPerAmp / (motor.KvRadPerSecPerVolt * motor.rOhms * moi);
+        accelPerVolt = gearing * motor.KtNMPerAmp / (motor.rOhms * moi);
     }
 
     void update(double motorVoltage, double dtSeconds){
-        fwSim.setInputVoltage(motorVoltage);
-        fwSim.update(dtSeconds);
-        curDisplacement_Rev += fwSim.getAngularVelocityRPM() / 60 * dtSeconds; //Add additional state of displacement in a hacky-ish calculation
+        if(dtSeconds != cachedDt_s){
+            discretize(dtSeconds);
+        }
+        curVoltage = motorVoltage;
+        double displacement_Rad = dispPerSpeed * curSpeed_RadPerSec + dispPerVolt * curVoltage;
+        curSpeed_RadPerSec = speedDecay * curSpeed_RadPerSec + speedPerVolt * curVoltage;
+        curDisplacement_Rev += displacement_Rad / (2 * Math.PI);
+    }
+
+    private void discretize(double dtSeconds){
+        // expm1 keeps (e^(a dt) - 1) accurate when a * dt is small
+        double expm1 = Math.expm1(accelPerSpeed * dtSeconds);
+        cachedDt_s = dtSeconds;
+        speedDecay = expm1 + 1;
+        speedPerVolt = expm1 / accelPerSpeed * accelPerVolt;
+        dispPerSpeed = expm1 / accelPerSpeed;
+        dispPerVolt = -accelPerVolt / accelPerSpeed * (dtSeconds - expm1 / accelPerSpeed);
+    }
+
+    /**
+     * Speed of the mass t seconds from now if the voltage is held, from the exact solution of the
+     * first-order plant. Doesn't touch any state.
+     */
+    double calcSpeedAfter_RadPerSec(double speed_radPerSec, double motorVoltage, double t){
+        double steadySpeed = -accelPerVolt * motorVoltage / accelPerSpeed;
+        return steadySpeed + (speed_radPerSec - steadySpeed) * Math.exp(accelPerSpeed * t);
+    }
+
+    /**
+     * Angle the mass turns through in the next t seconds if the voltage is held. Doesn't touch any state.
+     */
+    double calcDisplacementAfter_Rad(double speed_radPerSec, double motorVoltage, double t){
+        double steadySpeed = -accelPerVolt * motorVoltage / accelPerSpeed;
+        return steadySpeed * t + (speed_radPerSec - steadySpeed) * Math.expm1(accelPerSpeed * t) / accelPerSpeed;
+    }
+
+    /**
+     * Overwrites the position and speed with ones computed by an external integrator.
+     */
+    void setState(double position_Rev, double speed_radPerSec, double motorVoltage){
+        curDisplacement_Rev = position_Rev;
+        curSpeed_RadPerSec = speed_radPerSec;
+        curVoltage = motorVoltage;
+    }
+
+    // Displacement, speed and input voltage
+    static final int STATE_BYTES = 3 * Double.BYTES;
+
+    void saveState(ByteBuffer buf){
+        buf.putDouble(curDisplacement_Rev);
+        buf.putDouble(curSpeed_RadPerSec);
+        buf.putDouble(curVoltage);
+    }
+
+    void restoreState(ByteBuffer buf){
+        double position_Rev = buf.getDouble();
+        double speed_radPerSec = buf.getDouble();
+        setState(position_Rev, speed_radPerSec, buf.getDouble());
     }
 
     /**
-     * 
+     *
      * @return The present speed of the rotating mass
      */
     double getMechanismSpeed_RPM(){
-        return fwSim.getAngularVelocityRPM();
+        return curSpeed_RadPerSec * 60 / (2 * Math.PI);
+    }
+
+    /**
+     *
+     * @return The present speed of the rotating mass
+     */
+    double getMechanismSpeed_RadPerSec(){
+        return curSpeed_RadPerSec;
     }
 
     /**
-     * 
+     *
      * @return The present current draw of the mechanism
      */
     double getCurrent_A(){
-        return fwSim.getCurrentDrawAmps();
+        // Reported as a magnitude in the direction of the applied voltage, as FlywheelSim does
+        return motor.getCurrent(curSpeed_RadPerSec * gearing, curVoltage) * Math.signum(curVoltage);
+    }
+
+    /**
+     * @return The present motor current, signed with the motor's torque
+     */
+    double getMotorCurrent_A(){
+        return motor.getCurrent(curSpeed_RadPerSec * gearing, curVoltage);
     }
 
     /**
-     * 
+     *
      * @return The present displacement in Revolutions
      */
     double getMechanismPosition_Rev(){
@@ -50,4 +144,4 @@ class SimpleMotorWithMassModel {
     }
 
 
-}
\ No newline at end of file
+}
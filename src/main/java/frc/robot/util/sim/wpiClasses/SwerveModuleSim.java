@@ -1,5 +1,7 @@
 package frc.robot.util.sim.wpiClasses;
 
+import java.nio.ByteBuffer;
+
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.system.plant.DCMotor;
@@ -14,21 +16,45 @@ public class SwerveModuleSim {
     private final double treadStaticFricForce;
     private final double treadKineticFricForce;
     private final double wheelGearboxLossFactor = 0.01;
-    Pose2d prevModulePose = null;
-    Pose2d curModulePose  = null;
+
+    // Module pose in the field frame, kept as primitives so a physics step allocates nothing.
+    // The module frame shares the robot's rotation, so only its cos/sin are stored.
+    boolean poseInitialized = false;
+    double prevModuleX = 0;
+    double prevModuleY = 0;
+    double curModuleX = 0;
+    double curModuleY = 0;
+    double curModuleCos = 1;
+    double curModuleSin = 0;
+
     double curLinearSpeed_mps = 0; //Positive = in curAngle_deg, Negative = opposite of curAngle_deg
-    Rotation2d curAzmthAngle = Rotation2d.fromDegrees(0); //0 = toward front, 90 = toward left, 180 = toward back, 270 = toward right
+    //0 = toward front, 90 = toward left, 180 = toward back, 270 = toward right
+    double curAzmthCos = 1;
+    double curAzmthSin = 0;
+
+    // Velocity of the contact patch in the module frame, refreshed by calcModuleRelativeTranslationVelocity()
+    double relVelX = 0;
+    double relVelY = 0;
+
+    // Forces from the most recent step, in the module reference frame
+    double wheelMotiveForceX = 0;
+    double wheelMotiveForceY = 0;
+    double crossTreadFricForceX = 0;
+    double crossTreadFricForceY = 0;
 
     double crossTreadFricForceMag = 0;
     double crossTreadVelMag = 0;
     double crossTreadForceMag = 0;
 
+    // Commanded voltages, and what the motor controllers can actually apply from the supply
     double wheelVoltage;
     double azmthVoltage;
+    double supplyVoltage = 12.0;
+    boolean outputsEnabled = true;
 
     public SwerveModuleSim(
         DCMotor azimuthMotor,
-        DCMotor wheelMotor, 
+        DCMotor wheelMotor,
         double wheelRadius_m,
         double azimuthGearRatio,      // Motor rotations per one azimuth module rotation. Should be greater than zero
         double wheelGearRatio,        // Motor rotations per one wheel rotation. Should be greater than zero
@@ -41,11 +67,11 @@ public class SwerveModuleSim {
     ){
         this.azmthMotor = new SimpleMotorWithMassModel(azimuthMotor, azimuthGearRatio, azimuthEffectiveMOI);
         this.wheelMotor = new MotorGearboxWheelSim(wheelMotor, wheelGearRatio, wheelRadius_m, wheelGearboxLossFactor);
-     
-        this.azimuthEncGearRatio   = azimuthEncGearRatio; 
-        this.wheelEncGearRatio     = wheelEncGearRatio;   
+
+        this.azimuthEncGearRatio   = azimuthEncGearRatio;
+        this.wheelEncGearRatio     = wheelEncGearRatio;
         this.treadStaticFricForce  = treadStaticCoefFric*moduleNormalForce;
-        this.treadKineticFricForce = treadKineticCoefFric*moduleNormalForce; 
+        this.treadKineticFricForce = treadKineticCoefFric*moduleNormalForce;
     }
 
     public void setInputVoltages(double wheelVoltage, double azmthVoltage){
@@ -53,6 +79,35 @@ public class SwerveModuleSim {
         this.azmthVoltage = azmthVoltage;
     }
 
+    /**
+     * Sets the bus voltage the motor controllers run from. Commanded voltages are limited to it.
+     * @param outputsEnabled false to disable both motors, as the roboRIO does in a brownout
+     */
+    void setSupply(double supplyVoltage, boolean outputsEnabled){
+        this.supplyVoltage = supplyVoltage;
+        this.outputsEnabled = outputsEnabled;
+    }
+
+    double getAppliedWheelVoltage(){
+        return outputsEnabled ? Math.max(-supplyVoltage, Math.min(supplyVoltage, wheelVoltage)) : 0.0;
+    }
+
+    double getAppliedAzmthVoltage(){
+        return outputsEnabled ? Math.max(-supplyVoltage, Math.min(supplyVoltage, azmthVoltage)) : 0.0;
+    }
+
+    /**
+     * Current drawn from the supply by both motor controllers, taking them as ideal: supply power
+     * equals motor power. Negative while the motors are being back-driven.
+     */
+    double getSupplyCurrent_A(){
+        if(supplyVoltage <= 0.0){
+            return 0.0;
+        }
+        return (wheelMotor.getMotorCurrent_A() * getAppliedWheelVoltage()
+              + azmthMotor.getMotorCurrent_A() * getAppliedAzmthVoltage()) / supplyVoltage;
+    }
+
     public double getAzimuthEncoderPositionRev(){
         return azmthMotor.getMechanismPosition_Rev() * azimuthEncGearRatio;
     }
@@ -66,88 +121,284 @@ public class SwerveModuleSim {
     }
 
     void reset(Pose2d initModulePose){
-        prevModulePose = curModulePose = initModulePose;
+        reset(initModulePose.getX(), initModulePose.getY(),
+              initModulePose.getRotation().getCos(), initModulePose.getRotation().getSin());
+    }
+
+    void reset(double x, double y, double cos, double sin){
+        prevModuleX = curModuleX = x;
+        prevModuleY = curModuleY = y;
+        curModuleCos = cos;
+        curModuleSin = sin;
+        poseInitialized = true;
         curLinearSpeed_mps = 0;
-        curAzmthAngle = Rotation2d.fromDegrees(0);
+        curAzmthCos = 1;
+        curAzmthSin = 0;
     }
 
     void update(double dtSeconds){
 
-        Vector2d azimuthUnitVec = new Vector2d(1,0);
-        azimuthUnitVec.rotate(curAzmthAngle.getDegrees());
-
         // Assume the wheel does not lose traction along its wheel direction (on-tread)
-        double velocityAlongAzimuth = getModuleRelativeTranslationVelocity(dtSeconds).dot(azimuthUnitVec);
+        calcModuleRelativeTranslationVelocity(dtSeconds);
+        double velocityAlongAzimuth = relVelX * curAzmthCos + relVelY * curAzmthSin;
 
-        wheelMotor.update(velocityAlongAzimuth, wheelVoltage, dtSeconds);
-        azmthMotor.update(azmthVoltage, dtSeconds);
+        wheelMotor.update(velocityAlongAzimuth, getAppliedWheelVoltage(), dtSeconds);
+        azmthMotor.update(getAppliedAzmthVoltage(), dtSeconds);
 
         // Assume idealized azimuth control - no "twist" force at contact patch from friction or robot motion.
-        curAzmthAngle = Rotation2d.fromDegrees(azmthMotor.getMechanismPosition_Rev() * 360);
+        double azmthAngle_rad = azmthMotor.getMechanismPosition_Rev() * 2 * Math.PI;
+        curAzmthCos = Math.cos(azmthAngle_rad);
+        curAzmthSin = Math.sin(azmthAngle_rad);
+
+        // On-axis (along wheel direction) force, which comes from the rotation of the motor.
+        wheelMotiveForceX = wheelMotor.getGroundForce_N() * curAzmthCos;
+        wheelMotiveForceY = wheelMotor.getGroundForce_N() * curAzmthSin;
+    }
+
+    /**
+     * Calculate the velocity of the module's contact patch moving across the field, in the module reference frame.
+     * Results are left in relVelX/relVelY.
+     */
+    void calcModuleRelativeTranslationVelocity(double dtSeconds){
+        double xVel = (curModuleX - prevModuleX)/dtSeconds;
+        double yVel = (curModuleY - prevModuleY)/dtSeconds;
+        // Rotate by the negative of the module angle
+        relVelX =  xVel * curModuleCos + yVel * curModuleSin;
+        relVelY = -xVel * curModuleSin + yVel * curModuleCos;
     }
 
-    
     /** Get a vector of the velocity of the module's contact patch moving across the field. */
     Vector2d getModuleRelativeTranslationVelocity(double dtSeconds){
-        double xVel = (curModulePose.getTranslation().getX() - prevModulePose.getTranslation().getX())/dtSeconds;
-        double yVel = (curModulePose.getTranslation().getY() - prevModulePose.getTranslation().getY())/dtSeconds;
-        Vector2d moduleTranslationVec= new Vector2d(xVel,yVel);
-        moduleTranslationVec.rotate(-1.0*curModulePose.getRotation().getDegrees());
-        return moduleTranslationVec;
+        calcModuleRelativeTranslationVelocity(dtSeconds);
+        return new Vector2d(relVelX, relVelY);
     }
 
     /**
      * Given a net force on a particular module, calculate the friction force
      * generated by the tread interacting with the ground in the direction
-     * perpendicular to the wheel's rotation.
-     * @param netForce_in
-     * @return 
+     * perpendicular to the wheel's rotation. The result, in the module reference frame,
+     * is left in crossTreadFricForceX/crossTreadFricForceY.
+     * @param netForceX_in net force x component on the module, module reference frame
+     * @param netForceY_in net force y component on the module, module reference frame
      */
-    ForceAtPose2d getCrossTreadFrictionalForce(Force2d netForce_in, double dtSeconds){
+    void calcCrossTreadFrictionalForce(double netForceX_in, double netForceY_in, double dtSeconds){
 
         //Project net force onto cross-tread vector
-        Vector2d crossTreadUnitVector = new Vector2d(0,1);
-        crossTreadUnitVector.rotate(curAzmthAngle.getDegrees());
-        crossTreadVelMag = getModuleRelativeTranslationVelocity(dtSeconds).dot(crossTreadUnitVector);
-        crossTreadForceMag = netForce_in.getVector2d().dot(crossTreadUnitVector);
-
-        Force2d fricForce = new Force2d();
-        
-        if(Math.abs(crossTreadForceMag) > treadStaticFricForce || Math.abs(crossTreadVelMag) > 0.001){
+        double crossTreadUnitX = -curAzmthSin;
+        double crossTreadUnitY =  curAzmthCos;
+        calcModuleRelativeTranslationVelocity(dtSeconds);
+        crossTreadVelMag = relVelX * crossTreadUnitX + relVelY * crossTreadUnitY;
+        crossTreadForceMag = netForceX_in * crossTreadUnitX + netForceY_in * crossTreadUnitY;
+
+        crossTreadFricForceMag = calcCrossTreadFrictionMag(crossTreadVelMag, crossTreadForceMag);
+
+        crossTreadFricForceX = crossTreadUnitX * crossTreadFricForceMag;
+        crossTreadFricForceY = crossTreadUnitY * crossTreadFricForceMag;
+    }
+
+    /**
+     * The cross-tread friction force along the cross-tread direction, given the contact patch
+     * velocity and the net applied force along that same direction.
+     */
+    double calcCrossTreadFrictionMag(double crossTreadVel, double crossTreadForce){
+        return calcCrossTreadFrictionMagInRegime(calcCrossTreadFrictionRegime(crossTreadVel, crossTreadForce), crossTreadForce);
+    }
+
+    // Friction regimes. Kinetic friction is identified by the sign of the sliding velocity (-1, 0 or 1).
+    static final int FRIC_STATIC = 2;
+
+    /**
+     * Which friction model applies: FRIC_STATIC, or the sign of the cross-tread velocity for kinetic friction.
+     */
+    int calcCrossTreadFrictionRegime(double crossTreadVel, double crossTreadForce){
+        if(Math.abs(crossTreadForce) > treadStaticFricForce || Math.abs(crossTreadVel) > 0.001){
             // Force is great enough to overcome static friction, or we're already moving
             // In either case, use kinetic frictional model
-            crossTreadFricForceMag = -1.0 * Math.signum(crossTreadVelMag) * treadKineticFricForce;
+            return (int) Math.signum(crossTreadVel);
         } else {
             // Static Friction Model
-            crossTreadFricForceMag = -1.0 * crossTreadForceMag;
+            return FRIC_STATIC;
         }
-        
-        fricForce = new Force2d(crossTreadUnitVector);
-        fricForce = fricForce.times(crossTreadFricForceMag);
+    }
 
-        return new ForceAtPose2d(fricForce, curModulePose);
+    /**
+     * The cross-tread friction force in a given regime. Within one regime the force is smooth,
+     * which is what lets the integrators take long steps between regime switches.
+     */
+    double calcCrossTreadFrictionMagInRegime(int regime, double crossTreadForce){
+        if(regime == FRIC_STATIC){
+            return -1.0 * crossTreadForce;
+        }
+        return -1.0 * regime * treadKineticFricForce;
+    }
+
+    ////////////////////////////////////////////////////////////////
+    // Continuous-time model, used by QuadSwerveIntegrator.
+    // The integrator owns the state while it steps, then writes it back with setIntegratedState().
+
+    double getTreadStaticFricForce(){
+        return treadStaticFricForce;
+    }
+
+    double getAzimuthAngle_rad(){
+        return azmthMotor.getMechanismPosition_Rev() * 2 * Math.PI;
+    }
+
+    double getAzimuthSpeed_radPerSec(){
+        return azmthMotor.getMechanismSpeed_RadPerSec();
+    }
+
+    double getWheelRotation_rad(){
+        return wheelMotor.wheelRotations_rad;
+    }
+
+    /** Azimuth angle t seconds after it was at the given angle and speed, at the present input voltage. */
+    double calcAzimuthAngleAfter(double azmthAngle_rad, double azmthSpeed_radPerSec, double t){
+        return azmthAngle_rad + azmthMotor.calcDisplacementAfter_Rad(azmthSpeed_radPerSec, getAppliedAzmthVoltage(), t);
+    }
+
+    /** Azimuth speed t seconds after it was at the given speed, at the present input voltage. */
+    double calcAzimuthSpeedAfter(double azmthSpeed_radPerSec, double t){
+        return azmthMotor.calcSpeedAfter_RadPerSec(azmthSpeed_radPerSec, getAppliedAzmthVoltage(), t);
     }
 
-        
+    /** Along-tread ground force at the given contact patch speed and the present input voltage. */
+    double calcWheelGroundForce(double groundVelocity_mps){
+        return wheelMotor.calcGroundForce_N(groundVelocity_mps, getAppliedWheelVoltage());
+    }
+
+    /** Wheel rotation rate when the tread rolls without slipping at the given ground speed. */
+    double calcWheelRotationRate(double groundVelocity_mps){
+        return groundVelocity_mps / wheelMotor.wheelRadius_m;
+    }
+
+    /**
+     * Loads the integrated state back into the module after an integrator step, and refreshes
+     * everything derived from it so encoders and force telemetry read as they would after update().
+     */
+    void setIntegratedState(double azmthAngle_rad, double azmthSpeed_radPerSec, double wheelRotation_rad,
+                            double velocityAlongAzimuth, double crossTreadVel, double crossTreadForce, double crossTreadFricMag){
+        azmthMotor.setState(azmthAngle_rad / (2 * Math.PI), azmthSpeed_radPerSec, getAppliedAzmthVoltage());
+        wheelMotor.setState(wheelRotation_rad, velocityAlongAzimuth, getAppliedWheelVoltage());
+
+        curAzmthCos = Math.cos(azmthAngle_rad);
+        curAzmthSin = Math.sin(azmthAngle_rad);
+        wheelMotiveForceX = wheelMotor.getGroundForce_N() * curAzmthCos;
+        wheelMotiveForceY = wheelMotor.getGroundForce_N() * curAzmthSin;
+
+        crossTreadVelMag = crossTreadVel;
+        crossTreadForceMag = crossTreadForce;
+        crossTreadFricForceMag = crossTreadFricMag;
+        crossTreadFricForceX = -curAzmthSin * crossTreadFricMag;
+        crossTreadFricForceY =  curAzmthCos * crossTreadFricMag;
+    }
+
+    /**
+     * Given a net force on a particular module, calculate the friction force
+     * generated by the tread interacting with the ground in the direction
+     * perpendicular to the wheel's rotation.
+     * @param netForce_in
+     * @return
+     */
+    ForceAtPose2d getCrossTreadFrictionalForce(Force2d netForce_in, double dtSeconds){
+        calcCrossTreadFrictionalForce(netForce_in.getX(), netForce_in.getY(), dtSeconds);
+        return new ForceAtPose2d(new Force2d(crossTreadFricForceX, crossTreadFricForceY), getModulePose());
+    }
+
+
     /** Gets the modules on-axis (along wheel direction) force, which comes from the rotation of the motor. */
     ForceAtPose2d getWheelMotiveForce(){
-        return new ForceAtPose2d(new Force2d(wheelMotor.getGroundForce_N(), curAzmthAngle), curModulePose);
+        return new ForceAtPose2d(new Force2d(wheelMotiveForceX, wheelMotiveForceY), getModulePose());
     }
 
     /** Set the motion of each module in the field reference frame */
     void setModulePose(Pose2d curPos){
+        setModulePose(curPos.getX(), curPos.getY(), curPos.getRotation().getCos(), curPos.getRotation().getSin());
+    }
+
+    /** Set the motion of each module in the field reference frame */
+    void setModulePose(double x, double y, double cos, double sin){
         //Handle init'ing module position history to current on first pass
-        if(prevModulePose == null){
-            prevModulePose = curPos;
+        if(!poseInitialized){
+            prevModuleX = x;
+            prevModuleY = y;
+            poseInitialized = true;
         } else {
-            prevModulePose = curModulePose;
+            prevModuleX = curModuleX;
+            prevModuleY = curModuleY;
         }
 
-        curModulePose = curPos;
+        curModuleX = x;
+        curModuleY = y;
+        curModuleCos = cos;
+        curModuleSin = sin;
+    }
+
+    // Pose history, azimuth, contact velocity, forces, voltages, then both motors
+    static final int STATE_BYTES = 2 + 21 * Double.BYTES
+                                 + SimpleMotorWithMassModel.STATE_BYTES + MotorGearboxWheelSim.STATE_BYTES;
+
+    void saveState(ByteBuffer buf){
+        buf.put((byte) (poseInitialized ? 1 : 0));
+        buf.putDouble(prevModuleX);
+        buf.putDouble(prevModuleY);
+        buf.putDouble(curModuleX);
+        buf.putDouble(curModuleY);
+        buf.putDouble(curModuleCos);
+        buf.putDouble(curModuleSin);
+        buf.putDouble(curLinearSpeed_mps);
+        buf.putDouble(curAzmthCos);
+        buf.putDouble(curAzmthSin);
+        buf.putDouble(relVelX);
+        buf.putDouble(relVelY);
+        buf.putDouble(wheelMotiveForceX);
+        buf.putDouble(wheelMotiveForceY);
+        buf.putDouble(crossTreadFricForceX);
+        buf.putDouble(crossTreadFricForceY);
+        buf.putDouble(crossTreadFricForceMag);
+        buf.putDouble(crossTreadVelMag);
+        buf.putDouble(crossTreadForceMag);
+        buf.putDouble(wheelVoltage);
+        buf.putDouble(azmthVoltage);
+        buf.putDouble(supplyVoltage);
+        buf.put((byte) (outputsEnabled ? 1 : 0));
+        azmthMotor.saveState(buf);
+        wheelMotor.saveState(buf);
+    }
+
+    void restoreState(ByteBuffer buf){
+        poseInitialized = buf.get() != 0;
+        prevModuleX = buf.getDouble();
+        prevModuleY = buf.getDouble();
+        curModuleX = buf.getDouble();
+        curModuleY = buf.getDouble();
+        curModuleCos = buf.getDouble();
+        curModuleSin = buf.getDouble();
+        curLinearSpeed_mps = buf.getDouble();
+        curAzmthCos = buf.getDouble();
+        curAzmthSin = buf.getDouble();
+        relVelX = buf.getDouble();
+        relVelY = buf.getDouble();
+        wheelMotiveForceX = buf.getDouble();
+        wheelMotiveForceY = buf.getDouble();
+        crossTreadFricForceX = buf.getDouble();
+        crossTreadFricForceY = buf.getDouble();
+        crossTreadFricForceMag = buf.getDouble();
+        crossTreadVelMag = buf.getDouble();
+        crossTreadForceMag = buf.getDouble();
+        wheelVoltage = buf.getDouble();
+        azmthVoltage = buf.getDouble();
+        supplyVoltage = buf.getDouble();
+        outputsEnabled = buf.get() != 0;
+        azmthMotor.restoreState(buf);
+        wheelMotor.restoreState(buf);
     }
 
     Pose2d getModulePose(){
-        return curModulePose;
+        if(!poseInitialized){
+            return null;
+        }
+        return new Pose2d(curModuleX, curModuleY, new Rotation2d(curModuleCos, curModuleSin));
     }
 
 }
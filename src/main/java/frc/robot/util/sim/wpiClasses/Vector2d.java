@@ -29,11 +29,10 @@ public class Vector2d {
   public void rotate(double angle) {
     double cosA = Math.cos(angle * (Math.PI / 180.0));
     double sinA = Math.sin(angle * (Math.PI / 180.0));
-    double[] out = new double[2];
-    out[0] = x * cosA - y * sinA;
-    out[1] = x * sinA + y * cosA;
-    x = out[0];
-    y = out[1];
+    double newX = x * cosA - y * sinA;
+    double newY = x * sinA + y * cosA;
+    x = newX;
+    y = newY;
   }
 
   /**
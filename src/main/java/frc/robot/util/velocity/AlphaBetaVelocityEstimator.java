@@ -0,0 +1,52 @@
+package frc.robot.util.velocity;
+
+/**
+ * Tracks position and velocity with an alpha-beta filter: predicts the position from the last
+ * velocity, then corrects both by fractions of the prediction error. It keeps no history, and
+ * responds to a change in velocity right away instead of after a window fills, but lags a little
+ * behind a steady acceleration.
+ */
+public class AlphaBetaVelocityEstimator implements VelocityEstimator {
+    private final double alpha;
+    private final double beta;
+    private boolean first = true;
+    private double lastTimestamp_s;
+    private double position;
+    private double velocity = 0;
+
+    /**
+     * @param alpha fraction of the position error corrected each measurement, 0 to 1
+     * @param beta fraction of the position error per period added to the velocity. For a given alpha,
+     * alpha^2 / (2 - alpha) (Benedict-Bordner) gives the least noise for how fast it tracks.
+     */
+    public AlphaBetaVelocityEstimator(double alpha, double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    @Override
+    public double update(double timestamp_s, double measuredPosition) {
+        if (first) {
+            first = false;
+            lastTimestamp_s = timestamp_s;
+            position = measuredPosition;
+            return velocity;
+        }
+        double dt = timestamp_s - lastTimestamp_s;
+        if (dt <= 0) {
+            return velocity;
+        }
+        double predicted = position + velocity * dt;
+        double error = measuredPosition - predicted;
+        position = predicted + alpha * error;
+        velocity += beta * error / dt;
+        lastTimestamp_s = timestamp_s;
+        return velocity;
+    }
+
+    @Override
+    public void reset() {
+        first = true;
+        velocity = 0;
+    }
+}
@@ -0,0 +1,51 @@
+package frc.robot.util.velocity;
+
+/**
+ * Fits a line to the last few measurements and takes its slope. With the same window as a
+ * moving average of differences it has the same lag, half the window, but every measurement
+ * counts instead of just the two ends, so it's much less noisy.
+ */
+public class LeastSquaresVelocityEstimator implements VelocityEstimator {
+    private final MeasurementWindow window;
+
+    /**
+     * @param windowSize number of measurements to fit, at least 2
+     */
+    public LeastSquaresVelocityEstimator(int windowSize) {
+        window = new MeasurementWindow(windowSize);
+    }
+
+    @Override
+    public double update(double timestamp_s, double position) {
+        window.add(timestamp_s, position);
+        int n = window.size();
+        if (n < 2) {
+            return 0;
+        }
+        // Relative to the newest measurement, so large positions and timestamps keep their precision
+        double newestTime = window.getTimestamp(0);
+        double newestPosition = window.getPosition(0);
+        double sumT = 0;
+        double sumX = 0;
+        for (int i = 0; i < n; i++) {
+            sumT += window.getTimestamp(i) - newestTime;
+            sumX += window.getPosition(i) - newestPosition;
+        }
+        double meanT = sumT / n;
+        double meanX = sumX / n;
+        double sumTT = 0;
+        double sumTX = 0;
+        for (int i = 0; i < n; i++) {
+            double t = window.getTimestamp(i) - newestTime - meanT;
+            double x = window.getPosition(i) - newestPosition - meanX;
+            sumTT += t * t;
+            sumTX += t * x;
+        }
+        return sumTT > 0 ? sumTX / sumTT : 0;
+    }
+
+    @Override
+    public void reset() {
+        window.clear();
+    }
+}
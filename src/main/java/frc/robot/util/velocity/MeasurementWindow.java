@@ -0,0 +1,47 @@
+package frc.robot.util.velocity;
+
+/**
+ * The last few (timestamp, position) measurements, newest first, for the fitting estimators.
+ */
+class MeasurementWindow {
+    private final double[] timestamps_s;
+    private final double[] positions;
+    private int newest = -1;
+    private int size = 0;
+
+    MeasurementWindow(int capacity) {
+        timestamps_s = new double[capacity];
+        positions = new double[capacity];
+    }
+
+    void add(double timestamp_s, double position) {
+        newest = (newest + 1) % timestamps_s.length;
+        timestamps_s[newest] = timestamp_s;
+        positions[newest] = position;
+        size = Math.min(size + 1, timestamps_s.length);
+    }
+
+    void clear() {
+        newest = -1;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param age 0 for the newest measurement, 1 for the one before, and so on
+     */
+    double getTimestamp(int age) {
+        return timestamps_s[index(age)];
+    }
+
+    double getPosition(int age) {
+        return positions[index(age)];
+    }
+
+    private int index(int age) {
+        return (newest - age + timestamps_s.length) % timestamps_s.length;
+    }
+}
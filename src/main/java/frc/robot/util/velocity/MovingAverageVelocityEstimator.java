@@ -0,0 +1,38 @@
+package frc.robot.util.velocity;
+
+import edu.wpi.first.math.filter.LinearFilter;
+
+/**
+ * Averages the last few finite differences, the way the encoder wrappers always have. With evenly
+ * spaced measurements the average telescopes to the slope between the newest measurement and the
+ * one taps back, so only those two count, and it lags by half the window.
+ */
+public class MovingAverageVelocityEstimator implements VelocityEstimator {
+    private final LinearFilter filter;
+    private boolean first = true;
+    private double lastTimestamp_s;
+    private double lastPosition;
+    private double velocity = 0;
+
+    public MovingAverageVelocityEstimator(int taps) {
+        filter = LinearFilter.movingAverage(taps);
+    }
+
+    @Override
+    public double update(double timestamp_s, double position) {
+        if (!first) {
+            velocity = filter.calculate((position - lastPosition) / (timestamp_s - lastTimestamp_s));
+        }
+        first = false;
+        lastTimestamp_s = timestamp_s;
+        lastPosition = position;
+        return velocity;
+    }
+
+    @Override
+    public void reset() {
+        filter.reset();
+        first = true;
+        velocity = 0;
+    }
+}
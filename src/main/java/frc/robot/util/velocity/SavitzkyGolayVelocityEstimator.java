@@ -0,0 +1,64 @@
+package frc.robot.util.velocity;
+
+/**
+ * Fits a parabola to the last few measurements and takes its slope at the newest one: a
+ * Savitzky-Golay differentiator evaluated at the end of the window instead of the middle, solved
+ * for the actual timestamps instead of fixed coefficients for even spacing.
+ *
+ * Evaluating at the newest measurement means no lag while the acceleration is constant, where
+ * a straight-line fit lags by half its window. The price is noise: the slope at the end of a
+ * parabola is far less certain than the slope of a line, so it needs a longer window to match.
+ */
+public class SavitzkyGolayVelocityEstimator implements VelocityEstimator {
+    private final MeasurementWindow window;
+
+    /**
+     * @param windowSize number of measurements to fit, at least 3
+     */
+    public SavitzkyGolayVelocityEstimator(int windowSize) {
+        window = new MeasurementWindow(windowSize);
+    }
+
+    @Override
+    public double update(double timestamp_s, double position) {
+        window.add(timestamp_s, position);
+        int n = window.size();
+        if (n < 2) {
+            return 0;
+        }
+        double newestTime = window.getTimestamp(0);
+        double newestPosition = window.getPosition(0);
+        double span = newestTime - window.getTimestamp(n - 1);
+        if (n < 3 || span <= 0) {
+            return span > 0 ? (newestPosition - window.getPosition(n - 1)) / span : 0;
+        }
+        // Fit x = a + b*u + c*u^2, with u the time before the newest measurement as a fraction
+        // of the window (-1 to 0) so the normal equations stay well conditioned
+        double s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double sx0 = 0, sx1 = 0, sx2 = 0;
+        for (int i = 0; i < n; i++) {
+            double u = (window.getTimestamp(i) - newestTime) / span;
+            double x = window.getPosition(i) - newestPosition;
+            double u2 = u * u;
+            s1 += u;
+            s2 += u2;
+            s3 += u2 * u;
+            s4 += u2 * u2;
+            sx0 += x;
+            sx1 += x * u;
+            sx2 += x * u2;
+        }
+        // Solve [n s1 s2; s1 s2 s3; s2 s3 s4] [a b c]' = [sx0 sx1 sx2]' for b by Cramer's rule
+        double det = n * (s2 * s4 - s3 * s3) - s1 * (s1 * s4 - s3 * s2) + s2 * (s1 * s3 - s2 * s2);
+        if (det == 0) {
+            return 0;
+        }
+        double detB = n * (sx1 * s4 - s3 * sx2) - sx0 * (s1 * s4 - s3 * s2) + s2 * (s1 * sx2 - sx1 * s2);
+        return detB / det / span;
+    }
+
+    @Override
+    public void reset() {
+        window.clear();
+    }
+}
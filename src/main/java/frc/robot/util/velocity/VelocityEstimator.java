@@ -0,0 +1,24 @@
+package frc.robot.util.velocity;
+
+/**
+ * Estimates a velocity from timestamped position measurements, using the time each one was
+ * actually measured rather than assuming they're evenly spaced.
+ *
+ * Estimators run on the CAN sampler thread for every frame, so they keep their history in
+ * primitive arrays and don't allocate. They aren't thread-safe.
+ */
+public interface VelocityEstimator {
+
+    /**
+     * Adds a measurement.
+     * @param timestamp_s when the position was measured. Must be later than the last one.
+     * @return the velocity estimate at the newest measurement, in position units per second.
+     * 0 until there are enough measurements.
+     */
+    double update(double timestamp_s, double position);
+
+    /**
+     * Forgets every measurement, such as after the position was reset.
+     */
+    void reset();
+}
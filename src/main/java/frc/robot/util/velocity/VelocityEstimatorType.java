@@ -0,0 +1,40 @@
+package frc.robot.util.velocity;
+
+import static frc.robot.Constants.DriveConstants.VELOCITY_ALPHA;
+import static frc.robot.Constants.DriveConstants.VELOCITY_BETA;
+import static frc.robot.Constants.DriveConstants.VELOCITY_LEAST_SQUARES_WINDOW;
+import static frc.robot.Constants.DriveConstants.VELOCITY_MOVING_AVERAGE_TAPS;
+import static frc.robot.Constants.DriveConstants.VELOCITY_SAVITZKY_GOLAY_WINDOW;
+
+/**
+ * The velocity estimators a module can pick, built with the tuning in DriveConstants.
+ * Run VelocityEstimatorComparison to see how they trade lag against noise.
+ */
+public enum VelocityEstimatorType {
+    MOVING_AVERAGE {
+        @Override
+        public VelocityEstimator create() {
+            return new MovingAverageVelocityEstimator(VELOCITY_MOVING_AVERAGE_TAPS);
+        }
+    },
+    LEAST_SQUARES {
+        @Override
+        public VelocityEstimator create() {
+            return new LeastSquaresVelocityEstimator(VELOCITY_LEAST_SQUARES_WINDOW);
+        }
+    },
+    SAVITZKY_GOLAY {
+        @Override
+        public VelocityEstimator create() {
+            return new SavitzkyGolayVelocityEstimator(VELOCITY_SAVITZKY_GOLAY_WINDOW);
+        }
+    },
+    ALPHA_BETA {
+        @Override
+        public VelocityEstimator create() {
+            return new AlphaBetaVelocityEstimator(VELOCITY_ALPHA, VELOCITY_BETA);
+        }
+    };
+
+    public abstract VelocityEstimator create();
+}
@@ -0,0 +1,78 @@
+package frc.robot.util.vision;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Translation3d;
+
+/**
+ * Reads the AprilTag layouts in deploy/apriltag/ into an IndexedTagLayout.
+ *
+ * Those were written for 2022, when the field size was given as "width" (along x) and "height",
+ * which AprilTagFieldLayout's own parser rejects: it wants "length" and "width". This takes either,
+ * so WPILib's own layout files load too.
+ */
+public class AprilTagLayoutLoader {
+
+    private AprilTagLayoutLoader() {}
+
+    /**
+     * Parses the layout on a background thread, so robot startup doesn't wait on the JSON.
+     * @return the layout, once loaded. Completes exceptionally if the file can't be read.
+     */
+    public static CompletableFuture<IndexedTagLayout> loadAsync(Path path) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public static IndexedTagLayout load(Path path) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(path.toFile());
+        List<AprilTag> tags = new ArrayList<>();
+        for (JsonNode tag : root.path("tags")) {
+            JsonNode translation = tag.path("pose").path("translation");
+            JsonNode quaternion = tag.path("pose").path("rotation").path("quaternion");
+            tags.add(new AprilTag(
+                tag.path("ID").asInt(),
+                new Pose3d(
+                    new Translation3d(
+                        translation.path("x").asDouble(),
+                        translation.path("y").asDouble(),
+                        translation.path("z").asDouble()),
+                    new Rotation3d(new Quaternion(
+                        quaternion.path("W").asDouble(),
+                        quaternion.path("X").asDouble(),
+                        quaternion.path("Y").asDouble(),
+                        quaternion.path("Z").asDouble())))));
+        }
+        JsonNode field = root.path("field");
+        double fieldLength;
+        double fieldWidth;
+        if (field.has("length")) {
+            fieldLength = field.path("length").asDouble();
+            fieldWidth = field.path("width").asDouble();
+        } else {
+            fieldLength = field.path("width").asDouble();
+            fieldWidth = field.path("height").asDouble();
+        }
+        if (tags.isEmpty() || fieldLength <= 0 || fieldWidth <= 0) {
+            throw new IOException("No tags or field size in AprilTag layout " + path);
+        }
+        return new IndexedTagLayout(tags, fieldLength, fieldWidth);
+    }
+}
@@ -0,0 +1,89 @@
+package frc.robot.util.vision;
+
+import java.util.List;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * The AprilTag field layout, arranged for per-frame lookups: tag poses in an array indexed by ID,
+ * so a lookup is an array read with no Optional or boxed key, and each tag's inverse transform
+ * (tag frame to field origin) computed once up front. Immutable, so any thread can read it.
+ */
+public class IndexedTagLayout {
+    private final Pose3d[] posesById;
+    private final Transform3d[] tagToFieldById;
+    private final int[] ids;
+    private final Pose3d[] poses;
+    private final double fieldLength_m;
+    private final double fieldWidth_m;
+
+    public IndexedTagLayout(List<AprilTag> tags, double fieldLength_m, double fieldWidth_m) {
+        int maxId = -1;
+        for (AprilTag tag : tags) {
+            if (tag.ID < 0) {
+                throw new IllegalArgumentException("Negative AprilTag ID " + tag.ID);
+            }
+            maxId = Math.max(maxId, tag.ID);
+        }
+        posesById = new Pose3d[maxId + 1];
+        tagToFieldById = new Transform3d[maxId + 1];
+        ids = new int[tags.size()];
+        poses = new Pose3d[tags.size()];
+        Pose3d origin = new Pose3d();
+        for (int i = 0; i < tags.size(); i++) {
+            AprilTag tag = tags.get(i);
+            posesById[tag.ID] = tag.pose;
+            tagToFieldById[tag.ID] = new Transform3d(tag.pose, origin);
+            ids[i] = tag.ID;
+            poses[i] = tag.pose;
+        }
+        this.fieldLength_m = fieldLength_m;
+        this.fieldWidth_m = fieldWidth_m;
+    }
+
+    /**
+     * @return the tag's field pose, or null if there's no tag with that ID
+     */
+    public Pose3d getTagPose(int id) {
+        return id >= 0 && id < posesById.length ? posesById[id] : null;
+    }
+
+    /**
+     * @return the transform from the tag's frame to the field origin, or null if there's no tag with that ID.
+     * Composing it with a field-relative transform gives that transform relative to the tag.
+     */
+    public Transform3d getTagToField(int id) {
+        return id >= 0 && id < tagToFieldById.length ? tagToFieldById[id] : null;
+    }
+
+    /**
+     * @return number of tags
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return the ID of the i-th tag in file order, for iterating over all tags
+     */
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    /**
+     * @return every tag pose, in file order. Don't modify the array.
+     */
+    public Pose3d[] getTagPoses() {
+        return poses;
+    }
+
+    public double getFieldLength() {
+        return fieldLength_m;
+    }
+
+    public double getFieldWidth() {
+        return fieldWidth_m;
+    }
+}
@@ -0,0 +1,92 @@
+package frc.robot.util.vision;
+
+import static frc.robot.Constants.VisionConstants.MAX_AMBIGUITY;
+import static frc.robot.Constants.VisionConstants.SINGLE_TAG_THETA_STD_DEV;
+import static frc.robot.Constants.VisionConstants.THETA_STD_DEV_AT_1M;
+import static frc.robot.Constants.VisionConstants.XY_STD_DEV_AT_1M;
+
+import java.util.List;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * Turns the tags seen in one frame into a single robot pose and a confidence for it.
+ *
+ * Each tag gives a robot pose through the field layout: field to tag, tag to camera, camera to robot.
+ * Those are averaged, weighted by inverse distance squared since a tag's pose error grows about that fast.
+ * The standard deviations scale the same way, and shrink as more tags agree.
+ */
+public class MultiTagPoseSolver {
+    // A solved robot this far off the floor means a bad solve
+    private static final double MAX_HEIGHT_ERROR_M = 0.5;
+
+    private final IndexedTagLayout layout;
+
+    public MultiTagPoseSolver(IndexedTagLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * @param sightings the tags seen in one frame
+     * @param robotToCamera where the camera that saw them is mounted
+     * @param timestamp_s FPGA time the frame was captured
+     * @return the measurement, or null if nothing usable was seen
+     */
+    public VisionMeasurement solve(List<TagSighting> sightings, Transform3d robotToCamera, double timestamp_s) {
+        Transform3d cameraToRobot = robotToCamera.inverse();
+        double sumWeight = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumCos = 0;
+        double sumSin = 0;
+        double sumDistance = 0;
+        int tagCount = 0;
+
+        for (TagSighting sighting : sightings) {
+            Pose3d tagPose = layout.getTagPose(sighting.fiducialId);
+            if (tagPose == null) {
+                continue;
+            }
+            // Ambiguity only matters alone; with several tags the wrong solve of one gets outvoted
+            if (sightings.size() == 1 && sighting.ambiguity > MAX_AMBIGUITY) {
+                continue;
+            }
+            Pose3d robotPose = tagPose
+                .transformBy(sighting.cameraToTag.inverse())
+                .transformBy(cameraToRobot);
+            if (Math.abs(robotPose.getZ()) > MAX_HEIGHT_ERROR_M) {
+                continue;
+            }
+            double distance = sighting.cameraToTag.getTranslation().getNorm();
+            double weight = 1.0 / Math.max(distance * distance, 1e-6);
+            double heading = robotPose.getRotation().getZ();
+            sumWeight += weight;
+            sumX += weight * robotPose.getX();
+            sumY += weight * robotPose.getY();
+            sumCos += weight * Math.cos(heading);
+            sumSin += weight * Math.sin(heading);
+            sumDistance += distance;
+            tagCount++;
+        }
+        if (tagCount == 0) {
+            return null;
+        }
+
+        Pose2d pose = new Pose2d(sumX / sumWeight, sumY / sumWeight, new Rotation2d(sumCos, sumSin));
+        if (pose.getX() < 0 || pose.getX() > layout.getFieldLength()
+            || pose.getY() < 0 || pose.getY() > layout.getFieldWidth()) {
+            return null;
+        }
+
+        double averageDistance = sumDistance / tagCount;
+        double scale = averageDistance * averageDistance / tagCount;
+        double xyStdDev = XY_STD_DEV_AT_1M * scale;
+        double thetaStdDev = tagCount > 1 ? THETA_STD_DEV_AT_1M * scale : SINGLE_TAG_THETA_STD_DEV;
+        return new VisionMeasurement(
+            pose, timestamp_s, VecBuilder.fill(xyStdDev, xyStdDev, thetaStdDev), tagCount, averageDistance);
+    }
+}
@@ -0,0 +1,46 @@
+package frc.robot.util.vision;
+
+import java.util.List;
+
+import org.photonvision.PhotonCamera;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * A coprocessor running PhotonVision's AprilTag pipeline, read through photonlib.
+ */
+public class PhotonVisionCamera implements VisionCamera {
+    private final PhotonCamera camera;
+    private final Transform3d robotToCamera;
+    private double lastTimestamp_s = Double.NaN;
+
+    public PhotonVisionCamera(String cameraName, Transform3d robotToCamera) {
+        camera = new PhotonCamera(cameraName);
+        this.robotToCamera = robotToCamera;
+    }
+
+    @Override
+    public double readFrame(List<TagSighting> sightings) {
+        PhotonPipelineResult result = camera.getLatestResult();
+        // photonlib stamps the result with the FPGA time it was captured, latency already taken off
+        double timestamp_s = result.getTimestampSeconds();
+        if (timestamp_s == lastTimestamp_s) {
+            return Double.NaN;
+        }
+        lastTimestamp_s = timestamp_s;
+        for (PhotonTrackedTarget target : result.getTargets()) {
+            if (target.getFiducialId() >= 0) {
+                sightings.add(new TagSighting(
+                    target.getFiducialId(), target.getBestCameraToTarget(), target.getPoseAmbiguity()));
+            }
+        }
+        return timestamp_s;
+    }
+
+    @Override
+    public Transform3d getRobotToCamera() {
+        return robotToCamera;
+    }
+}
@@ -0,0 +1,20 @@
+package frc.robot.util.vision;
+
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * One AprilTag seen in one camera frame.
+ */
+public class TagSighting {
+    public final int fiducialId;
+    /** Tag pose in the camera frame: x out of the lens, y left, z up */
+    public final Transform3d cameraToTag;
+    /** 0 for an unambiguous solve, up to 1 when the two candidate solves fit equally well */
+    public final double ambiguity;
+
+    public TagSighting(int fiducialId, Transform3d cameraToTag, double ambiguity) {
+        this.fiducialId = fiducialId;
+        this.cameraToTag = cameraToTag;
+        this.ambiguity = ambiguity;
+    }
+}
@@ -0,0 +1,23 @@
+package frc.robot.util.vision;
+
+import java.util.List;
+
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * A camera reporting AprilTag sightings, real or simulated.
+ */
+public interface VisionCamera {
+
+    /**
+     * Reads the newest frame, if there is one the caller hasn't seen yet.
+     * @param sightings filled with the tags seen in the frame
+     * @return the FPGA time the frame was captured, or NaN if there's no new frame
+     */
+    double readFrame(List<TagSighting> sightings);
+
+    /**
+     * @return the camera pose relative to the robot center, on the floor
+     */
+    Transform3d getRobotToCamera();
+}
@@ -0,0 +1,28 @@
+package frc.robot.util.vision;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/**
+ * A robot pose solved from one camera frame, ready for SwerveDrivePoseEstimator.addVisionMeasurement.
+ */
+public class VisionMeasurement {
+    public final Pose2d pose;
+    /** FPGA time the frame was captured */
+    public final double timestamp_s;
+    /** x (m), y (m) and heading (rad) standard deviations */
+    public final Matrix<N3, N1> stdDevs;
+    public final int tagCount;
+    public final double averageDistance_m;
+
+    public VisionMeasurement(Pose2d pose, double timestamp_s, Matrix<N3, N1> stdDevs,
+                             int tagCount, double averageDistance_m) {
+        this.pose = pose;
+        this.timestamp_s = timestamp_s;
+        this.stdDevs = stdDevs;
+        this.tagCount = tagCount;
+        this.averageDistance_m = averageDistance_m;
+    }
+}